@@ -26,19 +26,26 @@ package vishal.vaf.notifyme.model;
 
 import android.app.PendingIntent;
 import android.app.RemoteInput;
+import android.content.Context;
+import android.content.Intent;
 import android.os.Bundle;
+import android.util.Log;
 
 /**
  * Created by vishal on 12/01/17.
  */
 
-public class NotificationModel {
+public class NotificationModel implements ReplyAction {
 
+    private static final String TAG = NotificationModel.class.getSimpleName();
+
+    private Context context;
     private Bundle bundle;
     private PendingIntent pendingIntent;
     private RemoteInput[] remoteInputs;
 
-    public NotificationModel(Bundle bundle, PendingIntent pendingIntent, RemoteInput[] remoteInputs) {
+    public NotificationModel(Context context, Bundle bundle, PendingIntent pendingIntent, RemoteInput[] remoteInputs) {
+        this.context = context;
         this.bundle = bundle;
         this.pendingIntent = pendingIntent;
         this.remoteInputs = remoteInputs;
@@ -56,4 +63,24 @@ public class NotificationModel {
         return remoteInputs;
     }
 
+    @Override
+    public synchronized boolean send(String message) {
+        if (remoteInputs == null || pendingIntent == null)
+            return false;
+
+        Intent localIntent = new Intent();
+        localIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+        for (RemoteInput remoteInput : remoteInputs) {
+            bundle.putCharSequence(remoteInput.getResultKey(), message);
+        }
+        RemoteInput.addResultsToIntent(remoteInputs, localIntent, bundle);
+        try {
+            pendingIntent.send(context, 0, localIntent);
+            return true;
+        } catch (PendingIntent.CanceledException e) {
+            Log.e(TAG, "replyToLastNotification error: " + e.getLocalizedMessage());
+            return false;
+        }
+    }
+
 }
@@ -0,0 +1,218 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Vishal Dubey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ **/
+
+package vishal.vaf.notifyme.services;
+
+import android.app.Notification;
+import android.app.PendingIntent;
+import android.app.RemoteInput;
+import android.content.Context;
+import android.os.Bundle;
+import android.os.Parcelable;
+import android.service.notification.StatusBarNotification;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import vishal.vaf.notifyme.handlers.AppHandler;
+import vishal.vaf.notifyme.model.ConversationMessage;
+import vishal.vaf.notifyme.model.NotificationModel;
+import vishal.vaf.notifyme.model.ParsedNotification;
+import vishal.vaf.notifyme.processing.RepostFilter;
+import vishal.vaf.notifyme.utils.LruTtlCache;
+
+/**
+ * Turns a StatusBarNotification into a {@link ParsedNotification} in one pass over its extras
+ * and actions. Chat apps that use MessagingStyle get their whole message history
+ * ({@link Notification#EXTRA_MESSAGES}) instead of just the last line or an "N new messages"
+ * summary. Messages without a sender are the user's own, including our automatic replies
+ * that the app posts back into the conversation; they are never taken as the incoming message.
+ * <p>
+ * The last result is kept per notification key. A re-post with the same title, timestamp, text
+ * and history size (apps re-post to update unrelated fields) reuses it without parsing the
+ * history again; the reply action is always read from the new post. Only called from the
+ * extract stage's thread.
+ */
+
+class NotificationExtractor {
+
+    private static final String MESSAGE_TEXT = "text";
+    private static final String MESSAGE_TIME = "time";
+    private static final String MESSAGE_SENDER = "sender";
+
+    private static final int CACHE_SIZE = 64;
+    private static final long CACHE_MAX_AGE_MINUTES = 60;
+
+    private final Context context;
+    private final LruTtlCache<String, Extracted> cache =
+            new LruTtlCache<>(CACHE_SIZE, CACHE_MAX_AGE_MINUTES, TimeUnit.MINUTES);
+
+    NotificationExtractor(Context context) {
+        this.context = context;
+    }
+
+    /**
+     * @return null if the notification holds no incoming message to act on
+     */
+    ParsedNotification extract(StatusBarNotification sbn, AppHandler appHandler) {
+        Notification notification = sbn.getNotification();
+        Bundle extras = notification.extras;
+        String title = extras.getString(Notification.EXTRA_TITLE);
+        CharSequence text = extras.getCharSequence(Notification.EXTRA_TEXT);
+        Parcelable[] messages = extras.getParcelableArray(Notification.EXTRA_MESSAGES);
+        int messageCount = messages == null ? 0 : messages.length;
+
+        Extracted cached = cache.get(sbn.getKey());
+        if (cached != null && cached.when == notification.when && cached.messageCount == messageCount
+                && equal(cached.title, title) && equal(cached.text, text)) {
+            ParsedNotification parsed = cached.parsed;
+            return new ParsedNotification(parsed.getPackageName(), parsed.getKey(), parsed.getTitle(), parsed.getSender(),
+                    parsed.getText(), false, findReplyAction(notification, appHandler), parsed.getMessages());
+        }
+
+        List<ConversationMessage> history = parseMessages(messages);
+        String lastText = text == null ? null : text.toString();
+        String sender = null;
+        if (!history.isEmpty()) {
+            ConversationMessage incoming = lastIncoming(history);
+            // only our own messages, or the app echoing our latest reply: nothing to answer
+            if (incoming == null || incoming != history.get(history.size() - 1))
+                return null;
+            lastText = incoming.getText();
+            sender = incoming.getSender();
+        }
+        if (sender == null)
+            sender = appHandler.getSender(title, lastText);
+
+        ParsedNotification parsed = new ParsedNotification(sbn.getPackageName(), sbn.getKey(), title, sender,
+                appHandler.getText(title, lastText), false, findReplyAction(notification, appHandler), history);
+        cache.put(sbn.getKey(), new Extracted(parsed, notification.when, messageCount, title, text));
+        return parsed;
+    }
+
+    private static ConversationMessage lastIncoming(List<ConversationMessage> history) {
+        for (int i = history.size() - 1; i >= 0; i--) {
+            if (history.get(i).getSender() != null)
+                return history.get(i);
+        }
+        return null;
+    }
+
+    /**
+     * Hash of what the user sees: title, text, timestamp and history size. Cheap enough to
+     * compute before deciding whether to parse at all.
+     */
+    static long contentHash(StatusBarNotification sbn) {
+        Notification notification = sbn.getNotification();
+        Bundle extras = notification.extras;
+        Parcelable[] messages = extras.getParcelableArray(Notification.EXTRA_MESSAGES);
+        return RepostFilter.contentHash(extras.getCharSequence(Notification.EXTRA_TITLE),
+                extras.getCharSequence(Notification.EXTRA_TEXT), String.valueOf(notification.when),
+                String.valueOf(messages == null ? 0 : messages.length));
+    }
+
+    ParsedNotification extractRemoval(StatusBarNotification sbn) {
+        Extracted cached = cache.remove(sbn.getKey());
+        String title = cached != null ? cached.parsed.getTitle()
+                : sbn.getNotification().extras.getString(Notification.EXTRA_TITLE);
+        return new ParsedNotification(sbn.getPackageName(), sbn.getKey(), title, null, null, true, null);
+    }
+
+    void dump(PrintWriter writer) {
+        writer.println("Extractor cache: " + cache);
+    }
+
+    /**
+     * Last action with remote inputs that the app handler accepts as a reply action. The
+     * notification's own actions are checked first, wearable actions (where older app
+     * versions put the reply) only when none of those fit.
+     */
+    private NotificationModel findReplyAction(Notification notification, AppHandler appHandler) {
+        Notification.Action reply = null;
+        if (notification.actions != null) {
+            for (Notification.Action action : notification.actions) {
+                if (isReply(action, appHandler))
+                    reply = action;
+            }
+        }
+        if (reply == null) {
+            for (Notification.Action action : new Notification.WearableExtender(notification).getActions()) {
+                if (isReply(action, appHandler))
+                    reply = action;
+            }
+        }
+        if (reply == null)
+            return null;
+        PendingIntent pendingIntent = reply.actionIntent;
+        RemoteInput[] remoteInputs = reply.getRemoteInputs();
+        return new NotificationModel(context, notification.extras, pendingIntent, remoteInputs);
+    }
+
+    private static boolean isReply(Notification.Action action, AppHandler appHandler) {
+        return action != null && action.getRemoteInputs() != null && appHandler.isReplyAction(action.title);
+    }
+
+    private static List<ConversationMessage> parseMessages(Parcelable[] messages) {
+        if (messages == null || messages.length == 0)
+            return Collections.emptyList();
+        List<ConversationMessage> history = new ArrayList<>(messages.length);
+        for (Parcelable message : messages) {
+            if (!(message instanceof Bundle))
+                continue;
+            Bundle bundle = (Bundle) message;
+            CharSequence text = bundle.getCharSequence(MESSAGE_TEXT);
+            if (text == null)
+                continue;
+            CharSequence sender = bundle.getCharSequence(MESSAGE_SENDER);
+            history.add(new ConversationMessage(sender == null ? null : sender.toString(), text.toString(),
+                    bundle.getLong(MESSAGE_TIME)));
+        }
+        return history;
+    }
+
+    private static boolean equal(CharSequence a, CharSequence b) {
+        return a == null ? b == null : b != null && a.toString().equals(b.toString());
+    }
+
+    private static class Extracted {
+
+        private final ParsedNotification parsed;
+        private final long when;
+        private final int messageCount;
+        private final String title;
+        private final CharSequence text;
+
+        Extracted(ParsedNotification parsed, long when, int messageCount, String title, CharSequence text) {
+            this.parsed = parsed;
+            this.when = when;
+            this.messageCount = messageCount;
+            this.title = title;
+            this.text = text;
+        }
+    }
+
+}
@@ -25,30 +25,39 @@
 package vishal.vaf.notifyme.services;
 
 import android.app.Notification;
-import android.app.PendingIntent;
-import android.app.RemoteInput;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.SharedPreferences;
-import android.os.AsyncTask;
-import android.os.Bundle;
-import android.os.Handler;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.Build;
+import android.os.PowerManager;
 import android.preference.PreferenceManager;
 import android.service.notification.NotificationListenerService;
 import android.service.notification.StatusBarNotification;
 import android.util.Log;
 
-import com.google.firebase.database.DataSnapshot;
-import com.google.firebase.database.DatabaseError;
-import com.google.firebase.database.DatabaseReference;
-import com.google.firebase.database.FirebaseDatabase;
-import com.google.firebase.database.ValueEventListener;
-
-import java.util.ArrayList;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.List;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
 
 import ai.api.AIServiceException;
 import ai.api.android.AIConfiguration;
@@ -56,13 +65,35 @@ import ai.api.android.AIDataService;
 import ai.api.model.AIRequest;
 import ai.api.model.AIResponse;
 import vishal.vaf.notifyme.R;
-import vishal.vaf.notifyme.model.NotificationModel;
+import vishal.vaf.notifyme.handlers.AppHandler;
+import vishal.vaf.notifyme.handlers.AppHandlerRegistry;
+import vishal.vaf.notifyme.model.ListenerConfig;
+import vishal.vaf.notifyme.model.ParsedNotification;
+import vishal.vaf.notifyme.model.RawNotification;
+import vishal.vaf.notifyme.model.ReplyAction;
+import vishal.vaf.notifyme.pipeline.OverflowPolicy;
+import vishal.vaf.notifyme.pipeline.Pipeline;
+import vishal.vaf.notifyme.pipeline.Stage;
+import vishal.vaf.notifyme.processing.AssistResponder;
+import vishal.vaf.notifyme.processing.AssistantClient;
+import vishal.vaf.notifyme.processing.AssistantResponseCache;
+import vishal.vaf.notifyme.processing.BurstCoalescer;
+import vishal.vaf.notifyme.processing.IntentMatcher;
+import vishal.vaf.notifyme.processing.NotificationProcessor;
+import vishal.vaf.notifyme.processing.NotifyForwarder;
+import vishal.vaf.notifyme.processing.ReplyScheduler;
+import vishal.vaf.notifyme.utils.ConversationIdNormalizer;
+import vishal.vaf.notifyme.utils.DiskOutbox;
+import vishal.vaf.notifyme.utils.FirebaseNetworkManagement;
+import vishal.vaf.notifyme.utils.LruTtlCache;
+import vishal.vaf.notifyme.utils.MetricsRegistry;
+import vishal.vaf.notifyme.utils.NetworkManagement;
+import vishal.vaf.notifyme.utils.OutboxNetworkManagement;
+import vishal.vaf.notifyme.utils.UploadPolicy;
 
 public class NotificationListener extends NotificationListenerService {
 
     private static final String TAG = NotificationListener.class.getSimpleName();
-    private List<String> waList = new ArrayList<>();
-    private List<String> fbMsgList = new ArrayList<>();
 
     public static final String ENABLE_ASSIST = "enable_assist";
     public static final String ENABLE_NOTIFY = "enable_notify";
@@ -74,26 +105,93 @@ public class NotificationListener extends NotificationListenerService {
     public static final String isAssistOn = "is_assist_on";
     public static final String isNotifyOn = "is_notify_on";
 
+    public static final String PUBLISH_WINDOW_MS = "publish_window_ms";
+    public static final String PUBLISH_BATCH_SIZE = "publish_batch_size";
+
+    private static final int DEFAULT_PUBLISH_WINDOW_MS = 250;
+    private static final int DEFAULT_PUBLISH_BATCH_SIZE = 20;
+
+    // How long a greeted sender is left alone before the auto-reply goes out again
+    public static final String ASSIST_COOLDOWN_MINUTES = "assist_cooldown_minutes";
+
+    private static final int DEFAULT_ASSIST_COOLDOWN_MINUTES = 8 * 60;
+
+    // Messages of one conversation closer together than this are answered with a single reply
+    public static final String ASSIST_BURST_WINDOW_MS = "assist_burst_window_ms";
+
+    private static final int DEFAULT_ASSIST_BURST_WINDOW_MS = 1500;
+    private static final long ASSIST_BURST_MAX_DELAY_MS = 6000;
+
+    // Titles of the conversations whose notifications are uploaded without batching
+    public static final String PRIORITY_CONVERSATIONS = "priority_conversations";
+
     private String phoneNumber = "";
 
     private SharedPreferences sharedPreferences;
     private SharedPreferences.Editor editor;
 
-    private boolean isWhatsAppEnabled = false, isAssistEnabled = false, isNotifyEnabled = false, isFbMsgEnabled = false;
-
     private EnableToggleReceiver receiver;
 
-    private DatabaseReference reference;
+    private volatile NetworkManagement network;
+
+    // Forwarded notifications are kept on disk until the transport confirmed them; null if the
+    // outbox file could not be opened, notifications then go straight to the transport
+    private OutboxNetworkManagement outboxNetwork;
+
+    private static final String OUTBOX_FILE = "outbox.log";
+    private static final long OUTBOX_MAX_BYTES = 1024 * 1024;
+
+    // Batches outbox uploads by priority, network type and Doze, see UploadJobService
+    private final UploadPolicy uploadPolicy = new UploadPolicy();
+    private UploadConditionsReceiver uploadConditionsReceiver;
+
+    private final AppHandlerRegistry registry = AppHandlerRegistry.createDefault();
+
+    private static final int REPLY_HANDLE_CAPACITY = 128;
+    private static final long REPLY_HANDLE_MAX_AGE_HOURS = 12;
+
+    private static final int PIPELINE_CAPACITY = 64;
+
+    // Ingestion runs off the main looper: screen -> extract -> filter -> publish. Under a burst the
+    // oldest queued notification is dropped first, the newest one is what the user sees.
+    private Pipeline<NotificationEvent> pipeline;
+
+    private final NotificationExtractor extractor = new NotificationExtractor(this);
+
+    // Counters and latency histograms of every stage, printed by dumpsys
+    private final MetricsRegistry metrics = new MetricsRegistry();
+    private final MetricsRegistry.Counter postedCount = metrics.counter("notification.posted");
+    private final MetricsRegistry.Counter removedCount = metrics.counter("notification.removed");
+
+    // Everything after extraction is plain Java and lives in the core module
+    private NotificationProcessor processor;
 
-    private HashMap<String, NotificationModel> hashMap = new HashMap<>();
+    private static final int REPLY_THREADS = 3;
+
+    private ExecutorService replyThreads;
 
     private AIConfiguration configuration;
-    AIDataService aiDataService;
+    private volatile AIDataService aiDataService;
+
+    // Sets up the transport and the assistant off the main thread, one mode at a time, while
+    // the mode's notifications wait in its gate. How long that took is in ready.<mode>.
+    private ExecutorService warmUpThread;
+
+    private static final int ASSISTANT_THREADS = 2;
+    private static final int ASSISTANT_QUEUE_CAPACITY = 16;
+    private static final long ASSISTANT_TIMEOUT_SECONDS = 10;
+
+    // Each query carries its own reply handle, answers to repeated queries come from the cache
+    private AssistantClient assistantClient;
+
+    private BurstCoalescer coalescer;
 
-    private RemoteInput[] remoteInputs;
-    private PendingIntent pendingIntent;
+    // Every automatic reply goes through it, rate limited per conversation and overall
+    private ReplyScheduler replyScheduler;
 
-    private Handler handler;
+    private static final String INTENT_RULES_FILE = "intents.txt";
+
+    private static final Pattern SUMMARY_TEXT = Pattern.compile("^\\d+ new messages?$");
 
     public NotificationListener() {
 
@@ -109,28 +207,75 @@ public class NotificationListener extends NotificationListenerService {
         filter.addAction(ENABLE_FB_MSG);
         receiver = new EnableToggleReceiver();
         registerReceiver(receiver, filter);
+
+        replyThreads = Executors.newFixedThreadPool(REPLY_THREADS);
+        warmUpThread = Executors.newSingleThreadExecutor();
+        NotifyForwarder forwarder = new NotifyForwarder(new ConversationIdNormalizer(),
+                new LruTtlCache<String, ReplyAction>(REPLY_HANDLE_CAPACITY, REPLY_HANDLE_MAX_AGE_HOURS, TimeUnit.HOURS), replyThreads);
+        sharedPreferences = PreferenceManager.getDefaultSharedPreferences(this);
+        editor = sharedPreferences.edit();
+        int cooldownMinutes = sharedPreferences.getInt(ASSIST_COOLDOWN_MINUTES, DEFAULT_ASSIST_COOLDOWN_MINUTES);
+        replyScheduler = new ReplyScheduler();
+        AssistResponder responder = new AssistResponder(registry, greetings, conversationHandler, replyScheduler,
+                AssistResponder.DEFAULT_MAX_SENDERS, cooldownMinutes, TimeUnit.MINUTES);
+        forwarder.setMetrics(metrics);
+        try {
+            outboxNetwork = new OutboxNetworkManagement(new DiskOutbox(new File(getFilesDir(), OUTBOX_FILE), OUTBOX_MAX_BYTES));
+            forwarder.setNetwork(outboxNetwork);
+            outboxNetwork.setUploadPolicy(uploadPolicy);
+            UploadJobService.setOutbox(outboxNetwork);
+            uploadPolicy.setFlushJob(flushJob);
+        } catch (IOException e) {
+            Log.e(TAG, "outbox unavailable, notifications are not kept while offline", e);
+        }
+        processor = new NotificationProcessor(registry, forwarder, responder);
+        ListenerConfig config = loadConfig();
+        processor.setConfig(config);
+        // Until onListenerConnected warmed them up
+        if (config.isNotifyEnabled())
+            processor.getNotifyGate().hold();
+        if (config.isAssistEnabled())
+            processor.getAssistGate().hold();
+        assistantClient = new AssistantClient(assistantBackend, new AssistantResponseCache(),
+                ASSISTANT_THREADS, ASSISTANT_QUEUE_CAPACITY, ASSISTANT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assistantClient.setMetrics(metrics);
+        int burstWindow = sharedPreferences.getInt(ASSIST_BURST_WINDOW_MS, DEFAULT_ASSIST_BURST_WINDOW_MS);
+        coalescer = new BurstCoalescer(burstListener, burstWindow, Math.max(burstWindow, ASSIST_BURST_MAX_DELAY_MS));
+
+        pipeline = new Pipeline<>("ingest", PIPELINE_CAPACITY, OverflowPolicy.DROP_OLDEST);
+        pipeline.setMetrics(metrics)
+                .addStage("screen", processor.<NotificationEvent>newScreenStage())
+                .addStage("extract", extractStage)
+                .addStage("filter", processor.getFilterStage())
+                .addStage("publish", processor.getDispatchStage())
+                .start();
+
+        uploadPolicy.setPriorityConversations(sharedPreferences.getStringSet(PRIORITY_CONVERSATIONS, Collections.<String>emptySet()));
+        IntentFilter conditions = new IntentFilter();
+        conditions.addAction(ConnectivityManager.CONNECTIVITY_ACTION);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M)
+            conditions.addAction(PowerManager.ACTION_DEVICE_IDLE_MODE_CHANGED);
+        uploadConditionsReceiver = new UploadConditionsReceiver();
+        registerReceiver(uploadConditionsReceiver, conditions);
+        updateUploadConditions();
+
+        sharedPreferences.registerOnSharedPreferenceChangeListener(preferenceListener);
     }
 
     @Override
     public void onNotificationPosted(StatusBarNotification sbn) {
-        try {
-            if (isAssistEnabled) {
-                handleAssistBotNotifications(sbn);
-            } else if (isNotifyEnabled) {
-                handleNotifyNotifications(sbn);
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
+        ListenerConfig config = processor.getConfig();
+        if (config.isAssistEnabled() || config.isNotifyEnabled()) {
+            postedCount.increment();
+            pipeline.submit(new NotificationEvent(sbn, false));
         }
     }
 
     @Override
     public void onNotificationRemoved(StatusBarNotification sbn) {
-        if (isNotifyEnabled) {
-            if (sbn.getPackageName().equals("com.whatsapp") | sbn.getPackageName().equals("com.facebook.orca")) {
-                String id = sbn.getNotification().extras.getString(Notification.EXTRA_TITLE).toLowerCase().replaceAll("\\(.*?\\)", "").replace(":","").replaceAll(" ", "");
-                reference.child("remove" + "/id").setValue(id);
-            }
+        if (processor.getConfig().isNotifyEnabled()) {
+            removedCount.increment();
+            pipeline.submit(new NotificationEvent(sbn, true));
         }
     }
 
@@ -138,263 +283,353 @@ public class NotificationListener extends NotificationListenerService {
     public void onDestroy() {
         super.onDestroy();
         unregisterReceiver(receiver);
+        unregisterReceiver(uploadConditionsReceiver);
+        UploadJobService.setOutbox(null);
+        sharedPreferences.unregisterOnSharedPreferenceChangeListener(preferenceListener);
+        pipeline.shutdown();
+        replyThreads.shutdown();
+        warmUpThread.shutdown();
+        coalescer.shutdown();
+        assistantClient.shutdown();
+        replyScheduler.shutdown();
+        if (network != null)
+            network.close();
+        else if (outboxNetwork != null)
+            outboxNetwork.close();
     }
 
     @Override
-    public void onListenerConnected() {
-        Log.d(TAG, "connected");
-        handler = new Handler();
-        sharedPreferences = PreferenceManager.getDefaultSharedPreferences(this);
-        editor = sharedPreferences.edit();
-        phoneNumber = sharedPreferences.getString("phone", "");
-        isAssistEnabled = sharedPreferences.getBoolean(isAssistOn, false);
-        isNotifyEnabled = sharedPreferences.getBoolean(isNotifyOn, false);
-        isWhatsAppEnabled = sharedPreferences.getBoolean(isWhatsAppOn, false);
-        isFbMsgEnabled = sharedPreferences.getBoolean(isFbMsgOn, false);
-        if (isNotifyEnabled) {
-            connectToFirebase();
-        }
-
-        configuration = new AIConfiguration(getString(R.string.client_access_token), AIConfiguration.SupportedLanguages.English, AIConfiguration.RecognitionEngine.System);
-        aiDataService = new AIDataService(this, configuration);
-    }
-
-    @Override
-    public void onListenerDisconnected() {
-        Log.d(TAG, "disconnected");
-        fbMsgList.clear();
-        waList.clear();
-        reference.child("desktop").removeEventListener(messagesListener);
+    protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        pipeline.dump(writer);
+        extractor.dump(writer);
+        processor.dump(writer);
+        coalescer.dump(writer);
+        assistantClient.dump(writer);
+        replyScheduler.dump(writer);
+        metrics.dump(writer);
     }
 
-    private void handleAssistBotNotifications(StatusBarNotification statusBarNotification) {
-
-        Bundle bundle = statusBarNotification.getNotification().extras;
-        Notification.WearableExtender extender = new Notification.WearableExtender(statusBarNotification.getNotification());
+    private static class NotificationEvent implements RawNotification {
 
-        RemoteInput[] remoteInputs = null;
-        String senderName = "";
-        PendingIntent pendingIntent = null;
+        private final StatusBarNotification statusBarNotification;
+        private final boolean removed;
 
-        String packageName = statusBarNotification.getPackageName();
-
-        if (packageName.equals("com.whatsapp")) {
-            if (!waList.contains(bundle.getString(Notification.EXTRA_TITLE))) {
-                senderName = bundle.getString(Notification.EXTRA_TITLE);
-                List<Notification.Action> actions = extender.getActions();
-                for (Notification.Action act : actions) {
-                    if (act != null && act.getRemoteInputs() != null) {
-                        remoteInputs = act.getRemoteInputs();
-                        pendingIntent = act.actionIntent;
-                    }
-                }
-            } else {
-                handleConversationalBot(statusBarNotification);
-            }
-        } else if (packageName.equals("com.facebook.orca")) {
-            if (!fbMsgList.contains(bundle.getString(Notification.EXTRA_TITLE))) {
-                senderName = bundle.getString(Notification.EXTRA_TITLE);
-                List<Notification.Action> actions = extender.getActions();
-                for (Notification.Action act : actions) {
-                    if (act != null && act.getRemoteInputs() != null) {
-                        remoteInputs = act.getRemoteInputs();
-                        pendingIntent = act.actionIntent;
-                    }
-                }
-            } else {
-                handleConversationalBot(statusBarNotification);
-            }
-        }
-        if (isWhatsAppEnabled) {
-            if (packageName.equals("com.whatsapp"))
-                reply(remoteInputs, pendingIntent, bundle, senderName, packageName, null, null);
+        NotificationEvent(StatusBarNotification statusBarNotification, boolean removed) {
+            this.statusBarNotification = statusBarNotification;
+            this.removed = removed;
         }
 
-        if (isFbMsgEnabled) {
-            if (packageName.equals("com.facebook.orca"))
-                reply(remoteInputs, pendingIntent, bundle, senderName, packageName, null, null);
+        @Override
+        public String getPackageName() {
+            return statusBarNotification.getPackageName();
         }
 
-    }
-
-    private void handleNotifyNotifications(StatusBarNotification statusBarNotification) {
-        Bundle bundle = statusBarNotification.getNotification().extras;
-        RemoteInput[] remoteInputs = null;
-        PendingIntent pendingIntent = null;
-
-        String packageName = statusBarNotification.getPackageName();
-
-        Notification.WearableExtender extender = new Notification.WearableExtender(statusBarNotification.getNotification());
-        List<Notification.Action> actions = extender.getActions();
-        for (Notification.Action act : actions) {
-            if (act != null && act.getRemoteInputs() != null) {
-                remoteInputs = act.getRemoteInputs();
-                pendingIntent = act.actionIntent;
-            }
+        @Override
+        public String getKey() {
+            return statusBarNotification.getKey();
         }
-        if ((actions.size() > 0) && (packageName.equals("com.whatsapp") || packageName.equals("com.facebook.orca"))) {
-            try {
 
-                String id = bundle.getString(Notification.EXTRA_TITLE).toLowerCase().replaceAll("\\(.*?\\)", "").replace(":","").replaceAll(" ", "");
-
-                HashMap<String, String> object = new HashMap<>();
-                object.put("name", bundle.getString(Notification.EXTRA_TITLE));
-                object.put("message", bundle.getString(Notification.EXTRA_TEXT));
-                object.put("id", id);
-                object.put("app_name", packageName);
+        @Override
+        public boolean isRemoved() {
+            return removed;
+        }
 
-                reference.child("app").setValue(object);
-                hashMap.put(id, new NotificationModel(bundle, pendingIntent, remoteInputs));
+        @Override
+        public boolean isGroupSummary() {
+            return (statusBarNotification.getNotification().flags & Notification.FLAG_GROUP_SUMMARY) != 0;
+        }
 
-            } catch (NullPointerException e) {
-                e.printStackTrace();
-            }
+        @Override
+        public boolean isOngoing() {
+            return statusBarNotification.isOngoing();
         }
 
+        @Override
+        public long getContentHash() {
+            return NotificationExtractor.contentHash(statusBarNotification);
+        }
     }
 
-    private void reply(RemoteInput[] remoteInputs, PendingIntent pendingIntent, Bundle bundle, String senderName, String packageName, String message, String notifId) {
-
-        if (remoteInputs == null || pendingIntent == null)
-            return;
+    private Stage<NotificationEvent, ParsedNotification> extractStage = new Stage<NotificationEvent, ParsedNotification>() {
+        @Override
+        public ParsedNotification process(NotificationEvent event) {
+            StatusBarNotification sbn = event.statusBarNotification;
+            AppHandler appHandler = registry.get(sbn.getPackageName());
+            if (appHandler == null)
+                return null;
+
+            if (event.removed)
+                return extractor.extractRemoval(sbn);
+            return extractor.extract(sbn, appHandler);
+        }
+    };
 
-        Intent localIntent = new Intent();
-        localIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+    @Override
+    public void onListenerConnected() {
+        Log.d(TAG, "connected");
+        phoneNumber = sharedPreferences.getString("phone", "");
+        ListenerConfig config = processor.getConfig();
+        if (config.isNotifyEnabled())
+            warmUpThread.execute(warmUpNotify);
+        if (config.isAssistEnabled())
+            warmUpThread.execute(warmUpAssist);
+    }
 
-        if (packageName.equals("com.whatsapp")) {
-            for (RemoteInput remoteInput : remoteInputs) {
-                bundle.putCharSequence(remoteInput.getResultKey(), message == null ? ("Hey " + senderName.split(" ")[0] + ", " + sharedPreferences.getString("assist_wa_msg", "")) : message);
-            }
-        } else if (packageName.equals("com.facebook.orca")) {
-            for (RemoteInput remoteInput : remoteInputs) {
-                bundle.putCharSequence(remoteInput.getResultKey(), message == null ? ("Hey " + senderName.split(" ")[0] + ", " + sharedPreferences.getString("assist_fb_msg", "")) : message);
-            }
+    /**
+     * Connects the desktop transport, then lets notify mode's notifications through.
+     */
+    private final Runnable warmUpNotify = new Runnable() {
+        @Override
+        public void run() {
+            connectToFirebase();
+            long waited = processor.getNotifyGate().release();
+            if (waited >= 0)
+                metrics.histogram("ready.notify").record(waited);
         }
+    };
 
-        RemoteInput.addResultsToIntent(remoteInputs, localIntent, bundle);
-        try {
-            pendingIntent.send(this, 0, localIntent);
-            if (packageName.equals("com.whatsapp") && !isNotifyEnabled) {
-                waList.add(senderName);
-            } else if (packageName.equals("com.facebook.orca") && !isNotifyEnabled) {
-                fbMsgList.add(senderName);
-            }
-            if (isNotifyEnabled) {
-                hashMap.remove(notifId);
+    /**
+     * Creates the assistant service and loads the intent rules, once, then lets assist mode's
+     * notifications through.
+     */
+    private final Runnable warmUpAssist = new Runnable() {
+        @Override
+        public void run() {
+            if (aiDataService == null) {
+                configuration = new AIConfiguration(getString(R.string.client_access_token), AIConfiguration.SupportedLanguages.English, AIConfiguration.RecognitionEngine.System);
+                aiDataService = new AIDataService(NotificationListener.this, configuration);
+                loadIntentRules.run();
             }
-        } catch (PendingIntent.CanceledException e) {
-            Log.e("", "replyToLastNotification error: " + e.getLocalizedMessage());
+            long waited = processor.getAssistGate().release();
+            if (waited >= 0)
+                metrics.histogram("ready.assist").record(waited);
         }
+    };
+
+    @Override
+    public void onListenerDisconnected() {
+        Log.d(TAG, "disconnected");
+        processor.getResponder().clearAll();
+        coalescer.cancelAll();
+        assistantClient.cancelAll();
+        replyScheduler.cancelAll();
+        if (network != null)
+            network.unsubscribeReplies();
     }
 
+    /**
+     * Stores the toggles sent by the activities. The listener only acts on them once the
+     * preference change comes back through {@link #preferenceListener}.
+     */
     private class EnableToggleReceiver extends BroadcastReceiver {
 
         @Override
         public void onReceive(Context context, Intent intent) {
             if (intent.getAction().equals(ENABLE_ASSIST)) {
-                isAssistEnabled = intent.getStringExtra(isAssistOn).equals("1");
-                editor.putBoolean(isAssistOn, isAssistEnabled);
-                Log.d(TAG, "assist " + isAssistEnabled);
+                editor.putBoolean(isAssistOn, intent.getStringExtra(isAssistOn).equals("1"));
             } else if (intent.getAction().equals(ENABLE_NOTIFY)) {
-                isNotifyEnabled = intent.getStringExtra(isNotifyOn).equals("1");
-                editor.putBoolean(isNotifyOn, isNotifyEnabled);
-                Log.d(TAG, "notify " + isNotifyEnabled);
-                if (isNotifyEnabled) {
-                    connectToFirebase();
-                } else {
-                    reference.child("desktop").removeEventListener(messagesListener);
-                }
+                editor.putBoolean(isNotifyOn, intent.getStringExtra(isNotifyOn).equals("1"));
             } else if (intent.getAction().equals(ENABLE_WA)) {
-                isWhatsAppEnabled = intent.getStringExtra(isWhatsAppOn).equals("1");
-                editor.putBoolean(isWhatsAppOn, isWhatsAppEnabled);
-                Log.d(TAG, "wa " + isWhatsAppEnabled);
-                if (!isWhatsAppEnabled)
-                    waList.clear();
+                editor.putBoolean(isWhatsAppOn, intent.getStringExtra(isWhatsAppOn).equals("1"));
             } else if (intent.getAction().equals(ENABLE_FB_MSG)) {
-                isFbMsgEnabled = intent.getStringExtra(isFbMsgOn).equals("1");
-                editor.putBoolean(isFbMsgOn, isFbMsgEnabled);
-                Log.d(TAG, "fbmsg " + isFbMsgEnabled);
-                if (!isFbMsgEnabled)
-                    fbMsgList.clear();
+                editor.putBoolean(isFbMsgOn, intent.getStringExtra(isFbMsgOn).equals("1"));
             }
             editor.apply();
         }
     }
 
-    private void connectToFirebase() {
-        reference = FirebaseDatabase.getInstance().getReference("notifyme/" + phoneNumber);
-        reference.child("desktop").addValueEventListener(messagesListener);
+    /**
+     * Builds the settings snapshot. Only called when the preferences change, nothing on the
+     * notification path reads preferences.
+     */
+    private ListenerConfig loadConfig() {
+        Set<String> assistApps = new HashSet<>();
+        Map<String, String> greetings = new HashMap<>();
+        for (AppHandler appHandler : registry.getAll()) {
+            if (sharedPreferences.getBoolean(appHandler.getEnablePreference(), false))
+                assistApps.add(appHandler.getPackageName());
+            greetings.put(appHandler.getPackageName(), sharedPreferences.getString(appHandler.getGreetingPreference(), ""));
+        }
+        return new ListenerConfig(sharedPreferences.getBoolean(isAssistOn, false),
+                sharedPreferences.getBoolean(isNotifyOn, false), assistApps, greetings);
     }
 
-    private ValueEventListener messagesListener = new ValueEventListener() {
+    private boolean isConfigPreference(String key) {
+        if (isAssistOn.equals(key) || isNotifyOn.equals(key))
+            return true;
+        for (AppHandler appHandler : registry.getAll()) {
+            if (appHandler.getEnablePreference().equals(key) || appHandler.getGreetingPreference().equals(key))
+                return true;
+        }
+        return false;
+    }
+
+    // Held in a field, the preferences only keep a weak reference to their listeners
+    private final SharedPreferences.OnSharedPreferenceChangeListener preferenceListener = new SharedPreferences.OnSharedPreferenceChangeListener() {
         @Override
-        public void onDataChange(DataSnapshot dataSnapshot) {
-            HashMap<String, String> object = (HashMap<String, String>) dataSnapshot.getValue();
-            if (object != null) {
-                Log.d("data", object.toString());
-                String appName = object.get("app_name");
-                String senderName = object.get("name");
-                String senderMsg = object.get("message");
-                String id = object.get("id");
-
-//                handler.postDelayed(new Runnable() {
-//                    @Override
-//                    public void run() {
-//                        reference.child("desktop").setValue(null);
-//                    }
-//                }, 5000);
-                try {
-                    reply(hashMap.get(id).getRemoteInputs(), hashMap.get(id).getPendingIntent(), hashMap.get(id).getBundle(), senderName, appName, senderMsg, id);
-                } catch (Exception e) {
-                    e.printStackTrace();
-                }
+        public void onSharedPreferenceChanged(SharedPreferences preferences, String key) {
+            if (PRIORITY_CONVERSATIONS.equals(key))
+                uploadPolicy.setPriorityConversations(preferences.getStringSet(PRIORITY_CONVERSATIONS, Collections.<String>emptySet()));
+            if (!isConfigPreference(key))
+                return;
+            ListenerConfig config = loadConfig();
+            ListenerConfig previous = processor.setConfig(config);
+            Log.d(TAG, "config " + config);
+            if (!previous.isAssistEnabled() && config.isAssistEnabled()) {
+                processor.getAssistGate().hold();
+                warmUpThread.execute(warmUpAssist);
+            } else if (previous.isAssistEnabled() && !config.isAssistEnabled()) {
+                coalescer.cancelAll();
+                assistantClient.cancelAll();
+                replyScheduler.cancelAll();
+            }
+            if (!previous.isNotifyEnabled() && config.isNotifyEnabled()) {
+                processor.getNotifyGate().hold();
+                warmUpThread.execute(warmUpNotify);
+            } else if (previous.isNotifyEnabled() && !config.isNotifyEnabled() && network != null) {
+                network.unsubscribeReplies();
             }
         }
+    };
+
+    private class UploadConditionsReceiver extends BroadcastReceiver {
 
         @Override
-        public void onCancelled(DatabaseError databaseError) {
+        public void onReceive(Context context, Intent intent) {
+            updateUploadConditions();
+        }
+    }
 
+    /**
+     * Tells the upload policy the current network type and Doze state.
+     */
+    private void updateUploadConditions() {
+        ConnectivityManager connectivity = (ConnectivityManager) getSystemService(CONNECTIVITY_SERVICE);
+        NetworkInfo info = connectivity.getActiveNetworkInfo();
+        if (info == null || !info.isConnected()) {
+            uploadPolicy.setNetwork(UploadPolicy.Network.NONE);
+        } else {
+            uploadPolicy.setNetwork(connectivity.isActiveNetworkMetered() ? UploadPolicy.Network.METERED : UploadPolicy.Network.UNMETERED);
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M)
+            uploadPolicy.setIdle(((PowerManager) getSystemService(POWER_SERVICE)).isDeviceIdleMode());
+        if (outboxNetwork != null)
+            outboxNetwork.onConditionsChanged();
+    }
+
+    private final UploadPolicy.FlushJob flushJob = new UploadPolicy.FlushJob() {
+        @Override
+        public void schedule() {
+            UploadJobService.schedule(NotificationListener.this);
         }
     };
 
-    private void handleConversationalBot(StatusBarNotification statusBarNotification) {
-        final Bundle bundle = statusBarNotification.getNotification().extras;
+    /**
+     * Only called on the warm-up thread.
+     */
+    private void connectToFirebase() {
+        if (network == null) {
+            NetworkManagement transport = createNetworkManagement();
+            if (outboxNetwork != null) {
+                outboxNetwork.setTransport(transport);
+                network = outboxNetwork;
+            } else {
+                processor.getForwarder().setNetwork(transport);
+                network = transport;
+            }
+        }
+        network.subscribeReplies(processor.getForwarder());
+    }
 
-        final String packageName = statusBarNotification.getPackageName();
+    /**
+     * Reads the on-device intent rules. The user edits the copy in the files directory, it is
+     * seeded from the bundled defaults the first time.
+     */
+    private final Runnable loadIntentRules = new Runnable() {
+        @Override
+        public void run() {
+            File rules = new File(getFilesDir(), INTENT_RULES_FILE);
+            try {
+                if (!rules.exists())
+                    copy(getAssets().open(INTENT_RULES_FILE), new FileOutputStream(rules));
+                Reader reader = new InputStreamReader(new FileInputStream(rules), "UTF-8");
+                try {
+                    assistantClient.setIntentMatcher(new IntentMatcher(IntentMatcher.parse(reader)));
+                } finally {
+                    reader.close();
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "could not load " + rules, e);
+            }
+        }
+    };
 
-        Notification.WearableExtender extender = new Notification.WearableExtender(statusBarNotification.getNotification());
-        List<Notification.Action> actions = extender.getActions();
-        for (Notification.Action act : actions) {
-            if (act != null && act.getRemoteInputs() != null) {
-                remoteInputs = act.getRemoteInputs();
-                pendingIntent = act.actionIntent;
+    private static void copy(InputStream in, OutputStream out) throws IOException {
+        try {
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
             }
+        } finally {
+            in.close();
+            out.close();
+        }
+    }
+
+    /**
+     * The only place that knows which transport carries notifications to the desktop.
+     */
+    protected NetworkManagement createNetworkManagement() {
+        return new FirebaseNetworkManagement(phoneNumber,
+                sharedPreferences.getInt(PUBLISH_WINDOW_MS, DEFAULT_PUBLISH_WINDOW_MS),
+                sharedPreferences.getInt(PUBLISH_BATCH_SIZE, DEFAULT_PUBLISH_BATCH_SIZE));
+    }
+
+    private AssistResponder.Greetings greetings = new AssistResponder.Greetings() {
+        @Override
+        public String getGreeting(String packageName) {
+            return processor.getConfig().getGreeting(packageName);
         }
+    };
 
-        String queryText = bundle.getString(Notification.EXTRA_TEXT);
-        final String senderName = bundle.getString(Notification.EXTRA_TITLE);
+    private AssistResponder.ConversationHandler conversationHandler = new AssistResponder.ConversationHandler() {
+        @Override
+        public void onConversation(ParsedNotification notification) {
+            handleConversationalBot(notification);
+        }
+    };
 
-        if (!queryText.contains("new messages") || !queryText.contains("new message")) {
-            new AsyncTask<AIRequest, Void, AIResponse>() {
+    private void handleConversationalBot(ParsedNotification notification) {
+        String queryText = notification.getText();
 
-                protected AIResponse doInBackground(AIRequest... requests) {
-                    final AIRequest request = requests[0];
-                    try {
-                        return aiDataService.request(request);
-                    } catch (AIServiceException e) {
-                        e.printStackTrace();
-                    }
-                    return null;
-                }
+        if (queryText == null)
+            return;
 
-                @Override
-                protected void onPostExecute(AIResponse aiResponse) {
-                    if (aiResponse != null) {
-                        reply(remoteInputs, pendingIntent, bundle, senderName, packageName, aiResponse.getResult().getFulfillment().getSpeech(), senderName);
-                    }
-                }
+        // summaries of apps that do not flag them as such, e.g. "3 new messages"
+        if (!SUMMARY_TEXT.matcher(queryText).find())
+            coalescer.submit(notification);
+    }
 
-            }.execute(new AIRequest(queryText));
+    private final BurstCoalescer.BurstListener burstListener = new BurstCoalescer.BurstListener() {
+        @Override
+        public void onBurst(ParsedNotification latest, String text) {
+            ReplyAction replyAction = replyScheduler.wrap(ReplyScheduler.conversationKey(latest), text, latest.getReplyAction());
+            if (replyAction != null && !assistantClient.submit(text, replyAction))
+                Log.w(TAG, "assistant saturated, dropped query from " + latest.getTitle());
         }
-    }
+    };
+
+    private final AssistantClient.Backend assistantBackend = new AssistantClient.Backend() {
+        @Override
+        public String query(String text) throws AIServiceException {
+            AIDataService service = aiDataService;
+            if (service == null)
+                return null;
+            AIResponse aiResponse = service.request(new AIRequest(text));
+            if (aiResponse == null || aiResponse.isError())
+                return null;
+            return aiResponse.getResult().getFulfillment().getSpeech();
+        }
+    };
 }
@@ -0,0 +1,94 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Vishal Dubey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ **/
+
+package vishal.vaf.notifyme.services;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+
+import vishal.vaf.notifyme.utils.OutboxNetworkManagement;
+import vishal.vaf.notifyme.utils.UploadPolicy;
+
+/**
+ * Flush job of the {@link UploadPolicy}: uploads held back while the device dozed or had no
+ * network are sent once the system runs this job, in a Doze maintenance window or when a
+ * network comes up.
+ */
+
+public class UploadJobService extends JobService {
+
+    private static final int JOB_ID = 1;
+
+    // Set by the listener service while it runs, both live in the same process
+    private static OutboxNetworkManagement outbox;
+    // The job ran while no outbox was set, the next one set is flushed right away
+    private static boolean missedRun;
+
+    static void setOutbox(OutboxNetworkManagement outbox) {
+        synchronized (UploadJobService.class) {
+            UploadJobService.outbox = outbox;
+            if (outbox == null || !missedRun)
+                return;
+            missedRun = false;
+        }
+        outbox.flush(null);
+    }
+
+    static void schedule(Context context) {
+        JobScheduler scheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        scheduler.schedule(new JobInfo.Builder(JOB_ID, new ComponentName(context, UploadJobService.class))
+                .setRequiredNetworkType(JobInfo.NETWORK_TYPE_ANY)
+                .build());
+    }
+
+    @Override
+    public boolean onStartJob(final JobParameters params) {
+        OutboxNetworkManagement outbox;
+        synchronized (UploadJobService.class) {
+            outbox = UploadJobService.outbox;
+            if (outbox == null) {
+                missedRun = true;
+                return false;
+            }
+        }
+        // keeps the job, and with it the system's wake lock, until the upload was attempted
+        outbox.flush(new Runnable() {
+            @Override
+            public void run() {
+                jobFinished(params, false);
+            }
+        });
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        return true;
+    }
+
+}
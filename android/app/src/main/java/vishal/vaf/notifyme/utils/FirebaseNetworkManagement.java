@@ -0,0 +1,334 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Vishal Dubey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ **/
+
+package vishal.vaf.notifyme.utils;
+
+import android.util.Log;
+
+import com.google.firebase.database.ChildEventListener;
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.DatabaseReference;
+import com.google.firebase.database.FirebaseDatabase;
+import com.google.firebase.database.ValueEventListener;
+
+import java.io.PrintWriter;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import vishal.vaf.notifyme.model.ConversationMessage;
+import vishal.vaf.notifyme.model.DesktopReply;
+import vishal.vaf.notifyme.processing.ConversationSync;
+
+/**
+ * {@link NetworkManagement} on top of the Firebase realtime database, rooted at
+ * {@code notifyme/<phone>}:
+ * <ul>
+ * <li>{@code app/<key>}: stream of forwarded notifications shared by all desktops, appended in
+ * batches by a {@link BatchingPublisher} or replayed from the outbox, under {@link StreamKeys}</li>
+ * <li>{@code conversations/<id>/<message key>}: message history of each conversation, only
+ * messages the desktop has not seen are written</li>
+ * <li>{@code threads/<id>/updated}: key of the newest message of each conversation; threads
+ * not updated within the retention are deleted together with their history</li>
+ * <li>{@code remove/id}: id of the last dismissed conversation</li>
+ * <li>{@code devices/<device id>/cursor}: registered desktops and the last stream key each has
+ * shown, the stream is trimmed behind the slowest one and to the retention ({@link StreamCursors})</li>
+ * <li>{@code replies/<device id>/<push key>}: queued replies of each desktop, deleted once
+ * acknowledged</li>
+ * <li>{@code desktop/<push key>}: reply queue of desktops that predate device registration</li>
+ * </ul>
+ * Replies are keyed by their path, so acknowledging one works the same for every queue.
+ */
+
+public class FirebaseNetworkManagement implements NetworkManagement {
+
+    private static final String TAG = FirebaseNetworkManagement.class.getSimpleName();
+
+    private static final long WRITE_TIMEOUT_SECONDS = 30;
+
+    private final DatabaseReference reference;
+    private final BatchingPublisher<Map<String, String>> publisher;
+
+    private ReplyListener replyListener;
+
+    private final StreamCursors cursors = new StreamCursors();
+    // Reply queue listener of each registered device, guarded by this
+    private final Map<String, ReplyQueueListener> deviceQueues = new HashMap<>();
+    private final ReplyQueueListener legacyQueue = new ReplyQueueListener("desktop");
+    private long lastThreadTrimAt;
+
+    public FirebaseNetworkManagement(String phoneNumber, long publishWindowMillis, int publishBatchSize) {
+        reference = FirebaseDatabase.getInstance().getReference("notifyme/" + phoneNumber);
+        publisher = new BatchingPublisher<>(batchWriter, publishWindowMillis, publishBatchSize);
+    }
+
+    @Override
+    public void publishNotification(Map<String, String> payload) {
+        publisher.publish(payload);
+    }
+
+    @Override
+    public void publishMessages(String conversationId, List<ConversationMessage> messages) {
+        Map<String, Object> update = new HashMap<>();
+        for (ConversationMessage message : messages) {
+            update.put(ConversationSync.messagePath(conversationId, message), message.toMap());
+        }
+        update.put(ConversationSync.threadPath(conversationId), ConversationSync.threadIndex(messages));
+        reference.updateChildren(update);
+        trimThreads();
+    }
+
+    @Override
+    public void write(Map<String, Map<String, String>> entries) throws Exception {
+        Map<String, Object> update = new HashMap<String, Object>(entries);
+        final CountDownLatch written = new CountDownLatch(1);
+        final DatabaseError[] error = new DatabaseError[1];
+        reference.updateChildren(update, new DatabaseReference.CompletionListener() {
+            @Override
+            public void onComplete(DatabaseError databaseError, DatabaseReference databaseReference) {
+                error[0] = databaseError;
+                written.countDown();
+            }
+        });
+        if (!written.await(WRITE_TIMEOUT_SECONDS, TimeUnit.SECONDS))
+            throw new TimeoutException("no confirmation for " + entries.size() + " entries");
+        if (error[0] != null)
+            throw error[0].toException();
+        trimStream();
+        trimThreads();
+    }
+
+    @Override
+    public void publishRemoval(String id) {
+        reference.child("remove" + "/id").setValue(id);
+    }
+
+    @Override
+    public synchronized void subscribeReplies(ReplyListener listener) {
+        if (replyListener != null)
+            unsubscribeReplies();
+        replyListener = listener;
+        reference.child(legacyQueue.path).addChildEventListener(legacyQueue);
+        reference.child("devices").addChildEventListener(devicesListener);
+    }
+
+    @Override
+    public synchronized void unsubscribeReplies() {
+        reference.child("devices").removeEventListener(devicesListener);
+        reference.child(legacyQueue.path).removeEventListener(legacyQueue);
+        for (ReplyQueueListener queue : deviceQueues.values()) {
+            reference.child(queue.path).removeEventListener(queue);
+        }
+        deviceQueues.clear();
+        replyListener = null;
+    }
+
+    @Override
+    public void acknowledgeReply(DesktopReply reply) {
+        reference.child(reply.getKey()).removeValue();
+    }
+
+    @Override
+    public void close() {
+        unsubscribeReplies();
+        publisher.shutdown();
+    }
+
+    @Override
+    public void dump(PrintWriter writer) {
+        publisher.dump(writer);
+        cursors.dump(writer);
+    }
+
+    /**
+     * Deletes the stream entries every device has passed and those older than the retention, at
+     * most once per trim interval. Runs after stream writes and device updates, so the stream
+     * is kept short even when no desktop is registered.
+     */
+    private void trimStream() {
+        final long now = System.currentTimeMillis();
+        final String point;
+        synchronized (cursors) {
+            point = cursors.trimPoint(now);
+            if (point == null)
+                return;
+            cursors.trimmed(point, now);
+        }
+        reference.child("app").orderByKey().endAt(point).addListenerForSingleValueEvent(new ValueEventListener() {
+            @Override
+            public void onDataChange(DataSnapshot dataSnapshot) {
+                Map<String, Object> update = new HashMap<>();
+                for (DataSnapshot entry : dataSnapshot.getChildren()) {
+                    update.put(entry.getKey(), null);
+                }
+                if (!update.isEmpty())
+                    reference.child("app").updateChildren(update);
+            }
+
+            @Override
+            public void onCancelled(DatabaseError databaseError) {
+                Log.e(TAG, "stream trim cancelled: " + databaseError.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Deletes the threads not updated within the retention, at most once per trim interval.
+     */
+    private void trimThreads() {
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            if (now - lastThreadTrimAt < TimeUnit.MINUTES.toMillis(StreamCursors.DEFAULT_TRIM_INTERVAL_MINUTES))
+                return;
+            lastThreadTrimAt = now;
+        }
+        reference.child("threads").orderByChild(ConversationSync.UPDATED).endAt(ConversationSync.retentionCutoff(now))
+                .addListenerForSingleValueEvent(new ValueEventListener() {
+                    @Override
+                    public void onDataChange(DataSnapshot dataSnapshot) {
+                        Map<String, Object> update = new HashMap<>();
+                        for (DataSnapshot thread : dataSnapshot.getChildren()) {
+                            update.put("threads/" + thread.getKey(), null);
+                            update.put("conversations/" + thread.getKey(), null);
+                        }
+                        if (!update.isEmpty())
+                            reference.updateChildren(update);
+                    }
+
+                    @Override
+                    public void onCancelled(DatabaseError databaseError) {
+                        Log.e(TAG, "thread trim cancelled: " + databaseError.getMessage());
+                    }
+                });
+    }
+
+    private final BatchingPublisher.BatchWriter<Map<String, String>> batchWriter = new BatchingPublisher.BatchWriter<Map<String, String>>() {
+        @Override
+        public void write(List<Map<String, String>> batch) {
+            Map<String, Object> update = new HashMap<>();
+            for (Map<String, String> object : batch) {
+                update.put("app/" + StreamKeys.next(), object);
+            }
+            reference.updateChildren(update);
+            trimStream();
+        }
+    };
+
+    /**
+     * Follows device registrations: every device gets its reply queue subscribed and its
+     * cursor tracked.
+     */
+    private final ChildEventListener devicesListener = new ChildEventListener() {
+        @Override
+        public void onChildAdded(DataSnapshot dataSnapshot, String previousChildName) {
+            onDevice(dataSnapshot);
+        }
+
+        @Override
+        public void onChildChanged(DataSnapshot dataSnapshot, String previousChildName) {
+            onDevice(dataSnapshot);
+        }
+
+        @Override
+        public void onChildRemoved(DataSnapshot dataSnapshot) {
+            String deviceId = dataSnapshot.getKey();
+            cursors.remove(deviceId);
+            synchronized (FirebaseNetworkManagement.this) {
+                ReplyQueueListener queue = deviceQueues.remove(deviceId);
+                if (queue != null)
+                    reference.child(queue.path).removeEventListener(queue);
+            }
+        }
+
+        @Override
+        public void onChildMoved(DataSnapshot dataSnapshot, String previousChildName) {
+
+        }
+
+        @Override
+        public void onCancelled(DatabaseError databaseError) {
+            Log.e(TAG, "devices cancelled: " + databaseError.getMessage());
+        }
+
+        private void onDevice(DataSnapshot dataSnapshot) {
+            String deviceId = dataSnapshot.getKey();
+            Object cursor = dataSnapshot.child("cursor").getValue();
+            cursors.update(deviceId, cursor instanceof String ? (String) cursor : null);
+            synchronized (FirebaseNetworkManagement.this) {
+                if (replyListener != null && !deviceQueues.containsKey(deviceId)) {
+                    ReplyQueueListener queue = new ReplyQueueListener("replies/" + deviceId);
+                    deviceQueues.put(deviceId, queue);
+                    reference.child(queue.path).addChildEventListener(queue);
+                }
+            }
+            trimStream();
+        }
+    };
+
+    private class ReplyQueueListener implements ChildEventListener {
+
+        private final String path;
+
+        ReplyQueueListener(String path) {
+            this.path = path;
+        }
+
+        @Override
+        public void onChildAdded(DataSnapshot dataSnapshot, String previousChildName) {
+            Object value = dataSnapshot.getValue();
+            ReplyListener listener;
+            synchronized (FirebaseNetworkManagement.this) {
+                listener = replyListener;
+            }
+            if (!(value instanceof Map) || listener == null)
+                return;
+            listener.onReply(DesktopReply.fromMap(path + "/" + dataSnapshot.getKey(), (Map<?, ?>) value));
+        }
+
+        @Override
+        public void onChildChanged(DataSnapshot dataSnapshot, String previousChildName) {
+
+        }
+
+        @Override
+        public void onChildRemoved(DataSnapshot dataSnapshot) {
+
+        }
+
+        @Override
+        public void onChildMoved(DataSnapshot dataSnapshot, String previousChildName) {
+
+        }
+
+        @Override
+        public void onCancelled(DatabaseError databaseError) {
+            Log.e(TAG, path + " replies cancelled: " + databaseError.getMessage());
+        }
+    }
+
+}
@@ -0,0 +1,86 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Vishal Dubey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ **/
+
+package vishal.vaf.notifyme.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import vishal.vaf.notifyme.utils.ConversationIdNormalizer;
+
+/**
+ * Conversation id derivation: the old regex chain against the normalizer, with the memo
+ * cache hit every time and missed every time.
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConversationIdBenchmark {
+
+    private ConversationIdNormalizer cached;
+    private ConversationIdNormalizer uncached;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        cached = new ConversationIdNormalizer();
+        // smaller than the number of titles, so cycling through them never hits
+        uncached = new ConversationIdNormalizer(1);
+    }
+
+    private String nextTitle() {
+        next = (next + 1) & (Fixtures.TITLES.length - 1);
+        return Fixtures.TITLES[next];
+    }
+
+    @Benchmark
+    public String legacyRegex() {
+        return nextTitle().toLowerCase().replaceAll("\\(.*?\\)", "").replace(":", "").replaceAll(" ", "");
+    }
+
+    @Benchmark
+    public String normalizerCacheHit() {
+        return cached.normalize(nextTitle());
+    }
+
+    @Benchmark
+    public String normalizerCacheMiss() {
+        return uncached.normalize(nextTitle());
+    }
+
+}
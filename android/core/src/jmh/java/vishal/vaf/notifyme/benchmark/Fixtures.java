@@ -0,0 +1,108 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Vishal Dubey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ **/
+
+package vishal.vaf.notifyme.benchmark;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import vishal.vaf.notifyme.handlers.AppHandlerRegistry;
+import vishal.vaf.notifyme.handlers.WhatsAppHandler;
+import vishal.vaf.notifyme.model.DesktopReply;
+import vishal.vaf.notifyme.model.ParsedNotification;
+import vishal.vaf.notifyme.model.ReplyAction;
+import vishal.vaf.notifyme.processing.AssistResponder;
+import vishal.vaf.notifyme.processing.NotificationProcessor;
+import vishal.vaf.notifyme.processing.NotifyForwarder;
+import vishal.vaf.notifyme.utils.ConversationIdNormalizer;
+import vishal.vaf.notifyme.utils.LoopbackNetworkManagement;
+import vishal.vaf.notifyme.utils.LruTtlCache;
+
+/**
+ * Shared fixtures for the benchmarks: a processor wired to the loopback transport, replies
+ * run on the calling thread and reply actions that always succeed.
+ */
+
+final class Fixtures {
+
+    static final String[] TITLES = {
+            "Mom", "Rahul Sharma", "Family Group: Dad", "Work (3 messages): Alice",
+            "Priya", "Office Friends: Sam", "John Doe", "Cricket Team (12 messages): Aman",
+            "Neha Verma", "College Group: Rohit", "Landlord", "Bob (2)",
+            "Anjali", "Trip Planning: Karan", "Dentist", "Vikram Singh"
+    };
+
+    static final String[] TEXTS = {
+            "ok", "where are you?", "call me when free", "thanks!", "see you at 7",
+            "did you eat?", "meeting moved to 4", "lol"
+    };
+
+    static final AppHandlerRegistry REGISTRY = AppHandlerRegistry.createDefault();
+
+    static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    static final ReplyAction SENT = new ReplyAction() {
+        @Override
+        public boolean send(String message) {
+            return true;
+        }
+    };
+
+    private Fixtures() {
+
+    }
+
+    static ParsedNotification posted(String packageName, int i) {
+        String title = TITLES[i % TITLES.length];
+        return new ParsedNotification(packageName, "0|" + packageName + "|" + i, title, REGISTRY.get(packageName).getSender(title, null),
+                TEXTS[i % TEXTS.length], false, SENT);
+    }
+
+    static DesktopReply reply(String id, int i) {
+        return new DesktopReply("key" + i, id, WhatsAppHandler.PACKAGE_NAME, "Desktop", TEXTS[i % TEXTS.length]);
+    }
+
+    static NotificationProcessor processor(LoopbackNetworkManagement network, AssistResponder.ConversationHandler conversationHandler) {
+        NotifyForwarder forwarder = new NotifyForwarder(new ConversationIdNormalizer(),
+                new LruTtlCache<String, ReplyAction>(128, 12, TimeUnit.HOURS), DIRECT);
+        forwarder.setNetwork(network);
+        AssistResponder responder = new AssistResponder(REGISTRY, new AssistResponder.Greetings() {
+            @Override
+            public String getGreeting(String packageName) {
+                return "I'm busy right now, will get back to you soon.";
+            }
+        }, conversationHandler);
+        return new NotificationProcessor(REGISTRY, forwarder, responder);
+    }
+
+    static int drain(LoopbackNetworkManagement network) {
+        return network.drainNotifications().size() + network.drainRemovals().size();
+    }
+
+}
@@ -0,0 +1,191 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Vishal Dubey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ **/
+
+package vishal.vaf.notifyme.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import vishal.vaf.notifyme.handlers.MessengerHandler;
+import vishal.vaf.notifyme.handlers.WhatsAppHandler;
+import vishal.vaf.notifyme.model.ConversationMessage;
+import vishal.vaf.notifyme.model.ParsedNotification;
+import vishal.vaf.notifyme.model.RawNotification;
+import vishal.vaf.notifyme.processing.RepostFilter;
+
+/**
+ * Endless, reproducible stream of synthetic chat notifications shaped like what a busy phone
+ * posts: a few hot conversations and a long tail, WhatsApp and Messenger, group chats with
+ * several senders, MessagingStyle history, unchanged re-posts, group summaries and removals.
+ * Not thread safe.
+ */
+
+final class LoadGenerator {
+
+    private static final String[] NAMES = {
+            "Mom", "Rahul Sharma", "Priya", "John Doe", "Neha Verma", "Landlord", "Anjali", "Dentist",
+            "Vikram Singh", "Alice", "Sam", "Aman", "Karan", "Rohit", "Dad", "Bob"
+    };
+
+    private static final String[] GROUPS = {
+            "Family Group", "Office Friends", "Cricket Team", "College Group", "Trip Planning", "Flat 4B"
+    };
+
+    private static final int HISTORY = 7;
+    private static final double SUMMARY_SHARE = 0.05;
+
+    static final class Event implements RawNotification {
+
+        final ParsedNotification notification;
+        final long contentHash;
+        final boolean groupSummary;
+
+        Event(ParsedNotification notification, long contentHash, boolean groupSummary) {
+            this.notification = notification;
+            this.contentHash = contentHash;
+            this.groupSummary = groupSummary;
+        }
+
+        @Override
+        public String getPackageName() {
+            return notification.getPackageName();
+        }
+
+        @Override
+        public String getKey() {
+            return notification.getKey();
+        }
+
+        @Override
+        public boolean isRemoved() {
+            return notification.isRemoved();
+        }
+
+        @Override
+        public boolean isGroupSummary() {
+            return groupSummary;
+        }
+
+        @Override
+        public boolean isOngoing() {
+            return false;
+        }
+
+        @Override
+        public long getContentHash() {
+            return contentHash;
+        }
+    }
+
+    private final Random random;
+    private final double repostShare;
+    private final double removalShare;
+    private final Conversation[] conversations;
+
+    private long clock = 1500000000000L;
+
+    /**
+     * @param groupShare   share of conversations that are group chats
+     * @param repostShare  share of events that re-post the last notification unchanged
+     * @param removalShare share of events that dismiss a conversation
+     */
+    LoadGenerator(long seed, int conversations, double groupShare, double repostShare, double removalShare) {
+        this.random = new Random(seed);
+        this.repostShare = repostShare;
+        this.removalShare = removalShare;
+        this.conversations = new Conversation[conversations];
+        for (int i = 0; i < conversations; i++) {
+            String packageName = i % 3 == 2 ? MessengerHandler.PACKAGE_NAME : WhatsAppHandler.PACKAGE_NAME;
+            boolean group = random.nextDouble() < groupShare;
+            String name = group ? GROUPS[i % GROUPS.length] + " " + (i / GROUPS.length) : NAMES[i % NAMES.length] + " " + (i / NAMES.length);
+            this.conversations[i] = new Conversation(packageName, "0|" + packageName + "|" + i + "|null", name, group);
+        }
+    }
+
+    Event next() {
+        clock += 1 + random.nextInt(500);
+        // squared uniform: low indexes, the hot conversations, come up far more often
+        double pick = random.nextDouble();
+        Conversation conversation = conversations[(int) (conversations.length * pick * pick)];
+        double kind = random.nextDouble();
+        if (conversation.last != null) {
+            if (kind < removalShare)
+                return conversation.remove();
+            if (kind < removalShare + repostShare)
+                return conversation.last;
+            if (kind < removalShare + repostShare + SUMMARY_SHARE)
+                return conversation.summary();
+        }
+        return conversation.post();
+    }
+
+    private class Conversation {
+
+        private final String packageName;
+        private final String key;
+        private final String name;
+        private final boolean group;
+
+        private final List<ConversationMessage> history = new ArrayList<>();
+        private Event last;
+
+        Conversation(String packageName, String key, String name, boolean group) {
+            this.packageName = packageName;
+            this.key = key;
+            this.name = name;
+            this.group = group;
+        }
+
+        Event post() {
+            String sender = group ? NAMES[random.nextInt(NAMES.length)] : name;
+            String text = Fixtures.TEXTS[random.nextInt(Fixtures.TEXTS.length)];
+            history.add(new ConversationMessage(sender, text, clock));
+            if (history.size() > HISTORY)
+                history.remove(0);
+            String title = group ? name + ": " + sender : name;
+            ParsedNotification notification = new ParsedNotification(packageName, key, title, sender, text, false,
+                    Fixtures.SENT, new ArrayList<>(history));
+            last = new Event(notification, RepostFilter.contentHash(title, text, String.valueOf(clock),
+                    String.valueOf(history.size())), false);
+            return last;
+        }
+
+        Event summary() {
+            String text = history.size() + " new messages";
+            ParsedNotification notification = new ParsedNotification(packageName, key + "|summary", packageName, null,
+                    text, false, null);
+            return new Event(notification, 0, true);
+        }
+
+        Event remove() {
+            ParsedNotification notification = new ParsedNotification(packageName, key, last.notification.getTitle(),
+                    null, null, true, null);
+            history.clear();
+            last = null;
+            return new Event(notification, 0, false);
+        }
+    }
+
+}
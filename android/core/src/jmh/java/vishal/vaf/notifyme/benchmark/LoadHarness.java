@@ -0,0 +1,224 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Vishal Dubey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ **/
+
+package vishal.vaf.notifyme.benchmark;
+
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import vishal.vaf.notifyme.handlers.MessengerHandler;
+import vishal.vaf.notifyme.handlers.WhatsAppHandler;
+import vishal.vaf.notifyme.model.ListenerConfig;
+import vishal.vaf.notifyme.model.ParsedNotification;
+import vishal.vaf.notifyme.pipeline.OverflowPolicy;
+import vishal.vaf.notifyme.pipeline.Pipeline;
+import vishal.vaf.notifyme.pipeline.Stage;
+import vishal.vaf.notifyme.processing.AssistResponder;
+import vishal.vaf.notifyme.processing.NotificationProcessor;
+import vishal.vaf.notifyme.processing.ReplyScheduler;
+import vishal.vaf.notifyme.utils.LoopbackNetworkManagement;
+import vishal.vaf.notifyme.utils.MetricsRegistry;
+
+/**
+ * Long running load test of the listener's ingestion path: the same screen, filter and publish
+ * stages the service runs, fed by {@link LoadGenerator} at a fixed rate, publishing to the
+ * loopback transport which a simulated desktop drains every 100ms. Only extraction, which needs
+ * a real StatusBarNotification, is replaced by handing on the generated notification.
+ * <p>
+ * Reports sustained throughput, drops, the time from arrival to publish (percentiles) and heap
+ * growth. Settings are system properties, see {@code ./gradlew :core:loadHarness}:
+ * {@code load.rate} (notifications per second), {@code load.duration} (seconds),
+ * {@code load.burst} (notifications arriving together), {@code load.mode} (notify or assist),
+ * {@code load.conversations} and {@code load.seed}.
+ */
+
+public final class LoadHarness {
+
+    private static final int PIPELINE_CAPACITY = 64;
+    private static final long REPORT_INTERVAL_SECONDS = 10;
+
+    private LoadHarness() {
+
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int rate = Integer.getInteger("load.rate", 200);
+        int duration = Integer.getInteger("load.duration", 60);
+        int burst = Math.max(1, Integer.getInteger("load.burst", 1));
+        boolean assist = "assist".equals(System.getProperty("load.mode", "notify"));
+        int conversations = Integer.getInteger("load.conversations", 200);
+        long seed = Long.getLong("load.seed", 42);
+
+        final LoopbackNetworkManagement network = new LoopbackNetworkManagement();
+        ReplyScheduler replyScheduler = new ReplyScheduler();
+        final NotificationProcessor processor = assist ? assistProcessor(replyScheduler) : Fixtures.processor(network, IGNORE);
+        processor.setConfig(new ListenerConfig(assist, !assist,
+                new HashSet<>(Arrays.asList(WhatsAppHandler.PACKAGE_NAME, MessengerHandler.PACKAGE_NAME)),
+                Collections.<String, String>emptyMap()));
+
+        MetricsRegistry metrics = new MetricsRegistry();
+        Pipeline<LoadGenerator.Event> pipeline = new Pipeline<>("ingest", PIPELINE_CAPACITY, OverflowPolicy.DROP_OLDEST);
+        pipeline.setMetrics(metrics)
+                .addStage("screen", processor.<LoadGenerator.Event>newScreenStage())
+                .addStage("extract", new Stage<LoadGenerator.Event, ParsedNotification>() {
+                    @Override
+                    public ParsedNotification process(LoadGenerator.Event event) {
+                        return event.notification;
+                    }
+                })
+                .addStage("filter", processor.getFilterStage())
+                .addStage("publish", processor.getDispatchStage())
+                .start();
+        MetricsRegistry.Histogram latency = metrics.histogram("ingest.publish");
+
+        // the desktop reading the stream
+        ScheduledExecutorService desktop = Executors.newSingleThreadScheduledExecutor();
+        desktop.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                network.drainNotifications();
+                network.drainMessages();
+                network.drainRemovals();
+            }
+        }, 100, 100, TimeUnit.MILLISECONDS);
+
+        PrintWriter out = new PrintWriter(System.out, true);
+        out.println("Load: " + rate + "/s for " + duration + "s, bursts of " + burst + ", "
+                + (assist ? "assist" : "notify") + " mode, " + conversations + " conversations, seed " + seed);
+
+        LoadGenerator generator = new LoadGenerator(seed, conversations, 0.3, 0.1, 0.02);
+        long heapAtStart = usedHeapAfterGc();
+        long maxHeap = heapAtStart;
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) * burst / rate;
+        long start = System.nanoTime();
+        long end = start + TimeUnit.SECONDS.toNanos(duration);
+        long nextReport = start + TimeUnit.SECONDS.toNanos(REPORT_INTERVAL_SECONDS);
+        long offered = 0;
+        long next = start;
+        while (next < end) {
+            long wait = next - System.nanoTime();
+            if (wait > 0)
+                LockSupport.parkNanos(wait);
+            for (int i = 0; i < burst; i++) {
+                pipeline.submit(generator.next());
+            }
+            offered += burst;
+            next += intervalNanos;
+            if (System.nanoTime() >= nextReport) {
+                long heap = usedHeap();
+                maxHeap = Math.max(maxHeap, heap);
+                out.println(String.format(Locale.ROOT, "%4ds offered=%d published=%d heap=%.1fMB latency %s",
+                        TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start), offered, latency.getCount(),
+                        heap / 1e6, latency));
+                nextReport += TimeUnit.SECONDS.toNanos(REPORT_INTERVAL_SECONDS);
+            }
+        }
+        long offeredFor = System.nanoTime() - start;
+        awaitIdle(pipeline, TimeUnit.SECONDS.toNanos(5));
+        long elapsed = System.nanoTime() - start;
+        maxHeap = Math.max(maxHeap, usedHeap());
+
+        desktop.shutdownNow();
+        pipeline.shutdown();
+        long heapAtEnd = usedHeapAfterGc();
+        maxHeap = Math.max(maxHeap, heapAtEnd);
+
+        double minutes = elapsed / 60e9;
+        out.println();
+        out.println(String.format(Locale.ROOT, "Offered %d in %.1fs (%.0f/s), published %d (%.0f/s)",
+                offered, offeredFor / 1e9, offered / (offeredFor / 1e9), latency.getCount(), latency.getCount() / (elapsed / 1e9)));
+        out.println(String.format(Locale.ROOT, "Arrival to publish: p50=%.2fms p90=%.2fms p99=%.2fms p99.9=%.2fms",
+                latency.getPercentile(50) / 1e6, latency.getPercentile(90) / 1e6,
+                latency.getPercentile(99) / 1e6, latency.getPercentile(99.9) / 1e6));
+        out.println(String.format(Locale.ROOT, "Heap: live start=%.1fMB end=%.1fMB growth=%.2fMB/min, peak sampled=%.1fMB (with garbage)",
+                heapAtStart / 1e6, heapAtEnd / 1e6, (heapAtEnd - heapAtStart) / 1e6 / minutes, maxHeap / 1e6));
+        pipeline.dump(out);
+        processor.getRepostFilter().dump(out);
+        network.dump(out);
+        if (assist)
+            replyScheduler.dump(out);
+        metrics.dump(out);
+        System.exit(0);
+    }
+
+    private static final AssistResponder.ConversationHandler IGNORE = new AssistResponder.ConversationHandler() {
+        @Override
+        public void onConversation(ParsedNotification notification) {
+
+        }
+    };
+
+    /**
+     * Assist mode with greetings going through a {@link ReplyScheduler}, as in the service.
+     */
+    private static NotificationProcessor assistProcessor(ReplyScheduler replyScheduler) {
+        NotificationProcessor notify = Fixtures.processor(new LoopbackNetworkManagement(), IGNORE);
+        AssistResponder responder = new AssistResponder(Fixtures.REGISTRY, new AssistResponder.Greetings() {
+            @Override
+            public String getGreeting(String packageName) {
+                return "I'm busy right now, will get back to you soon.";
+            }
+        }, IGNORE, replyScheduler, AssistResponder.DEFAULT_MAX_SENDERS,
+                AssistResponder.DEFAULT_COOLDOWN_HOURS, TimeUnit.HOURS);
+        return new NotificationProcessor(Fixtures.REGISTRY, notify.getForwarder(), responder);
+    }
+
+    private static void awaitIdle(Pipeline<?> pipeline, long timeoutNanos) throws InterruptedException {
+        long deadline = System.nanoTime() + timeoutNanos;
+        while (System.nanoTime() < deadline) {
+            boolean idle = true;
+            for (Pipeline.StageStats stats : pipeline.getStats()) {
+                idle &= stats.getQueueDepth() == 0;
+            }
+            if (idle)
+                return;
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Heap in use including garbage not collected yet; never forces a collection, so it can be
+     * sampled while load is measured.
+     */
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Live heap, after a full collection. Only called before the load starts and once it is done.
+     */
+    private static long usedHeapAfterGc() {
+        System.gc();
+        return usedHeap();
+    }
+
+}
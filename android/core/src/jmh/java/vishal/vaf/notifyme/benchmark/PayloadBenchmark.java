@@ -0,0 +1,113 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Vishal Dubey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ **/
+
+package vishal.vaf.notifyme.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import vishal.vaf.notifyme.handlers.WhatsAppHandler;
+import vishal.vaf.notifyme.model.NotificationPayload;
+import vishal.vaf.notifyme.model.ParsedNotification;
+import vishal.vaf.notifyme.processing.NotifyForwarder;
+
+/**
+ * Encoding and decoding a forwarded notification in the version 1 map format (verbose keys,
+ * full package name) against the current compact format.
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PayloadBenchmark {
+
+    private static final int BATCH = 16;
+
+    private ParsedNotification[] notifications;
+    private final List<Map<String, String>> legacyPayloads = new ArrayList<>(BATCH);
+    private final List<Map<String, String>> compactPayloads = new ArrayList<>(BATCH);
+    private int next;
+
+    @Setup
+    public void setUp() {
+        notifications = new ParsedNotification[BATCH];
+        for (int i = 0; i < BATCH; i++) {
+            notifications[i] = Fixtures.posted(WhatsAppHandler.PACKAGE_NAME, i);
+            legacyPayloads.add(legacyEncode(notifications[i]));
+            compactPayloads.add(NotifyForwarder.buildPayload(notifications[i].getTitle(), notifications[i]));
+        }
+    }
+
+    private int nextIndex() {
+        return next = (next + 1) & (BATCH - 1);
+    }
+
+    @Benchmark
+    public Map<String, String> legacyEncode() {
+        return legacyEncode(notifications[nextIndex()]);
+    }
+
+    @Benchmark
+    public Map<String, String> compactEncode() {
+        ParsedNotification notification = notifications[nextIndex()];
+        return NotifyForwarder.buildPayload(notification.getTitle(), notification);
+    }
+
+    @Benchmark
+    public NotificationPayload legacyDecode() {
+        return NotificationPayload.fromMap(legacyPayloads.get(nextIndex()));
+    }
+
+    @Benchmark
+    public NotificationPayload compactDecode() {
+        return NotificationPayload.fromMap(compactPayloads.get(nextIndex()));
+    }
+
+    private static Map<String, String> legacyEncode(ParsedNotification notification) {
+        Map<String, String> object = new HashMap<>();
+        object.put("name", notification.getTitle());
+        object.put("message", notification.getText());
+        object.put("id", notification.getTitle());
+        object.put("app_name", notification.getPackageName());
+        return object;
+    }
+
+}
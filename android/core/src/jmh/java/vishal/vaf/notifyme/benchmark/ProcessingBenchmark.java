@@ -0,0 +1,161 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Vishal Dubey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ **/
+
+package vishal.vaf.notifyme.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import vishal.vaf.notifyme.handlers.WhatsAppHandler;
+import vishal.vaf.notifyme.model.DesktopReply;
+import vishal.vaf.notifyme.model.ListenerConfig;
+import vishal.vaf.notifyme.model.ParsedNotification;
+import vishal.vaf.notifyme.processing.AssistResponder;
+import vishal.vaf.notifyme.processing.IntentMatcher;
+import vishal.vaf.notifyme.processing.NotificationProcessor;
+import vishal.vaf.notifyme.processing.NotifyForwarder;
+import vishal.vaf.notifyme.utils.ConversationIdNormalizer;
+import vishal.vaf.notifyme.utils.LoopbackNetworkManagement;
+
+/**
+ * Per notification cost of each stage after extraction, in notify and assist mode.
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProcessingBenchmark {
+
+    private static final int BATCH = 16;
+
+    private static final String RULES = "[greeting]\nhi | hello | hey there\n> Hey!\n"
+            + "[thanks]\nthanks | thank you\n> You're welcome\n"
+            + "[acknowledge]\nok | okay | cool | sure\n> :)\n"
+            + "[whereabouts]\nwhere are you | are you free\n> Later\n";
+
+    private LoopbackNetworkManagement network;
+    private NotificationProcessor notifyProcessor;
+    private NotificationProcessor assistProcessor;
+
+    private ParsedNotification[] notifications;
+    private DesktopReply[] replies;
+    private IntentMatcher intents;
+    private int next;
+
+    private final AssistResponder.ConversationHandler conversations = new AssistResponder.ConversationHandler() {
+        @Override
+        public void onConversation(ParsedNotification notification) {
+
+        }
+    };
+
+    @Setup
+    public void setUp() throws IOException {
+        network = new LoopbackNetworkManagement();
+        notifyProcessor = Fixtures.processor(network, conversations);
+        notifyProcessor.setConfig(new ListenerConfig(false, true, Collections.<String>emptySet(), Collections.<String, String>emptyMap()));
+
+        assistProcessor = Fixtures.processor(new LoopbackNetworkManagement(), conversations);
+        assistProcessor.setConfig(new ListenerConfig(true, false, Collections.singleton(WhatsAppHandler.PACKAGE_NAME),
+                Collections.<String, String>emptyMap()));
+
+        intents = new IntentMatcher(IntentMatcher.parse(new StringReader(RULES)));
+
+        ConversationIdNormalizer ids = new ConversationIdNormalizer();
+        notifications = new ParsedNotification[BATCH];
+        replies = new DesktopReply[BATCH];
+        for (int i = 0; i < BATCH; i++) {
+            notifications[i] = Fixtures.posted(WhatsAppHandler.PACKAGE_NAME, i);
+            replies[i] = Fixtures.reply(ids.normalize(notifications[i].getTitle()), i);
+        }
+        // every sender was greeted already, assist mode goes down the conversation path
+        for (ParsedNotification notification : notifications) {
+            assistProcessor.dispatch(notification);
+        }
+    }
+
+    private ParsedNotification nextNotification() {
+        next = (next + 1) & (BATCH - 1);
+        return notifications[next];
+    }
+
+    @Benchmark
+    public ParsedNotification filter() {
+        return notifyProcessor.filter(nextNotification());
+    }
+
+    @Benchmark
+    public Map<String, String> buildPayload() {
+        ParsedNotification notification = nextNotification();
+        return NotifyForwarder.buildPayload(notification.getKey(), notification);
+    }
+
+    @Benchmark
+    public int notifyDispatch() {
+        ParsedNotification notification = notifyProcessor.filter(nextNotification());
+        notifyProcessor.dispatch(notification);
+        return Fixtures.drain(network);
+    }
+
+    @Benchmark
+    public ParsedNotification assistDedup() {
+        ParsedNotification notification = assistProcessor.filter(nextNotification());
+        assistProcessor.dispatch(notification);
+        return notification;
+    }
+
+    @Benchmark
+    public String intentMatch() {
+        // three of the eight fixture texts match a rule, the rest fall through to the assistant
+        return intents.match(nextNotification().getText());
+    }
+
+    @Benchmark
+    public boolean postAndReplyRouting() {
+        int i = (next = (next + 1) & (BATCH - 1));
+        NotifyForwarder forwarder = notifyProcessor.getForwarder();
+        // post first so the round trip includes registering the reply handle
+        forwarder.onPosted(notifications[i]);
+        Fixtures.drain(network);
+        return forwarder.handleReply(replies[i]);
+    }
+
+}
@@ -0,0 +1,62 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Vishal Dubey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ **/
+
+package vishal.vaf.notifyme.handlers;
+
+/**
+ * Everything that differs between the messaging apps we support: how to read sender and text
+ * from a notification, which action is the inline reply, and which preferences configure the
+ * app in assist mode.
+ */
+
+public interface AppHandler {
+
+    String getPackageName();
+
+    /**
+     * Preference holding whether assist mode answers for this app.
+     */
+    String getEnablePreference();
+
+    /**
+     * Preference holding the user's auto-reply text for this app.
+     */
+    String getGreetingPreference();
+
+    /**
+     * @return the person who sent the message, given the notification title and text
+     */
+    String getSender(String title, String text);
+
+    /**
+     * @return the message itself, given the notification title and text
+     */
+    String getText(String title, String text);
+
+    /**
+     * @return whether the action with this title (and remote inputs) is the inline reply
+     */
+    boolean isReplyAction(CharSequence actionTitle);
+
+}
@@ -0,0 +1,78 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Vishal Dubey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ **/
+
+package vishal.vaf.notifyme.handlers;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Supported apps keyed by package name. A single hash lookup tells whether a notification is
+ * worth parsing at all. Built once, read from any thread.
+ */
+
+public class AppHandlerRegistry {
+
+    private final Map<String, AppHandler> handlers;
+    private final List<AppHandler> ordered;
+
+    public AppHandlerRegistry(AppHandler... handlers) {
+        Map<String, AppHandler> map = new HashMap<>();
+        List<AppHandler> list = new ArrayList<>();
+        for (AppHandler handler : handlers) {
+            if (map.put(handler.getPackageName(), handler) != null)
+                throw new IllegalArgumentException("duplicate handler for " + handler.getPackageName());
+            list.add(handler);
+        }
+        this.handlers = Collections.unmodifiableMap(map);
+        this.ordered = Collections.unmodifiableList(list);
+    }
+
+    /**
+     * Registry with every app Notify Me supports out of the box.
+     */
+    public static AppHandlerRegistry createDefault() {
+        return new AppHandlerRegistry(new WhatsAppHandler(), new MessengerHandler());
+    }
+
+    /**
+     * @return the handler for the package, or null if the app is not supported
+     */
+    public AppHandler get(String packageName) {
+        return packageName == null ? null : handlers.get(packageName);
+    }
+
+    public boolean isSupported(String packageName) {
+        return get(packageName) != null;
+    }
+
+    public Collection<AppHandler> getAll() {
+        return ordered;
+    }
+
+}
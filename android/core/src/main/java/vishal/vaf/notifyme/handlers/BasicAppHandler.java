@@ -0,0 +1,74 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Vishal Dubey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ **/
+
+package vishal.vaf.notifyme.handlers;
+
+/**
+ * Handler for apps that put the sender in the title and the message in the text, and have a
+ * single action with remote inputs.
+ */
+
+public class BasicAppHandler implements AppHandler {
+
+    private final String packageName;
+    private final String enablePreference;
+    private final String greetingPreference;
+
+    public BasicAppHandler(String packageName, String enablePreference, String greetingPreference) {
+        this.packageName = packageName;
+        this.enablePreference = enablePreference;
+        this.greetingPreference = greetingPreference;
+    }
+
+    @Override
+    public String getPackageName() {
+        return packageName;
+    }
+
+    @Override
+    public String getEnablePreference() {
+        return enablePreference;
+    }
+
+    @Override
+    public String getGreetingPreference() {
+        return greetingPreference;
+    }
+
+    @Override
+    public String getSender(String title, String text) {
+        return title;
+    }
+
+    @Override
+    public String getText(String title, String text) {
+        return text;
+    }
+
+    @Override
+    public boolean isReplyAction(CharSequence actionTitle) {
+        return true;
+    }
+
+}
@@ -0,0 +1,76 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Vishal Dubey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ **/
+
+package vishal.vaf.notifyme.model;
+
+import vishal.vaf.notifyme.handlers.MessengerHandler;
+import vishal.vaf.notifyme.handlers.WhatsAppHandler;
+
+/**
+ * Apps known to both the phone and the desktop, sent as a one letter code instead of the
+ * package name. Anything else is {@link #OTHER} and carries its package name separately.
+ */
+
+public enum AppType {
+
+    WHATSAPP("w", WhatsAppHandler.PACKAGE_NAME),
+    MESSENGER("m", MessengerHandler.PACKAGE_NAME),
+    OTHER("o", null);
+
+    private final String code;
+    private final String packageName;
+
+    AppType(String code, String packageName) {
+        this.code = code;
+        this.packageName = packageName;
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    /**
+     * @return the app's package, null for {@link #OTHER}
+     */
+    public String getPackageName() {
+        return packageName;
+    }
+
+    public static AppType fromPackage(String packageName) {
+        for (AppType type : values()) {
+            if (type.packageName != null && type.packageName.equals(packageName))
+                return type;
+        }
+        return OTHER;
+    }
+
+    public static AppType fromCode(String code) {
+        for (AppType type : values()) {
+            if (type.code.equals(code))
+                return type;
+        }
+        return OTHER;
+    }
+
+}
@@ -0,0 +1,87 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Vishal Dubey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ **/
+
+package vishal.vaf.notifyme.model;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static vishal.vaf.notifyme.model.PayloadSchema.string;
+
+/**
+ * One line of a chat notification's message history.
+ */
+
+public class ConversationMessage {
+
+    private final String sender;
+    private final String text;
+    private final long timestamp;
+
+    public ConversationMessage(String sender, String text, long timestamp) {
+        this.sender = sender;
+        this.text = text;
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * @return who wrote the message, null for messages the user sent
+     */
+    public String getSender() {
+        return sender;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * @return when the message was sent, in milliseconds since the epoch
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public Map<String, String> toMap() {
+        Map<String, String> object = new HashMap<>(8);
+        object.put(PayloadSchema.VERSION, PayloadSchema.CURRENT_VERSION_STRING);
+        if (sender != null)
+            object.put(PayloadSchema.SENDER, sender);
+        object.put(PayloadSchema.MESSAGE, text);
+        object.put(PayloadSchema.TIME, Long.toString(timestamp));
+        return object;
+    }
+
+    public static ConversationMessage fromMap(Map<?, ?> object) {
+        String time = string(object, PayloadSchema.TIME);
+        long timestamp;
+        try {
+            timestamp = time == null ? 0 : Long.parseLong(time);
+        } catch (NumberFormatException e) {
+            timestamp = 0;
+        }
+        return new ConversationMessage(string(object, PayloadSchema.SENDER), string(object, PayloadSchema.MESSAGE), timestamp);
+    }
+
+}
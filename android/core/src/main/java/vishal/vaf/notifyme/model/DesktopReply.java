@@ -0,0 +1,115 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Vishal Dubey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ **/
+
+package vishal.vaf.notifyme.model;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static vishal.vaf.notifyme.model.PayloadSchema.string;
+
+/**
+ * A reply typed on the desktop for one of the forwarded conversations.
+ */
+
+public class DesktopReply {
+
+    private final String key;
+    private final String id;
+    private final String appName;
+    private final String name;
+    private final String message;
+
+    public DesktopReply(String key, String id, String appName, String name, String message) {
+        this.key = key;
+        this.id = id;
+        this.appName = appName;
+        this.name = name;
+        this.message = message;
+    }
+
+    /**
+     * Transport specific key of the queued reply, used to acknowledge it.
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * Conversation id the reply belongs to.
+     */
+    public String getId() {
+        return id;
+    }
+
+    public String getAppName() {
+        return appName;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * The reply as the desktop writes it, in the current {@link PayloadSchema} version.
+     */
+    public Map<String, String> toMap() {
+        AppType app = AppType.fromPackage(appName);
+        Map<String, String> object = new HashMap<>(8);
+        object.put(PayloadSchema.VERSION, PayloadSchema.CURRENT_VERSION_STRING);
+        object.put(PayloadSchema.ID, id);
+        object.put(PayloadSchema.APP, app.getCode());
+        if (app == AppType.OTHER)
+            object.put(PayloadSchema.PACKAGE, appName);
+        object.put(PayloadSchema.NAME, name);
+        object.put(PayloadSchema.MESSAGE, message);
+        return object;
+    }
+
+    /**
+     * Reads a reply in any {@link PayloadSchema} version.
+     *
+     * @param key transport specific key of the queued reply
+     */
+    public static DesktopReply fromMap(String key, Map<?, ?> object) {
+        if (PayloadSchema.versionOf(object) == 1) {
+            return new DesktopReply(key, string(object, PayloadSchema.LEGACY_ID), string(object, PayloadSchema.LEGACY_APP),
+                    string(object, PayloadSchema.LEGACY_NAME), string(object, PayloadSchema.LEGACY_MESSAGE));
+        }
+        AppType app = AppType.fromCode(string(object, PayloadSchema.APP));
+        String appName = app == AppType.OTHER ? string(object, PayloadSchema.PACKAGE) : app.getPackageName();
+        return new DesktopReply(key, string(object, PayloadSchema.ID), appName,
+                string(object, PayloadSchema.NAME), string(object, PayloadSchema.MESSAGE));
+    }
+
+    @Override
+    public String toString() {
+        return "DesktopReply{key=" + key + ", id=" + id + ", appName=" + appName + "}";
+    }
+
+}
@@ -0,0 +1,89 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Vishal Dubey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ **/
+
+package vishal.vaf.notifyme.model;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable snapshot of the user's settings the listener acts on: which modes are on, which
+ * apps assist mode answers for and the greeting for each app. A change of settings publishes
+ * a new snapshot, readers never see a half updated one.
+ */
+
+public final class ListenerConfig {
+
+    public static final ListenerConfig DISABLED = new ListenerConfig(false, false,
+            Collections.<String>emptySet(), Collections.<String, String>emptyMap());
+
+    private final boolean assistEnabled;
+    private final boolean notifyEnabled;
+    private final Set<String> assistApps;
+    private final Map<String, String> greetings;
+
+    /**
+     * @param assistApps packages assist mode answers for
+     * @param greetings  auto-reply text by package
+     */
+    public ListenerConfig(boolean assistEnabled, boolean notifyEnabled, Set<String> assistApps, Map<String, String> greetings) {
+        this.assistEnabled = assistEnabled;
+        this.notifyEnabled = notifyEnabled;
+        this.assistApps = Collections.unmodifiableSet(new HashSet<>(assistApps));
+        this.greetings = Collections.unmodifiableMap(new HashMap<>(greetings));
+    }
+
+    public boolean isAssistEnabled() {
+        return assistEnabled;
+    }
+
+    public boolean isNotifyEnabled() {
+        return notifyEnabled;
+    }
+
+    public boolean isAssistEnabledFor(String packageName) {
+        return assistApps.contains(packageName);
+    }
+
+    public Set<String> getAssistApps() {
+        return assistApps;
+    }
+
+    /**
+     * @return the auto-reply text for the app, empty if the user did not set one
+     */
+    public String getGreeting(String packageName) {
+        String greeting = greetings.get(packageName);
+        return greeting == null ? "" : greeting;
+    }
+
+    @Override
+    public String toString() {
+        return "assist=" + assistEnabled + " notify=" + notifyEnabled + " assistApps=" + assistApps;
+    }
+
+}
@@ -0,0 +1,99 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Vishal Dubey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ **/
+
+package vishal.vaf.notifyme.model;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static vishal.vaf.notifyme.model.PayloadSchema.string;
+
+/**
+ * A forwarded notification as the desktop sees it. Written and read field by field, no
+ * reflection, in the format described by {@link PayloadSchema}.
+ */
+
+public class NotificationPayload {
+
+    private final String id;
+    private final AppType app;
+    private final String packageName;
+    private final String name;
+    private final String message;
+
+    public NotificationPayload(String id, String packageName, String name, String message) {
+        this.id = id;
+        this.app = AppType.fromPackage(packageName);
+        this.packageName = packageName;
+        this.name = name;
+        this.message = message;
+    }
+
+    /**
+     * Conversation id, replies from the desktop carry it back.
+     */
+    public String getId() {
+        return id;
+    }
+
+    public AppType getApp() {
+        return app;
+    }
+
+    public String getPackageName() {
+        return packageName;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public Map<String, String> toMap() {
+        Map<String, String> object = new HashMap<>(8);
+        object.put(PayloadSchema.VERSION, PayloadSchema.CURRENT_VERSION_STRING);
+        object.put(PayloadSchema.ID, id);
+        object.put(PayloadSchema.APP, app.getCode());
+        if (app == AppType.OTHER)
+            object.put(PayloadSchema.PACKAGE, packageName);
+        object.put(PayloadSchema.NAME, name);
+        object.put(PayloadSchema.MESSAGE, message);
+        return object;
+    }
+
+    public static NotificationPayload fromMap(Map<?, ?> object) {
+        if (PayloadSchema.versionOf(object) == 1) {
+            return new NotificationPayload(string(object, PayloadSchema.LEGACY_ID), string(object, PayloadSchema.LEGACY_APP),
+                    string(object, PayloadSchema.LEGACY_NAME), string(object, PayloadSchema.LEGACY_MESSAGE));
+        }
+        AppType app = AppType.fromCode(string(object, PayloadSchema.APP));
+        String packageName = app == AppType.OTHER ? string(object, PayloadSchema.PACKAGE) : app.getPackageName();
+        return new NotificationPayload(string(object, PayloadSchema.ID), packageName,
+                string(object, PayloadSchema.NAME), string(object, PayloadSchema.MESSAGE));
+    }
+
+}
@@ -0,0 +1,106 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Vishal Dubey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ **/
+
+package vishal.vaf.notifyme.model;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * What the extract stage pulls out of a StatusBarNotification, so later stages never
+ * touch the notification itself and can run on a plain JVM.
+ */
+
+public class ParsedNotification {
+
+    private final String packageName;
+    private final String key;
+    private final String title;
+    private final String sender;
+    private final String text;
+    private final boolean removed;
+    private final ReplyAction replyAction;
+    private final List<ConversationMessage> messages;
+
+    public ParsedNotification(String packageName, String key, String title, String sender, String text, boolean removed, ReplyAction replyAction) {
+        this(packageName, key, title, sender, text, removed, replyAction, Collections.<ConversationMessage>emptyList());
+    }
+
+    public ParsedNotification(String packageName, String key, String title, String sender, String text, boolean removed,
+                              ReplyAction replyAction, List<ConversationMessage> messages) {
+        this.packageName = packageName;
+        this.key = key;
+        this.title = title;
+        this.sender = sender;
+        this.text = text;
+        this.removed = removed;
+        this.replyAction = replyAction;
+        this.messages = Collections.unmodifiableList(messages);
+    }
+
+    public String getPackageName() {
+        return packageName;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    /**
+     * Person who sent the message. Same as the title for one to one chats, the title of a
+     * group chat also names the group.
+     */
+    public String getSender() {
+        return sender;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public boolean isRemoved() {
+        return removed;
+    }
+
+    /**
+     * Reply action of the notification, or null if it has no action with remote inputs that
+     * its app handler accepts (and always null for removals).
+     */
+    public ReplyAction getReplyAction() {
+        return replyAction;
+    }
+
+    /**
+     * Message history of a chat notification, oldest first. Empty if the app does not post
+     * its messages with the notification.
+     */
+    public List<ConversationMessage> getMessages() {
+        return messages;
+    }
+
+}
@@ -0,0 +1,82 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Vishal Dubey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ **/
+
+package vishal.vaf.notifyme.model;
+
+import java.util.Map;
+
+/**
+ * Keys of the payloads exchanged with the desktop. Version 1 payloads had no version field and
+ * spelled their keys out ({@code name}, {@code message}, {@code id}, {@code app_name}); since
+ * version 2 every payload carries {@link #VERSION} and uses the one letter keys below. Readers
+ * accept both, and ignore keys they do not know so later versions can add fields.
+ */
+
+public final class PayloadSchema {
+
+    public static final int CURRENT_VERSION = 2;
+
+    static final String CURRENT_VERSION_STRING = Integer.toString(CURRENT_VERSION);
+
+    public static final String VERSION = "v";
+    public static final String ID = "i";
+    public static final String APP = "a";
+    public static final String PACKAGE = "p";
+    public static final String NAME = "n";
+    public static final String MESSAGE = "m";
+    public static final String SENDER = "s";
+    public static final String TIME = "t";
+
+    static final String LEGACY_ID = "id";
+    static final String LEGACY_APP = "app_name";
+    static final String LEGACY_NAME = "name";
+    static final String LEGACY_MESSAGE = "message";
+
+    private PayloadSchema() {
+
+    }
+
+    /**
+     * @return the schema version of a received payload, 1 if it has none
+     */
+    public static int versionOf(Map<?, ?> payload) {
+        String version = string(payload, VERSION);
+        if (version == null)
+            return 1;
+        try {
+            return Integer.parseInt(version);
+        } catch (NumberFormatException e) {
+            return 1;
+        }
+    }
+
+    /**
+     * Reads a value as a string whatever type the transport decoded it to.
+     */
+    static String string(Map<?, ?> payload, String key) {
+        Object value = payload.get(key);
+        return value == null ? null : value.toString();
+    }
+
+}
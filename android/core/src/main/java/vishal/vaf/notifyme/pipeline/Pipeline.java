@@ -0,0 +1,292 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Vishal Dubey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ **/
+
+package vishal.vaf.notifyme.pipeline;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import vishal.vaf.notifyme.utils.MetricsRegistry;
+
+/**
+ * Chain of {@link Stage}s, each running on its own worker thread behind a bounded queue.
+ * {@link #submit(Object)} never blocks, so it is safe to call from binder or main thread
+ * callbacks. When a queue is full the configured {@link OverflowPolicy} decides what gets
+ * dropped, and every drop is counted against the stage that dropped it.
+ * <p>
+ * With a {@link MetricsRegistry} set, the time from {@link #submit(Object)} to the end of each
+ * stage is recorded in the histogram {@code <pipeline>.<stage>}.
+ */
+
+public class Pipeline<T> {
+
+    private final String name;
+    private final int capacity;
+    private final OverflowPolicy overflowPolicy;
+
+    private final List<StageRunner> stages = new ArrayList<>();
+
+    private volatile boolean running = false;
+
+    private MetricsRegistry metrics;
+
+    public Pipeline(String name, int capacity, OverflowPolicy overflowPolicy) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("capacity must be positive");
+        this.name = name;
+        this.capacity = capacity;
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * Appends a stage. The input type of the stage must match the output type of the
+     * previous one (or T for the first stage).
+     */
+    public Pipeline<T> addStage(String stageName, Stage<?, ?> stage) {
+        if (running)
+            throw new IllegalStateException("pipeline " + name + " already started");
+        StageRunner runner = new StageRunner(stageName, stage);
+        if (!stages.isEmpty()) {
+            stages.get(stages.size() - 1).next = runner;
+        }
+        stages.add(runner);
+        return this;
+    }
+
+    public Pipeline<T> setMetrics(MetricsRegistry metrics) {
+        if (running)
+            throw new IllegalStateException("pipeline " + name + " already started");
+        this.metrics = metrics;
+        return this;
+    }
+
+    public synchronized void start() {
+        if (running)
+            return;
+        if (stages.isEmpty())
+            throw new IllegalStateException("pipeline " + name + " has no stages");
+        running = true;
+        for (StageRunner runner : stages) {
+            if (metrics != null)
+                runner.latency = metrics.histogram(name + "." + runner.stageName);
+            runner.start();
+        }
+    }
+
+    /**
+     * Enqueues an item for the first stage.
+     *
+     * @return false if the item was dropped because the pipeline is stopped or its queue
+     * was full under {@link OverflowPolicy#DROP_NEWEST}
+     */
+    public boolean submit(T item) {
+        if (!running || item == null)
+            return false;
+        return stages.get(0).offer(new Envelope(item, System.nanoTime()));
+    }
+
+    public synchronized void shutdown() {
+        if (!running)
+            return;
+        running = false;
+        for (StageRunner runner : stages) {
+            runner.stop();
+        }
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public List<StageStats> getStats() {
+        List<StageStats> stats = new ArrayList<>(stages.size());
+        for (StageRunner runner : stages) {
+            stats.add(new StageStats(runner.stageName, runner.queue.size(), runner.maxDepth.get(),
+                    runner.processed.get(), runner.dropped.get(), runner.filtered.get(), runner.failed.get()));
+        }
+        return stats;
+    }
+
+    public void dump(PrintWriter writer) {
+        writer.println("Pipeline " + name + " (capacity " + capacity + ", " + overflowPolicy + ")");
+        for (StageStats stats : getStats()) {
+            writer.println("  " + stats);
+        }
+    }
+
+    public static class StageStats {
+
+        private final String name;
+        private final int queueDepth;
+        private final long maxQueueDepth;
+        private final long processed;
+        private final long dropped;
+        private final long filtered;
+        private final long failed;
+
+        StageStats(String name, int queueDepth, long maxQueueDepth, long processed, long dropped, long filtered, long failed) {
+            this.name = name;
+            this.queueDepth = queueDepth;
+            this.maxQueueDepth = maxQueueDepth;
+            this.processed = processed;
+            this.dropped = dropped;
+            this.filtered = filtered;
+            this.failed = failed;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getQueueDepth() {
+            return queueDepth;
+        }
+
+        public long getMaxQueueDepth() {
+            return maxQueueDepth;
+        }
+
+        public long getProcessed() {
+            return processed;
+        }
+
+        public long getDropped() {
+            return dropped;
+        }
+
+        public long getFiltered() {
+            return filtered;
+        }
+
+        public long getFailed() {
+            return failed;
+        }
+
+        @Override
+        public String toString() {
+            return name + ": depth=" + queueDepth + " maxDepth=" + maxQueueDepth + " processed=" + processed
+                    + " dropped=" + dropped + " filtered=" + filtered + " failed=" + failed;
+        }
+    }
+
+    /**
+     * Carries an item and its submit time through all the stages.
+     */
+    private static class Envelope {
+
+        private Object item;
+        private final long submittedAt;
+
+        Envelope(Object item, long submittedAt) {
+            this.item = item;
+            this.submittedAt = submittedAt;
+        }
+    }
+
+    private class StageRunner implements Runnable {
+
+        private final String stageName;
+        private final Stage<Object, Object> stage;
+        private final ArrayBlockingQueue<Envelope> queue = new ArrayBlockingQueue<>(capacity);
+
+        private final AtomicLong processed = new AtomicLong();
+        private final AtomicLong dropped = new AtomicLong();
+        private final AtomicLong filtered = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final AtomicLong maxDepth = new AtomicLong();
+
+        private StageRunner next;
+        private Thread thread;
+        private MetricsRegistry.Histogram latency;
+
+        @SuppressWarnings("unchecked")
+        StageRunner(String stageName, Stage<?, ?> stage) {
+            this.stageName = stageName;
+            this.stage = (Stage<Object, Object>) stage;
+        }
+
+        void start() {
+            thread = new Thread(this, name + "-" + stageName);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        void stop() {
+            if (thread != null) {
+                thread.interrupt();
+                thread = null;
+            }
+            queue.clear();
+        }
+
+        boolean offer(Envelope item) {
+            boolean accepted = queue.offer(item);
+            while (!accepted && overflowPolicy == OverflowPolicy.DROP_OLDEST) {
+                if (queue.poll() != null)
+                    dropped.incrementAndGet();
+                accepted = queue.offer(item);
+            }
+            if (!accepted) {
+                dropped.incrementAndGet();
+                return false;
+            }
+            int depth = queue.size();
+            if (depth > maxDepth.get())
+                maxDepth.set(depth);
+            return true;
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                Envelope envelope;
+                try {
+                    envelope = queue.take();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                try {
+                    Object output = stage.process(envelope.item);
+                    processed.incrementAndGet();
+                    if (latency != null)
+                        latency.recordSince(envelope.submittedAt);
+                    if (next != null) {
+                        if (output == null) {
+                            filtered.incrementAndGet();
+                        } else {
+                            envelope.item = output;
+                            next.offer(envelope);
+                        }
+                    }
+                } catch (Exception e) {
+                    failed.incrementAndGet();
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+}
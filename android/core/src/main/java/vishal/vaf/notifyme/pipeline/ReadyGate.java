@@ -0,0 +1,139 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Vishal Dubey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ **/
+
+package vishal.vaf.notifyme.pipeline;
+
+import java.io.PrintWriter;
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Passes items to its target, except while held: then up to {@code capacity} items are
+ * buffered (the oldest is dropped first) until {@link #release()} hands them over in order.
+ * Used to keep notifications back while the dependencies of their mode are still being set up.
+ */
+
+public class ReadyGate<T> {
+
+    private final String name;
+    private final int capacity;
+    private final Stage<T, ?> target;
+
+    private ArrayDeque<T> buffer = new ArrayDeque<>();
+    private boolean ready = true;
+    private boolean releasing = false;
+    private long heldSince;
+
+    private long buffered;
+    private long dropped;
+    private long failed;
+    private int maxBuffered;
+    private long lastWaitNanos = -1;
+
+    public ReadyGate(String name, int capacity, Stage<T, ?> target) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("capacity must be positive");
+        this.name = name;
+        this.capacity = capacity;
+        this.target = target;
+    }
+
+    /**
+     * Starts buffering. Does nothing if the gate is already held.
+     */
+    public synchronized void hold() {
+        if (ready) {
+            ready = false;
+            heldSince = System.nanoTime();
+        }
+    }
+
+    /**
+     * Hands the buffered items to the target and lets later ones through directly.
+     *
+     * @return nanoseconds the gate was held, -1 if it was not held
+     */
+    public long release() {
+        synchronized (this) {
+            if (ready || releasing)
+                return -1;
+            releasing = true;
+        }
+        while (true) {
+            ArrayDeque<T> batch;
+            synchronized (this) {
+                if (buffer.isEmpty()) {
+                    ready = true;
+                    releasing = false;
+                    lastWaitNanos = System.nanoTime() - heldSince;
+                    return lastWaitNanos;
+                }
+                batch = buffer;
+                buffer = new ArrayDeque<>();
+            }
+            for (T item : batch) {
+                deliver(item);
+            }
+        }
+    }
+
+    public void submit(T item) {
+        synchronized (this) {
+            if (!ready) {
+                if (buffer.size() == capacity) {
+                    buffer.pollFirst();
+                    dropped++;
+                }
+                buffer.addLast(item);
+                buffered++;
+                maxBuffered = Math.max(maxBuffered, buffer.size());
+                return;
+            }
+        }
+        deliver(item);
+    }
+
+    public synchronized boolean isReady() {
+        return ready;
+    }
+
+    public synchronized void dump(PrintWriter writer) {
+        writer.println("Gate " + name + ": " + (ready ? "ready" : "held " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - heldSince) + "ms")
+                + " buffered=" + buffered + " pending=" + buffer.size() + " maxPending=" + maxBuffered
+                + " dropped=" + dropped + " failed=" + failed
+                + " lastWait=" + (lastWaitNanos < 0 ? "-" : TimeUnit.NANOSECONDS.toMillis(lastWaitNanos) + "ms"));
+    }
+
+    private void deliver(T item) {
+        try {
+            target.process(item);
+        } catch (Exception e) {
+            synchronized (this) {
+                failed++;
+            }
+            e.printStackTrace();
+        }
+    }
+
+}
@@ -22,11 +22,15 @@
  * SOFTWARE.
  **/
 
-package vishal.vaf.notifyme.utils;
+package vishal.vaf.notifyme.pipeline;
 
 /**
- * Created by vishal on 12/01/17.
+ * A single step of a {@link Pipeline}. Returning null drops the item, anything else is
+ * handed to the next stage.
  */
 
-public class NetworkManagement {
+public interface Stage<I, O> {
+
+    O process(I input) throws Exception;
+
 }
@@ -0,0 +1,132 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Vishal Dubey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ **/
+
+package vishal.vaf.notifyme.processing;
+
+import java.io.PrintWriter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import vishal.vaf.notifyme.handlers.AppHandler;
+import vishal.vaf.notifyme.handlers.AppHandlerRegistry;
+import vishal.vaf.notifyme.model.ParsedNotification;
+import vishal.vaf.notifyme.model.ReplyAction;
+import vishal.vaf.notifyme.utils.LruTtlCache;
+
+/**
+ * Assist mode: greets every new sender with the user's message for that app, and hands later
+ * messages of an already greeted sender to the conversational bot. A sender is greeted again
+ * once the cooldown has passed since the last greeting.
+ * <p>
+ * Greeted conversations are remembered per app in a hashed set capped at {@code maxSenders},
+ * the least recently active one is forgotten first. With a {@link ReplyScheduler} greetings are
+ * paced by it instead of being sent right away.
+ */
+
+public class AssistResponder {
+
+    public interface Greetings {
+
+        /**
+         * @return the user's auto-reply text for the app
+         */
+        String getGreeting(String packageName);
+
+    }
+
+    public interface ConversationHandler {
+
+        void onConversation(ParsedNotification notification);
+
+    }
+
+    public static final int DEFAULT_MAX_SENDERS = 256;
+    public static final long DEFAULT_COOLDOWN_HOURS = 8;
+
+    private final Greetings greetings;
+    private final ConversationHandler conversationHandler;
+    private final ReplyScheduler replyScheduler;
+
+    // Immutable after construction, the sets themselves are thread safe
+    private final Map<String, LruTtlCache<String, Boolean>> greetedSenders = new HashMap<>();
+
+    public AssistResponder(AppHandlerRegistry registry, Greetings greetings, ConversationHandler conversationHandler) {
+        this(registry, greetings, conversationHandler, null, DEFAULT_MAX_SENDERS, DEFAULT_COOLDOWN_HOURS, TimeUnit.HOURS);
+    }
+
+    /**
+     * @param replyScheduler paces the greetings, null to send them directly
+     */
+    public AssistResponder(AppHandlerRegistry registry, Greetings greetings, ConversationHandler conversationHandler,
+                           ReplyScheduler replyScheduler, int maxSenders, long cooldown, TimeUnit unit) {
+        this.greetings = greetings;
+        this.conversationHandler = conversationHandler;
+        this.replyScheduler = replyScheduler;
+        for (AppHandler handler : registry.getAll()) {
+            greetedSenders.put(handler.getPackageName(), new LruTtlCache<String, Boolean>(maxSenders, cooldown, unit));
+        }
+    }
+
+    public void onPosted(ParsedNotification notification) {
+        ReplyAction replyAction = notification.getReplyAction();
+        LruTtlCache<String, Boolean> greeted = greetedSenders.get(notification.getPackageName());
+        if (replyAction == null || greeted == null)
+            return;
+
+        String conversation = notification.getTitle();
+        if (greeted.get(conversation) == null) {
+            String senderName = notification.getSender() == null ? conversation : notification.getSender();
+            String message = "Hey " + senderName.split(" ")[0] + ", " + greetings.getGreeting(notification.getPackageName());
+            if (replyScheduler != null)
+                replyAction = replyScheduler.wrap(ReplyScheduler.conversationKey(notification), notification.getText(), replyAction);
+            if (replyAction.send(message))
+                greeted.put(conversation, Boolean.TRUE);
+        } else {
+            conversationHandler.onConversation(notification);
+        }
+    }
+
+    /**
+     * Forgets who was greeted for the app, they get the greeting again on their next message.
+     */
+    public void clear(String packageName) {
+        LruTtlCache<String, Boolean> greeted = greetedSenders.get(packageName);
+        if (greeted != null)
+            greeted.clear();
+    }
+
+    public void clearAll() {
+        for (LruTtlCache<String, Boolean> greeted : greetedSenders.values()) {
+            greeted.clear();
+        }
+    }
+
+    public void dump(PrintWriter writer) {
+        for (Map.Entry<String, LruTtlCache<String, Boolean>> entry : greetedSenders.entrySet()) {
+            writer.println("Greeted " + entry.getKey() + ": " + entry.getValue());
+        }
+    }
+
+}
@@ -0,0 +1,298 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Vishal Dubey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ **/
+
+package vishal.vaf.notifyme.processing;
+
+import java.io.PrintWriter;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import vishal.vaf.notifyme.model.ReplyAction;
+import vishal.vaf.notifyme.utils.MetricsRegistry;
+
+/**
+ * Sends conversation messages to the assistant on its own bounded pool and replies through
+ * the handle that came with the message. A request that has not been answered within the
+ * timeout, counted from submission, is cancelled and its late answer is thrown away.
+ * <p>
+ * When the queue is full new requests are rejected rather than delaying every reply behind
+ * them. Messages the {@link IntentMatcher} knows are answered on the device, other answers are
+ * looked up in and stored to the {@link AssistantResponseCache}.
+ */
+
+public class AssistantClient {
+
+    public interface Backend {
+
+        /**
+         * Blocking call to the assistant.
+         *
+         * @return the answer to send, or null if the assistant returned an error
+         */
+        String query(String text) throws Exception;
+
+    }
+
+    private final Backend backend;
+    private final AssistantResponseCache cache;
+    private volatile IntentMatcher intentMatcher;
+    private final long timeoutNanos;
+
+    private final ThreadPoolExecutor executor;
+    private final ScheduledExecutorService watchdog;
+
+    // Submitted and not yet settled, for cancelAll()
+    private final Set<Request> pending = Collections.newSetFromMap(new ConcurrentHashMap<Request, Boolean>());
+
+    private volatile MetricsRegistry.Histogram roundTrip;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong onDevice = new AtomicLong();
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong answered = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong cancelled = new AtomicLong();
+    private final AtomicLong started = new AtomicLong();
+    private final AtomicLong totalQueueWaitNanos = new AtomicLong();
+    private final AtomicLong maxQueueWaitNanos = new AtomicLong();
+
+    public AssistantClient(Backend backend, AssistantResponseCache cache, int threads, int queueCapacity,
+                           long timeout, TimeUnit unit) {
+        this.backend = backend;
+        this.cache = cache;
+        this.timeoutNanos = unit.toNanos(timeout);
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(queueCapacity), new NamedThreadFactory("assistant"));
+        ScheduledThreadPoolExecutor watchdog = new ScheduledThreadPoolExecutor(1, new NamedThreadFactory("assistant-watchdog"));
+        watchdog.setRemoveOnCancelPolicy(true);
+        this.watchdog = watchdog;
+    }
+
+    /**
+     * Answers the query through {@code replyAction}, from the cache if possible.
+     *
+     * @return false if the request was rejected because the client is saturated or shut down
+     */
+    public boolean submit(String query, ReplyAction replyAction) {
+        submitted.incrementAndGet();
+        IntentMatcher matcher = intentMatcher;
+        String local = matcher == null ? null : matcher.match(query);
+        if (local != null) {
+            onDevice.incrementAndGet();
+            replyAction.send(local);
+            return true;
+        }
+
+        String cached = cache.get(query);
+        if (cached != null) {
+            cacheHits.incrementAndGet();
+            replyAction.send(cached);
+            return true;
+        }
+
+        final Request request = new Request(query, replyAction);
+        pending.add(request);
+        try {
+            request.future = executor.submit(request);
+        } catch (RejectedExecutionException e) {
+            pending.remove(request);
+            rejected.incrementAndGet();
+            return false;
+        }
+        request.timeout = watchdog.schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (request.finish()) {
+                    timedOut.incrementAndGet();
+                    request.cancel();
+                }
+            }
+        }, timeoutNanos, TimeUnit.NANOSECONDS);
+        return true;
+    }
+
+    /**
+     * Records the duration of each assistant call, failed and timed out ones included.
+     */
+    public void setMetrics(MetricsRegistry metrics) {
+        roundTrip = metrics.histogram("assistant.roundtrip");
+    }
+
+    /**
+     * Replaces the on-device rules, null sends every query to the assistant.
+     */
+    public void setIntentMatcher(IntentMatcher intentMatcher) {
+        this.intentMatcher = intentMatcher;
+    }
+
+    /**
+     * Drops every queued request and interrupts the ones in flight, none of them will reply.
+     */
+    public void cancelAll() {
+        for (Request request : pending) {
+            if (request.finish()) {
+                cancelled.incrementAndGet();
+                request.cancel();
+            }
+        }
+        executor.purge();
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+        watchdog.shutdownNow();
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public int getQueued() {
+        return executor.getQueue().size();
+    }
+
+    public void dump(PrintWriter writer) {
+        long startedCount = started.get();
+        writer.println("Assistant: inFlight=" + inFlight.get() + " queued=" + executor.getQueue().size()
+                + " submitted=" + submitted.get() + " onDevice=" + onDevice.get() + " cacheHits=" + cacheHits.get() + " answered=" + answered.get()
+                + " failed=" + failed.get() + " timedOut=" + timedOut.get() + " rejected=" + rejected.get() + " cancelled=" + cancelled.get()
+                + " avgQueueWaitMs=" + (startedCount == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalQueueWaitNanos.get() / startedCount))
+                + " maxQueueWaitMs=" + TimeUnit.NANOSECONDS.toMillis(maxQueueWaitNanos.get()));
+        cache.dump(writer);
+        IntentMatcher matcher = intentMatcher;
+        if (matcher != null)
+            matcher.dump(writer);
+    }
+
+    private void recordQueueWait(long waitNanos) {
+        started.incrementAndGet();
+        totalQueueWaitNanos.addAndGet(waitNanos);
+        long max;
+        while (waitNanos > (max = maxQueueWaitNanos.get())) {
+            if (maxQueueWaitNanos.compareAndSet(max, waitNanos))
+                break;
+        }
+    }
+
+    private class Request implements Runnable {
+
+        private final String query;
+        private final ReplyAction replyAction;
+        private final long submittedAt = System.nanoTime();
+        private final AtomicBoolean finished = new AtomicBoolean();
+
+        private volatile Future<?> future;
+        private volatile ScheduledFuture<?> timeout;
+
+        Request(String query, ReplyAction replyAction) {
+            this.query = query;
+            this.replyAction = replyAction;
+        }
+
+        /**
+         * @return true for whoever gets to settle the request first, the worker or the watchdog
+         */
+        boolean finish() {
+            return finished.compareAndSet(false, true);
+        }
+
+        void cancel() {
+            pending.remove(this);
+            Future<?> future = this.future;
+            if (future != null)
+                future.cancel(true);
+            ScheduledFuture<?> timeout = this.timeout;
+            if (timeout != null)
+                timeout.cancel(false);
+        }
+
+        @Override
+        public void run() {
+            recordQueueWait(System.nanoTime() - submittedAt);
+            if (finished.get())
+                return;
+            inFlight.incrementAndGet();
+            long startedAt = System.nanoTime();
+            try {
+                String speech = backend.query(query);
+                if (!finish())
+                    return;
+                if (speech == null || speech.isEmpty()) {
+                    failed.incrementAndGet();
+                    return;
+                }
+                cache.put(query, speech);
+                replyAction.send(speech);
+                answered.incrementAndGet();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                if (finish())
+                    failed.incrementAndGet();
+            } finally {
+                if (roundTrip != null)
+                    roundTrip.recordSince(startedAt);
+                inFlight.decrementAndGet();
+                pending.remove(this);
+                ScheduledFuture<?> timeout = this.timeout;
+                if (timeout != null)
+                    timeout.cancel(false);
+            }
+        }
+    }
+
+    private static class NamedThreadFactory implements ThreadFactory {
+
+        private final String name;
+        private final AtomicInteger count = new AtomicInteger();
+
+        NamedThreadFactory(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+}
@@ -0,0 +1,101 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Vishal Dubey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ **/
+
+package vishal.vaf.notifyme.processing;
+
+import java.io.PrintWriter;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import vishal.vaf.notifyme.utils.LruTtlCache;
+
+/**
+ * Remembers the assistant's answer to recently asked queries, so repeats like "ok" or "thanks"
+ * are answered without a round trip. Queries are compared after trimming, lower-casing and
+ * collapsing whitespace. Only usable answers are stored, callers must not put error responses.
+ */
+
+public class AssistantResponseCache {
+
+    public static final int DEFAULT_MAX_ENTRIES = 128;
+    public static final long DEFAULT_MAX_AGE_MINUTES = 30;
+
+    private final LruTtlCache<String, String> cache;
+
+    public AssistantResponseCache() {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_AGE_MINUTES, TimeUnit.MINUTES);
+    }
+
+    public AssistantResponseCache(int maxEntries, long maxAge, TimeUnit unit) {
+        cache = new LruTtlCache<>(maxEntries, maxAge, unit);
+    }
+
+    /**
+     * @return the cached answer, or null if the query has to go to the assistant
+     */
+    public String get(String query) {
+        String key = key(query);
+        return key == null ? null : cache.get(key);
+    }
+
+    public void put(String query, String speech) {
+        String key = key(query);
+        if (key == null || speech == null || speech.isEmpty())
+            return;
+        cache.put(key, speech);
+    }
+
+    public void clear() {
+        cache.clear();
+    }
+
+    public double getHitRate() {
+        return cache.getHitRate();
+    }
+
+    public void dump(PrintWriter writer) {
+        writer.println("Assistant cache: " + cache + " hitRate=" + String.format(Locale.ROOT, "%.2f", cache.getHitRate()));
+    }
+
+    static String key(String query) {
+        if (query == null)
+            return null;
+        StringBuilder builder = new StringBuilder(query.length());
+        boolean pendingSpace = false;
+        for (int i = 0; i < query.length(); i++) {
+            char c = query.charAt(i);
+            if (Character.isWhitespace(c)) {
+                pendingSpace = builder.length() > 0;
+                continue;
+            }
+            if (pendingSpace) {
+                builder.append(' ');
+                pendingSpace = false;
+            }
+            builder.append(c);
+        }
+        return builder.length() == 0 ? null : builder.toString().toLowerCase(Locale.ROOT);
+    }
+
+}
@@ -0,0 +1,178 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Vishal Dubey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ **/
+
+package vishal.vaf.notifyme.processing;
+
+import java.io.PrintWriter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import vishal.vaf.notifyme.model.ParsedNotification;
+
+/**
+ * Merges a burst of messages from the same conversation into one. A burst is handed on once
+ * no new message arrived for {@code windowMillis}, or at the latest {@code maxDelayMillis}
+ * after its first message so a chatty sender still gets an answer. The merged text joins the
+ * messages in arrival order, the reply goes through the newest notification's handle.
+ * <p>
+ * The listener is called on the coalescer's own thread.
+ */
+
+public class BurstCoalescer {
+
+    public interface BurstListener {
+
+        void onBurst(ParsedNotification latest, String text);
+
+    }
+
+    private final BurstListener listener;
+    private final long windowMillis;
+    private final long maxDelayMillis;
+
+    private final ScheduledExecutorService executor;
+
+    private final Map<String, Burst> bursts = new HashMap<>();
+
+    private long messages;
+    private long flushed;
+    private long cappedBursts;
+    private int largestBurst;
+
+    public BurstCoalescer(BurstListener listener, long windowMillis, long maxDelayMillis) {
+        if (maxDelayMillis < windowMillis)
+            throw new IllegalArgumentException("maxDelayMillis must not be shorter than windowMillis");
+        this.listener = listener;
+        this.windowMillis = windowMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "burst-coalescer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public synchronized void submit(ParsedNotification notification) {
+        if (executor.isShutdown() || notification.getText() == null)
+            return;
+        messages++;
+        String key = notification.getPackageName() + "|" + notification.getTitle();
+        long now = now();
+        Burst burst = bursts.get(key);
+        if (burst == null) {
+            burst = new Burst(key, now);
+            bursts.put(key, burst);
+        } else {
+            burst.text.append('\n');
+            burst.scheduledFlush.cancel(false);
+        }
+        burst.text.append(notification.getText());
+        burst.latest = notification;
+        burst.count++;
+        final Burst scheduled = burst;
+        final int count = burst.count;
+
+        long delay = windowMillis;
+        long cap = burst.firstAt + maxDelayMillis - now;
+        if (cap <= delay) {
+            delay = Math.max(0, cap);
+            burst.capped = true;
+        }
+        burst.scheduledFlush = executor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                flush(scheduled, count);
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Forgets every pending burst without calling the listener.
+     */
+    public synchronized void cancelAll() {
+        for (Burst burst : bursts.values()) {
+            burst.scheduledFlush.cancel(false);
+        }
+        bursts.clear();
+    }
+
+    public synchronized void shutdown() {
+        cancelAll();
+        executor.shutdown();
+    }
+
+    public synchronized int getPending() {
+        return bursts.size();
+    }
+
+    public synchronized void dump(PrintWriter writer) {
+        writer.println("Coalescer (window " + windowMillis + "ms, max " + maxDelayMillis + "ms): messages=" + messages
+                + " bursts=" + flushed + " capped=" + cappedBursts + " pending=" + bursts.size()
+                + " largestBurst=" + largestBurst);
+    }
+
+    private void flush(Burst burst, int count) {
+        synchronized (this) {
+            // a newer message may have rescheduled the burst while this flush was waiting for the lock
+            if (bursts.get(burst.key) != burst || burst.count != count)
+                return;
+            bursts.remove(burst.key);
+            flushed++;
+            if (burst.capped)
+                cappedBursts++;
+            largestBurst = Math.max(largestBurst, count);
+        }
+        listener.onBurst(burst.latest, burst.text.toString());
+    }
+
+    protected long now() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+
+    private static class Burst {
+
+        private final String key;
+        private final long firstAt;
+        private final StringBuilder text = new StringBuilder();
+
+        private ParsedNotification latest;
+        private int count;
+        private boolean capped;
+        private ScheduledFuture<?> scheduledFlush;
+
+        Burst(String key, long firstAt) {
+            this.key = key;
+            this.firstAt = firstAt;
+        }
+    }
+
+}
@@ -0,0 +1,195 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Vishal Dubey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ **/
+
+package vishal.vaf.notifyme.processing;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import vishal.vaf.notifyme.model.ConversationMessage;
+import vishal.vaf.notifyme.utils.LruTtlCache;
+
+/**
+ * Works out which messages of a re-posted chat notification the desktop has not seen yet.
+ * Chat apps post the whole recent history with every new message; per conversation we keep a
+ * high-water mark (the newest timestamp sent, plus the hashes of the messages sent with that
+ * timestamp) and only pass on what lies beyond it. What goes over the wire then grows with the
+ * new messages rather than with the length of the conversation.
+ * <p>
+ * Messages are published under {@code conversations/<conversation>/<message key>}, the key is
+ * derived from the message itself so the desktop can rebuild the thread in order and a resent
+ * message overwrites itself. {@code threads/<conversation>/updated} holds the key of the newest
+ * message, so desktops can load only recent threads and threads untouched for longer than the
+ * retention can be deleted. A mark lives as long as its thread is kept, so only a conversation
+ * whose thread is gone is sent in full again. Instances are thread safe.
+ */
+
+public class ConversationSync {
+
+    public static final int DEFAULT_MAX_CONVERSATIONS = 1024;
+    public static final long DEFAULT_RETENTION_HOURS = 72;
+    public static final long DEFAULT_MAX_AGE_HOURS = DEFAULT_RETENTION_HOURS;
+    public static final String UPDATED = "updated";
+
+    private final LruTtlCache<String, Mark> marks;
+
+    private long published;
+    private long skipped;
+
+    public ConversationSync() {
+        this(DEFAULT_MAX_CONVERSATIONS, DEFAULT_MAX_AGE_HOURS, TimeUnit.HOURS);
+    }
+
+    public ConversationSync(int maxConversations, long maxAge, TimeUnit unit) {
+        marks = new LruTtlCache<>(maxConversations, maxAge, unit);
+    }
+
+    /**
+     * @return the messages of {@code history} newer than what was returned for the conversation
+     * before, oldest first; the high-water mark moves past them
+     */
+    public synchronized List<ConversationMessage> newMessages(String conversationId, List<ConversationMessage> history) {
+        if (history.isEmpty())
+            return Collections.emptyList();
+        Mark mark = marks.get(conversationId);
+        List<ConversationMessage> fresh = new ArrayList<>();
+        long newest = mark == null ? Long.MIN_VALUE : mark.timestamp;
+        for (ConversationMessage message : history) {
+            if (mark == null || message.getTimestamp() > mark.timestamp
+                    || message.getTimestamp() == mark.timestamp && !mark.hashes.contains(hash(message))) {
+                fresh.add(message);
+                newest = Math.max(newest, message.getTimestamp());
+            }
+        }
+        skipped += history.size() - fresh.size();
+        if (fresh.isEmpty())
+            return fresh;
+        published += fresh.size();
+
+        Set<Integer> hashes = new HashSet<>();
+        if (mark != null && mark.timestamp == newest)
+            hashes.addAll(mark.hashes);
+        for (ConversationMessage message : fresh) {
+            if (message.getTimestamp() == newest)
+                hashes.add(hash(message));
+        }
+        marks.put(conversationId, new Mark(newest, hashes));
+        return fresh;
+    }
+
+    /**
+     * Forgets the conversation, the next notification of it is sent in full.
+     */
+    public void reset(String conversationId) {
+        marks.remove(conversationId);
+    }
+
+    public synchronized void dump(PrintWriter writer) {
+        writer.println("Conversation sync: " + marks + " published=" + published + " skipped=" + skipped);
+    }
+
+    /**
+     * @return path of the message below the phone's root
+     */
+    public static String messagePath(String conversationId, ConversationMessage message) {
+        return "conversations/" + pathSegment(conversationId) + "/" + messageKey(message);
+    }
+
+    /**
+     * @return path of the conversation's entry in the thread index
+     */
+    public static String threadPath(String conversationId) {
+        return "threads/" + pathSegment(conversationId);
+    }
+
+    /**
+     * @return thread index entry for a conversation whose newest messages were just published
+     */
+    public static Map<String, String> threadIndex(List<ConversationMessage> messages) {
+        ConversationMessage newest = messages.get(0);
+        for (ConversationMessage message : messages) {
+            if (message.getTimestamp() > newest.getTimestamp())
+                newest = message;
+        }
+        return Collections.singletonMap(UPDATED, messageKey(newest));
+    }
+
+    /**
+     * @return the {@link #UPDATED} value up to which threads are past the retention
+     */
+    public static String retentionCutoff(long nowMillis) {
+        return String.format(Locale.ROOT, "%013d", nowMillis - TimeUnit.HOURS.toMillis(DEFAULT_RETENTION_HOURS));
+    }
+
+    private static String messageKey(ConversationMessage message) {
+        return String.format(Locale.ROOT, "%013d%08x", message.getTimestamp(), hash(message));
+    }
+
+    /**
+     * Escapes the characters Firebase does not allow in keys ({@code . # $ [ ] /}) and '%'.
+     */
+    static String pathSegment(String id) {
+        if (id == null || id.isEmpty())
+            return "_";
+        StringBuilder builder = null;
+        for (int i = 0; i < id.length(); i++) {
+            char c = id.charAt(i);
+            boolean escape = c == '.' || c == '#' || c == '$' || c == '[' || c == ']' || c == '/' || c == '%' || c < 0x20;
+            if (escape && builder == null) {
+                builder = new StringBuilder(id.length() + 8);
+                builder.append(id, 0, i);
+            }
+            if (escape) {
+                builder.append('%').append(String.format(Locale.ROOT, "%02X", (int) c));
+            } else if (builder != null) {
+                builder.append(c);
+            }
+        }
+        return builder == null ? id : builder.toString();
+    }
+
+    private static int hash(ConversationMessage message) {
+        int hash = message.getText() == null ? 0 : message.getText().hashCode();
+        return 31 * hash + (message.getSender() == null ? 0 : message.getSender().hashCode());
+    }
+
+    private static class Mark {
+
+        private final long timestamp;
+        private final Set<Integer> hashes;
+
+        Mark(long timestamp, Set<Integer> hashes) {
+            this.timestamp = timestamp;
+            this.hashes = hashes;
+        }
+    }
+
+}
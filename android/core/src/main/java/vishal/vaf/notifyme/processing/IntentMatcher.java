@@ -0,0 +1,319 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Vishal Dubey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ **/
+
+package vishal.vaf.notifyme.processing;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Answers simple messages on the device from a list of rules, each one a set of phrases and the
+ * response to send when a message contains one of them. Messages and phrases are compared as
+ * sequences of lower-cased letter/digit tokens, all phrases are compiled into one Aho-Corasick
+ * automaton so a message is matched in a single pass whatever the number of rules.
+ * <p>
+ * The longest matched phrase wins, ties go to the rule listed first. A match only counts when
+ * the phrase makes up at least {@code minCoverage} of the message's tokens, so "hi" answers
+ * "hi there" but not a long question that happens to start with "hi".
+ * <p>
+ * Rule files look like this, blank lines and lines starting with '#' are ignored:
+ * <pre>
+ * [greeting]
+ * hi | hello | hey there
+ * &gt; Hey! I'll get back to you soon.
+ * </pre>
+ * Instances are immutable apart from the hit counters and are safe to share between threads.
+ */
+
+public class IntentMatcher {
+
+    public static final double DEFAULT_MIN_COVERAGE = 0.5;
+
+    public static class Rule {
+
+        private final String name;
+        private final List<String> phrases;
+        private final String response;
+
+        public Rule(String name, List<String> phrases, String response) {
+            this.name = name;
+            this.phrases = Collections.unmodifiableList(new ArrayList<>(phrases));
+            this.response = response;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public List<String> getPhrases() {
+            return phrases;
+        }
+
+        public String getResponse() {
+            return response;
+        }
+    }
+
+    private static final int ROOT = 0;
+    private static final int NONE = -1;
+
+    private final List<Rule> rules;
+    private final double minCoverage;
+
+    // token text -> token id, tokens that appear in no phrase can never be part of a match
+    private final Map<String, Integer> vocabulary = new HashMap<>();
+
+    // automaton, indexed by state
+    private final List<Map<Integer, Integer>> transitions = new ArrayList<>();
+    private int[] failure;
+    // longest phrase ending in the state, directly or through its failure chain
+    private int[] outputRule;
+    private int[] outputLength;
+
+    private final AtomicLongArray hits;
+    private final AtomicLong misses = new AtomicLong();
+
+    public IntentMatcher(List<Rule> rules) {
+        this(rules, DEFAULT_MIN_COVERAGE);
+    }
+
+    public IntentMatcher(List<Rule> rules, double minCoverage) {
+        this.rules = Collections.unmodifiableList(new ArrayList<>(rules));
+        this.minCoverage = minCoverage;
+        this.hits = new AtomicLongArray(rules.size());
+        build();
+    }
+
+    /**
+     * @return the response of the best matching rule, or null if the message has to go to the assistant
+     */
+    public String match(String message) {
+        int rule = matchRule(message);
+        if (rule == NONE) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet(rule);
+        return rules.get(rule).getResponse();
+    }
+
+    public List<Rule> getRules() {
+        return rules;
+    }
+
+    public long getHits(int rule) {
+        return hits.get(rule);
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public void dump(PrintWriter writer) {
+        long matched = 0;
+        for (int i = 0; i < rules.size(); i++) {
+            matched += hits.get(i);
+        }
+        long total = matched + misses.get();
+        writer.println("Intents: rules=" + rules.size() + " states=" + transitions.size() + " matched=" + matched
+                + " missed=" + misses.get() + " onDevice=" + (total == 0 ? 0 : matched * 100 / total) + "%");
+        for (int i = 0; i < rules.size(); i++) {
+            writer.println("  " + rules.get(i).getName() + ": " + hits.get(i));
+        }
+    }
+
+    private int matchRule(String message) {
+        if (message == null)
+            return NONE;
+        List<String> tokens = tokenize(message);
+        if (tokens.isEmpty())
+            return NONE;
+
+        int state = ROOT;
+        int bestRule = NONE;
+        int bestLength = 0;
+        for (String token : tokens) {
+            Integer id = vocabulary.get(token);
+            if (id == null) {
+                state = ROOT;
+                continue;
+            }
+            state = next(state, id);
+            int rule = outputRule[state];
+            if (rule != NONE && (outputLength[state] > bestLength
+                    || outputLength[state] == bestLength && rule < bestRule)) {
+                bestRule = rule;
+                bestLength = outputLength[state];
+            }
+        }
+        if (bestRule == NONE || bestLength < minCoverage * tokens.size())
+            return NONE;
+        return bestRule;
+    }
+
+    private int next(int state, int token) {
+        while (true) {
+            Integer target = transitions.get(state).get(token);
+            if (target != null)
+                return target;
+            if (state == ROOT)
+                return ROOT;
+            state = failure[state];
+        }
+    }
+
+    private void build() {
+        transitions.add(new HashMap<Integer, Integer>());
+        List<Integer> ruleOf = new ArrayList<>();
+        List<Integer> lengthOf = new ArrayList<>();
+        ruleOf.add(NONE);
+        lengthOf.add(0);
+
+        for (int rule = 0; rule < rules.size(); rule++) {
+            for (String phrase : rules.get(rule).getPhrases()) {
+                List<String> tokens = tokenize(phrase);
+                if (tokens.isEmpty())
+                    continue;
+                int state = ROOT;
+                for (String token : tokens) {
+                    Integer id = vocabulary.get(token);
+                    if (id == null) {
+                        id = vocabulary.size();
+                        vocabulary.put(token, id);
+                    }
+                    Integer target = transitions.get(state).get(id);
+                    if (target == null) {
+                        target = transitions.size();
+                        transitions.add(new HashMap<Integer, Integer>());
+                        ruleOf.add(NONE);
+                        lengthOf.add(0);
+                        transitions.get(state).put(id, target);
+                    }
+                    state = target;
+                }
+                // the same phrase under two rules belongs to the first one
+                if (ruleOf.get(state) == NONE) {
+                    ruleOf.set(state, rule);
+                    lengthOf.set(state, tokens.size());
+                }
+            }
+        }
+
+        int states = transitions.size();
+        failure = new int[states];
+        outputRule = new int[states];
+        outputLength = new int[states];
+        for (int state = 0; state < states; state++) {
+            outputRule[state] = ruleOf.get(state);
+            outputLength[state] = lengthOf.get(state);
+        }
+
+        // breadth first, so the failure target of a state is complete before the state itself
+        Queue<Integer> queue = new ArrayDeque<>();
+        for (int child : transitions.get(ROOT).values()) {
+            failure[child] = ROOT;
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.remove();
+            for (Map.Entry<Integer, Integer> edge : transitions.get(state).entrySet()) {
+                int child = edge.getValue();
+                int fallback = next(failure[state], edge.getKey());
+                failure[child] = fallback;
+                // a phrase ending here is always longer than one reached through the failure link
+                if (outputRule[child] == NONE) {
+                    outputRule[child] = outputRule[fallback];
+                    outputLength[child] = outputLength[fallback];
+                }
+                queue.add(child);
+            }
+        }
+    }
+
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        StringBuilder token = new StringBuilder();
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                token.append(Character.toLowerCase(c));
+            } else if (c != '\'' && c != '\u2019' && token.length() > 0) {
+                tokens.add(token.toString());
+                token.setLength(0);
+            }
+        }
+        if (token.length() > 0)
+            tokens.add(token.toString());
+        return tokens;
+    }
+
+    /**
+     * Reads rules in the format described above. A rule without phrases or without a response is
+     * skipped.
+     */
+    public static List<Rule> parse(Reader reader) throws IOException {
+        BufferedReader lines = new BufferedReader(reader);
+        List<Rule> rules = new ArrayList<>();
+        String name = null;
+        List<String> phrases = new ArrayList<>();
+        String response = null;
+        String line;
+        while ((line = lines.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#"))
+                continue;
+            if (line.startsWith("[") && line.endsWith("]")) {
+                addRule(rules, name, phrases, response);
+                name = line.substring(1, line.length() - 1).trim();
+                phrases = new ArrayList<>();
+                response = null;
+            } else if (line.startsWith(">")) {
+                response = line.substring(1).trim();
+            } else {
+                phrases.addAll(Arrays.asList(line.split("\\|")));
+            }
+        }
+        addRule(rules, name, phrases, response);
+        return rules;
+    }
+
+    private static void addRule(List<Rule> rules, String name, List<String> phrases, String response) {
+        if (name == null || phrases.isEmpty() || response == null || response.isEmpty())
+            return;
+        rules.add(new Rule(name, phrases, response));
+    }
+
+}
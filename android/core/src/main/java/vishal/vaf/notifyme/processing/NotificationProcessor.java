@@ -0,0 +1,223 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Vishal Dubey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ **/
+
+package vishal.vaf.notifyme.processing;
+
+import java.io.PrintWriter;
+import java.util.concurrent.atomic.AtomicReference;
+
+import vishal.vaf.notifyme.handlers.AppHandlerRegistry;
+import vishal.vaf.notifyme.model.ListenerConfig;
+import vishal.vaf.notifyme.model.ParsedNotification;
+import vishal.vaf.notifyme.model.RawNotification;
+import vishal.vaf.notifyme.pipeline.ReadyGate;
+import vishal.vaf.notifyme.pipeline.Stage;
+
+/**
+ * Platform independent part of the listener service: screens raw notifications before they are
+ * parsed, decides which notifications are relevant for the current mode and dispatches them to
+ * the {@link NotifyForwarder} or the {@link AssistResponder}. The settings are an immutable {@link ListenerConfig} that may be
+ * replaced from any thread, every call works on the snapshot it read once.
+ * <p>
+ * Each mode dispatches through a {@link ReadyGate}, held by the service while that mode's
+ * dependencies are being set up. The gates start out open.
+ */
+
+public class NotificationProcessor {
+
+    private final AppHandlerRegistry registry;
+    private final NotifyForwarder forwarder;
+    private final AssistResponder responder;
+    private final RepostFilter repostFilter = new RepostFilter();
+
+    private final AtomicReference<ListenerConfig> config = new AtomicReference<>(ListenerConfig.DISABLED);
+
+    private static final int GATE_CAPACITY = 64;
+
+    private final ReadyGate<ParsedNotification> notifyGate;
+    private final ReadyGate<ParsedNotification> assistGate;
+
+    public NotificationProcessor(AppHandlerRegistry registry, NotifyForwarder forwarder, AssistResponder responder) {
+        this.registry = registry;
+        this.forwarder = forwarder;
+        this.responder = responder;
+        this.notifyGate = new ReadyGate<>("notify", GATE_CAPACITY, forwardStage);
+        this.assistGate = new ReadyGate<>("assist", GATE_CAPACITY, respondStage);
+    }
+
+    /**
+     * Drops notifications of unsupported apps, group summaries, ongoing notifications and
+     * unchanged re-posts before anything is parsed.
+     *
+     * @return false if the notification should be dropped
+     */
+    public boolean screen(RawNotification notification) {
+        if (!registry.isSupported(notification.getPackageName()))
+            return false;
+        if (notification.isRemoved()) {
+            repostFilter.forget(notification.getKey());
+            return true;
+        }
+        boolean groupSummary = notification.isGroupSummary();
+        return repostFilter.check(notification.getKey(), groupSummary, notification.isOngoing(),
+                groupSummary ? 0 : notification.getContentHash()) == null;
+    }
+
+    /**
+     * @return a stage running {@link #screen(RawNotification)}, passing on what it keeps
+     */
+    public <T extends RawNotification> Stage<T, T> newScreenStage() {
+        return new Stage<T, T>() {
+            @Override
+            public T process(T notification) {
+                return screen(notification) ? notification : null;
+            }
+        };
+    }
+
+    /**
+     * @return the notification if the current mode has something to do with it, else null
+     */
+    public ParsedNotification filter(ParsedNotification notification) {
+        String packageName = notification.getPackageName();
+        if (!registry.isSupported(packageName))
+            return null;
+        if (notification.getTitle() == null)
+            return null;
+        ListenerConfig config = this.config.get();
+        if (notification.isRemoved())
+            return config.isNotifyEnabled() ? notification : null;
+        if (config.isAssistEnabled())
+            return config.isAssistEnabledFor(packageName) ? notification : null;
+        if (config.isNotifyEnabled() && notification.getReplyAction() != null)
+            return notification;
+        return null;
+    }
+
+    public void dispatch(ParsedNotification notification) {
+        ListenerConfig config = this.config.get();
+        if (notification.isRemoved()) {
+            notifyGate.submit(notification);
+        } else if (config.isAssistEnabled()) {
+            assistGate.submit(notification);
+        } else if (config.isNotifyEnabled()) {
+            notifyGate.submit(notification);
+        }
+    }
+
+    public Stage<ParsedNotification, ParsedNotification> getFilterStage() {
+        return filterStage;
+    }
+
+    public Stage<ParsedNotification, Void> getDispatchStage() {
+        return dispatchStage;
+    }
+
+    public ReadyGate<ParsedNotification> getNotifyGate() {
+        return notifyGate;
+    }
+
+    public ReadyGate<ParsedNotification> getAssistGate() {
+        return assistGate;
+    }
+
+    public ListenerConfig getConfig() {
+        return config.get();
+    }
+
+    /**
+     * Publishes new settings. Apps assist mode no longer answers for forget who was greeted.
+     *
+     * @return the settings that were replaced
+     */
+    public ListenerConfig setConfig(ListenerConfig next) {
+        ListenerConfig previous = config.getAndSet(next);
+        for (String packageName : previous.getAssistApps()) {
+            if (!next.isAssistEnabledFor(packageName))
+                responder.clear(packageName);
+        }
+        return previous;
+    }
+
+    public AppHandlerRegistry getRegistry() {
+        return registry;
+    }
+
+    public NotifyForwarder getForwarder() {
+        return forwarder;
+    }
+
+    public AssistResponder getResponder() {
+        return responder;
+    }
+
+    public RepostFilter getRepostFilter() {
+        return repostFilter;
+    }
+
+    public void dump(PrintWriter writer) {
+        writer.println("Config: " + config.get());
+        repostFilter.dump(writer);
+        notifyGate.dump(writer);
+        assistGate.dump(writer);
+        forwarder.dump(writer);
+        responder.dump(writer);
+    }
+
+    private final Stage<ParsedNotification, ParsedNotification> filterStage = new Stage<ParsedNotification, ParsedNotification>() {
+        @Override
+        public ParsedNotification process(ParsedNotification notification) {
+            return filter(notification);
+        }
+    };
+
+    private final Stage<ParsedNotification, Void> forwardStage = new Stage<ParsedNotification, Void>() {
+        @Override
+        public Void process(ParsedNotification notification) {
+            if (notification.isRemoved()) {
+                forwarder.onRemoved(notification);
+            } else {
+                forwarder.onPosted(notification);
+            }
+            return null;
+        }
+    };
+
+    private final Stage<ParsedNotification, Void> respondStage = new Stage<ParsedNotification, Void>() {
+        @Override
+        public Void process(ParsedNotification notification) {
+            responder.onPosted(notification);
+            return null;
+        }
+    };
+
+    private final Stage<ParsedNotification, Void> dispatchStage = new Stage<ParsedNotification, Void>() {
+        @Override
+        public Void process(ParsedNotification notification) {
+            dispatch(notification);
+            return null;
+        }
+    };
+
+}
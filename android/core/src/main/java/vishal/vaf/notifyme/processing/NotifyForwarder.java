@@ -0,0 +1,159 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Vishal Dubey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ **/
+
+package vishal.vaf.notifyme.processing;
+
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import vishal.vaf.notifyme.model.ConversationMessage;
+import vishal.vaf.notifyme.model.DesktopReply;
+import vishal.vaf.notifyme.model.NotificationPayload;
+import vishal.vaf.notifyme.model.ParsedNotification;
+import vishal.vaf.notifyme.model.ReplyAction;
+import vishal.vaf.notifyme.utils.ConversationIdNormalizer;
+import vishal.vaf.notifyme.utils.KeyedSerialExecutor;
+import vishal.vaf.notifyme.utils.LruTtlCache;
+import vishal.vaf.notifyme.utils.MetricsRegistry;
+import vishal.vaf.notifyme.utils.NetworkManagement;
+
+/**
+ * Notify mode: forwards conversations to the desktop, with the messages of their history the
+ * desktop has not seen yet, and routes the desktop's replies back to the reply action of the
+ * matching notification.
+ */
+
+public class NotifyForwarder implements NetworkManagement.ReplyListener {
+
+    private final ConversationIdNormalizer idNormalizer;
+    private final LruTtlCache<String, ReplyAction> replyHandles;
+    private final KeyedSerialExecutor<String> replyExecutor;
+    private final ConversationSync conversationSync = new ConversationSync();
+
+    private volatile NetworkManagement network;
+
+    private volatile MetricsRegistry.Counter repliesReceived;
+    private volatile MetricsRegistry.Counter repliesUnmatched;
+    private volatile MetricsRegistry.Histogram replyLatency;
+
+    /**
+     * @param replyHandles reply actions of forwarded conversations, keyed by conversation id
+     * @param replyExecutor runs desktop replies; replies to one conversation stay in order,
+     *                      different conversations may run in parallel
+     */
+    public NotifyForwarder(ConversationIdNormalizer idNormalizer, LruTtlCache<String, ReplyAction> replyHandles, Executor replyExecutor) {
+        this.idNormalizer = idNormalizer;
+        this.replyHandles = replyHandles;
+        this.replyExecutor = new KeyedSerialExecutor<>(replyExecutor);
+    }
+
+    public void setNetwork(NetworkManagement network) {
+        this.network = network;
+    }
+
+    public NetworkManagement getNetwork() {
+        return network;
+    }
+
+    /**
+     * Records desktop replies and the time from their arrival to the reply being sent
+     * ({@code reply.send}).
+     */
+    public void setMetrics(MetricsRegistry metrics) {
+        repliesReceived = metrics.counter("reply.received");
+        repliesUnmatched = metrics.counter("reply.unmatched");
+        replyLatency = metrics.histogram("reply.send");
+    }
+
+    public void onPosted(ParsedNotification notification) {
+        String id = idNormalizer.normalize(notification.getTitle());
+        replyHandles.put(id, notification.getReplyAction());
+        NetworkManagement network = this.network;
+        if (network == null)
+            return;
+        network.publishNotification(buildPayload(id, notification));
+        List<ConversationMessage> messages = conversationSync.newMessages(id, notification.getMessages());
+        if (!messages.isEmpty())
+            network.publishMessages(id, messages);
+    }
+
+    public void onRemoved(ParsedNotification notification) {
+        String id = idNormalizer.normalize(notification.getTitle());
+        replyHandles.remove(id);
+        NetworkManagement network = this.network;
+        if (network != null)
+            network.publishRemoval(id);
+    }
+
+    @Override
+    public void onReply(final DesktopReply reply) {
+        final long receivedAt = System.nanoTime();
+        if (repliesReceived != null)
+            repliesReceived.increment();
+        replyExecutor.execute(reply.getId() == null ? "" : reply.getId(), new Runnable() {
+            @Override
+            public void run() {
+                boolean sent = handleReply(reply);
+                if (replyLatency != null) {
+                    if (sent) {
+                        replyLatency.recordSince(receivedAt);
+                    } else {
+                        repliesUnmatched.increment();
+                    }
+                }
+                NetworkManagement network = NotifyForwarder.this.network;
+                if (network != null)
+                    network.acknowledgeReply(reply);
+            }
+        });
+    }
+
+    /**
+     * Sends a desktop reply through the reply action of its conversation. The action is kept
+     * for further replies until the notification is removed or its handle expires.
+     *
+     * @return false if the conversation is unknown or the action could not be sent
+     */
+    public boolean handleReply(DesktopReply reply) {
+        ReplyAction replyAction = replyHandles.get(reply.getId());
+        return replyAction != null && replyAction.send(reply.getMessage());
+    }
+
+    public static Map<String, String> buildPayload(String id, ParsedNotification notification) {
+        return new NotificationPayload(id, notification.getPackageName(), notification.getTitle(), notification.getText()).toMap();
+    }
+
+    public void dump(PrintWriter writer) {
+        replyHandles.purgeExpired();
+        writer.println("Reply handles: " + replyHandles);
+        writer.println("Conversations with pending replies: " + replyExecutor.getActiveKeys());
+        conversationSync.dump(writer);
+        NetworkManagement network = this.network;
+        if (network != null)
+            network.dump(writer);
+    }
+
+}
@@ -0,0 +1,305 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Vishal Dubey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ **/
+
+package vishal.vaf.notifyme.processing;
+
+import java.io.PrintWriter;
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import vishal.vaf.notifyme.model.ParsedNotification;
+import vishal.vaf.notifyme.model.ReplyAction;
+import vishal.vaf.notifyme.utils.LruTtlCache;
+import vishal.vaf.notifyme.utils.TokenBucket;
+
+/**
+ * Paces automatic replies. Every reply takes a token from its conversation's bucket and from
+ * the global one; if a token is not available yet the reply is queued until it is, and if that
+ * would take longer than {@code maxDelayMillis} it is dropped. Replies are sent in due order
+ * from the scheduler's own thread.
+ * <p>
+ * A conversation that gets {@code loopReplies} replies within {@code loopWindowMillis}, or whose
+ * incoming message repeats one of our recent replies, is most likely another bot answering us.
+ * It is muted for {@code muteMillis} and its replies are dropped meanwhile.
+ */
+
+public class ReplyScheduler {
+
+    public static final int DEFAULT_SENDER_BURST = 2;
+    public static final double DEFAULT_SENDER_PER_MINUTE = 6;
+    public static final int DEFAULT_GLOBAL_BURST = 5;
+    public static final double DEFAULT_GLOBAL_PER_MINUTE = 30;
+    public static final long DEFAULT_MAX_DELAY_MS = 20 * 1000;
+    public static final int DEFAULT_LOOP_REPLIES = 8;
+    public static final long DEFAULT_LOOP_WINDOW_MS = 2 * 60 * 1000;
+    public static final long DEFAULT_MUTE_MS = 15 * 60 * 1000;
+
+    private static final int MAX_CONVERSATIONS = 256;
+    private static final long CONVERSATION_MAX_AGE_MINUTES = 60;
+    // Our last replies per conversation, an incoming message equal to one of them is an echo
+    private static final int RECENT_REPLIES = 4;
+
+    private final int senderBurst;
+    private final double senderPerMinute;
+    private final long maxDelayNanos;
+    private final int loopReplies;
+    private final long loopWindowNanos;
+    private final long muteNanos;
+
+    private final TokenBucket globalBucket;
+    private final LruTtlCache<String, Sender> senders =
+            new LruTtlCache<>(MAX_CONVERSATIONS, CONVERSATION_MAX_AGE_MINUTES, TimeUnit.MINUTES);
+
+    // Its work queue is a heap ordered by due time
+    private final ScheduledThreadPoolExecutor executor;
+    // Replies scheduled but not started yet, a Send no longer in here does not send
+    private final Set<Send> scheduled = new HashSet<>();
+
+    private long immediate;
+    private long delayed;
+    private long totalDelayNanos;
+    private long maxDelayedNanos;
+    private long droppedRate;
+    private long droppedLoop;
+    private long loopsDetected;
+    private long cancelled;
+    private long sent;
+    private long failed;
+    private int pending;
+
+    public ReplyScheduler() {
+        this(DEFAULT_SENDER_BURST, DEFAULT_SENDER_PER_MINUTE, DEFAULT_GLOBAL_BURST, DEFAULT_GLOBAL_PER_MINUTE,
+                DEFAULT_MAX_DELAY_MS, DEFAULT_LOOP_REPLIES, DEFAULT_LOOP_WINDOW_MS, DEFAULT_MUTE_MS);
+    }
+
+    public ReplyScheduler(int senderBurst, double senderPerMinute, int globalBurst, double globalPerMinute,
+                          long maxDelayMillis, int loopReplies, long loopWindowMillis, long muteMillis) {
+        if (loopReplies <= 0)
+            throw new IllegalArgumentException("loopReplies must be positive");
+        this.senderBurst = senderBurst;
+        this.senderPerMinute = senderPerMinute;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        this.loopReplies = loopReplies;
+        this.loopWindowNanos = TimeUnit.MILLISECONDS.toNanos(loopWindowMillis);
+        this.muteNanos = TimeUnit.MILLISECONDS.toNanos(muteMillis);
+        this.globalBucket = new TokenBucket(globalBurst, globalPerMinute, System.nanoTime());
+        this.executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "reply-scheduler");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        // Cancelled replies leave the queue right away, and nothing runs after shutdown
+        executor.setRemoveOnCancelPolicy(true);
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    }
+
+    public static String conversationKey(ParsedNotification notification) {
+        return notification.getPackageName() + "|" + notification.getTitle();
+    }
+
+    /**
+     * @param trigger the incoming message being answered, used for loop detection
+     * @return an action whose {@link ReplyAction#send(String)} goes through the scheduler and
+     * returns whether the reply was accepted
+     */
+    public ReplyAction wrap(final String conversation, final String trigger, final ReplyAction replyAction) {
+        if (replyAction == null)
+            return null;
+        return new ReplyAction() {
+            @Override
+            public boolean send(String message) {
+                return schedule(conversation, trigger, replyAction, message);
+            }
+        };
+    }
+
+    /**
+     * Queues a reply to be sent once both buckets allow it.
+     *
+     * @return false if the reply was dropped: rate limited beyond the maximum delay, the
+     * conversation is muted as a loop, or the scheduler is shut down
+     */
+    public boolean schedule(String conversation, String trigger, ReplyAction replyAction, String message) {
+        long now = System.nanoTime();
+        synchronized (this) {
+            if (executor.isShutdown())
+                return false;
+            Sender sender = senders.get(conversation);
+            if (sender == null)
+                sender = new Sender(now);
+            senders.put(conversation, sender);
+
+            if (sender.mutedUntil - now > 0) {
+                droppedLoop++;
+                return false;
+            }
+            if (sender.isLoop(trigger, now)) {
+                sender.mutedUntil = now + muteNanos;
+                loopsDetected++;
+                droppedLoop++;
+                return false;
+            }
+
+            long wait = Math.max(sender.bucket.waitTime(now), globalBucket.waitTime(now));
+            if (wait > maxDelayNanos) {
+                droppedRate++;
+                return false;
+            }
+            sender.bucket.reserve(now);
+            globalBucket.reserve(now);
+            sender.recordReply(message, now);
+
+            if (wait == 0) {
+                immediate++;
+            } else {
+                delayed++;
+                totalDelayNanos += wait;
+                maxDelayedNanos = Math.max(maxDelayedNanos, wait);
+            }
+            pending++;
+            Send send = new Send(replyAction, message);
+            send.future = executor.schedule(send, wait, TimeUnit.NANOSECONDS);
+            scheduled.add(send);
+        }
+        return true;
+    }
+
+    /**
+     * Drops the replies that are still waiting for their turn. None of them is sent afterwards,
+     * only a reply already being sent may still go out.
+     */
+    public synchronized void cancelAll() {
+        for (Send send : scheduled) {
+            send.future.cancel(false);
+        }
+        cancelled += scheduled.size();
+        pending -= scheduled.size();
+        scheduled.clear();
+    }
+
+    public synchronized void shutdown() {
+        cancelAll();
+        executor.shutdown();
+    }
+
+    public synchronized int getPending() {
+        return pending;
+    }
+
+    public synchronized long getSent() {
+        return sent;
+    }
+
+    public synchronized long getDelayed() {
+        return delayed;
+    }
+
+    public synchronized long getDropped() {
+        return droppedRate + droppedLoop;
+    }
+
+    public synchronized void dump(PrintWriter writer) {
+        writer.println("Reply scheduler: sent=" + sent + " failed=" + failed + " pending=" + pending
+                + " immediate=" + immediate + " delayed=" + delayed
+                + " avgDelay=" + (delayed == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalDelayNanos / delayed)) + "ms"
+                + " maxDelay=" + TimeUnit.NANOSECONDS.toMillis(maxDelayedNanos) + "ms"
+                + " droppedRate=" + droppedRate + " droppedLoop=" + droppedLoop
+                + " loops=" + loopsDetected + " cancelled=" + cancelled);
+    }
+
+    private class Sender {
+
+        private final TokenBucket bucket;
+        private final ArrayDeque<Long> replyTimes = new ArrayDeque<>();
+        private final ArrayDeque<String> recentReplies = new ArrayDeque<>();
+        private long mutedUntil;
+
+        Sender(long now) {
+            this.bucket = new TokenBucket(senderBurst, senderPerMinute, now);
+            this.mutedUntil = now;
+        }
+
+        boolean isLoop(String trigger, long now) {
+            while (!replyTimes.isEmpty() && now - replyTimes.peekFirst() > loopWindowNanos) {
+                replyTimes.pollFirst();
+            }
+            if (replyTimes.size() >= loopReplies)
+                return true;
+            return trigger != null && recentReplies.contains(trigger.trim());
+        }
+
+        void recordReply(String message, long now) {
+            replyTimes.addLast(now);
+            if (message != null) {
+                if (recentReplies.size() == RECENT_REPLIES)
+                    recentReplies.pollFirst();
+                recentReplies.addLast(message.trim());
+            }
+        }
+    }
+
+    private class Send implements Runnable {
+
+        private final ReplyAction replyAction;
+        private final String message;
+        private ScheduledFuture<?> future;
+
+        Send(ReplyAction replyAction, String message) {
+            this.replyAction = replyAction;
+            this.message = message;
+        }
+
+        @Override
+        public void run() {
+            synchronized (ReplyScheduler.this) {
+                if (!scheduled.remove(this))
+                    return;
+            }
+            boolean ok;
+            try {
+                ok = replyAction.send(message);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+                ok = false;
+            }
+            synchronized (ReplyScheduler.this) {
+                pending--;
+                if (ok) {
+                    sent++;
+                } else {
+                    failed++;
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,130 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Vishal Dubey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ **/
+
+package vishal.vaf.notifyme.processing;
+
+import java.io.PrintWriter;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import vishal.vaf.notifyme.utils.LruTtlCache;
+
+/**
+ * First check on a posted notification, before its extras are parsed: drops group summaries
+ * (the "N new messages" line above a bundle), ongoing notifications and re-posts whose content
+ * did not change. Re-posts are recognized by notification key and a hash of the content,
+ * remembered for the last {@code maxKeys} keys.
+ */
+
+public class RepostFilter {
+
+    public enum Reason {
+        GROUP_SUMMARY, ONGOING, UNCHANGED
+    }
+
+    public static final int DEFAULT_MAX_KEYS = 256;
+    private static final long KEY_MAX_AGE_HOURS = 12;
+
+    private final LruTtlCache<String, Long> contentHashes;
+
+    private final AtomicLong passed = new AtomicLong();
+    private final AtomicLongArray dropped = new AtomicLongArray(Reason.values().length);
+
+    public RepostFilter() {
+        this(DEFAULT_MAX_KEYS);
+    }
+
+    public RepostFilter(int maxKeys) {
+        this.contentHashes = new LruTtlCache<>(maxKeys, KEY_MAX_AGE_HOURS, TimeUnit.HOURS);
+    }
+
+    /**
+     * @return why the notification should be dropped, null if it should be processed
+     */
+    public Reason check(String key, boolean groupSummary, boolean ongoing, long contentHash) {
+        Reason reason = null;
+        if (groupSummary) {
+            reason = Reason.GROUP_SUMMARY;
+        } else if (ongoing) {
+            reason = Reason.ONGOING;
+        } else {
+            Long previous = contentHashes.get(key);
+            if (previous != null && previous == contentHash) {
+                reason = Reason.UNCHANGED;
+            } else {
+                contentHashes.put(key, contentHash);
+            }
+        }
+        if (reason == null) {
+            passed.incrementAndGet();
+        } else {
+            dropped.incrementAndGet(reason.ordinal());
+        }
+        return reason;
+    }
+
+    /**
+     * Called when the notification is removed, posting the same content again is then news.
+     */
+    public void forget(String key) {
+        contentHashes.remove(key);
+    }
+
+    public long getPassed() {
+        return passed.get();
+    }
+
+    public long getDropped(Reason reason) {
+        return dropped.get(reason.ordinal());
+    }
+
+    /**
+     * 64-bit FNV-1a over the parts, a null part hashes differently from an empty one.
+     */
+    public static long contentHash(CharSequence... parts) {
+        long hash = 0xcbf29ce484222325L;
+        for (CharSequence part : parts) {
+            if (part == null) {
+                hash = (hash ^ 0xff) * 0x100000001b3L;
+                continue;
+            }
+            for (int i = 0; i < part.length(); i++) {
+                hash = (hash ^ part.charAt(i)) * 0x100000001b3L;
+            }
+            hash = (hash ^ 0xfe) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    public void dump(PrintWriter writer) {
+        StringBuilder line = new StringBuilder("Repost filter: passed=").append(passed.get());
+        for (Reason reason : Reason.values()) {
+            line.append(' ').append(reason.name().toLowerCase(Locale.ROOT)).append('=').append(dropped.get(reason.ordinal()));
+        }
+        writer.println(line.append(" keys=").append(contentHashes.size()));
+    }
+
+}
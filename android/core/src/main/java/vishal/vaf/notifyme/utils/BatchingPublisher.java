@@ -0,0 +1,171 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Vishal Dubey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ **/
+
+package vishal.vaf.notifyme.utils;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects outgoing items and hands them to a {@link BatchWriter} in batches, either once
+ * {@code maxBatchSize} items are pending or {@code windowMillis} after the first item of the
+ * batch arrived, whichever comes first. Writes always happen on the publisher's own thread.
+ */
+
+public class BatchingPublisher<T> {
+
+    public interface BatchWriter<T> {
+
+        void write(List<T> batch) throws Exception;
+
+    }
+
+    private final BatchWriter<T> writer;
+    private final long windowMillis;
+    private final int maxBatchSize;
+
+    private final ScheduledExecutorService executor;
+
+    private List<T> pending = new ArrayList<>();
+    private ScheduledFuture<?> scheduledFlush;
+
+    private long writes;
+    private long failedWrites;
+    private long items;
+    private int largestBatch;
+
+    public BatchingPublisher(BatchWriter<T> writer, long windowMillis, int maxBatchSize) {
+        if (maxBatchSize <= 0)
+            throw new IllegalArgumentException("maxBatchSize must be positive");
+        this.writer = writer;
+        this.windowMillis = windowMillis;
+        this.maxBatchSize = maxBatchSize;
+        this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "batching-publisher");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public synchronized void publish(T item) {
+        if (executor.isShutdown())
+            return;
+        pending.add(item);
+        if (pending.size() >= maxBatchSize) {
+            cancelScheduledFlush();
+            executor.execute(flushTask);
+        } else if (scheduledFlush == null) {
+            scheduledFlush = executor.schedule(flushTask, windowMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Writes whatever is pending right away, without waiting for the window to close.
+     */
+    public synchronized void flush() {
+        if (executor.isShutdown())
+            return;
+        cancelScheduledFlush();
+        executor.execute(flushTask);
+    }
+
+    /**
+     * Flushes pending items and stops the publisher thread.
+     */
+    public synchronized void shutdown() {
+        flush();
+        executor.shutdown();
+    }
+
+    public synchronized long getWrites() {
+        return writes;
+    }
+
+    public synchronized long getItems() {
+        return items;
+    }
+
+    public synchronized int getLargestBatch() {
+        return largestBatch;
+    }
+
+    public synchronized double getAverageBatchSize() {
+        return writes == 0 ? 0 : (double) items / writes;
+    }
+
+    public synchronized void dump(PrintWriter printWriter) {
+        printWriter.println("Publisher (window " + windowMillis + "ms, max " + maxBatchSize + "): writes=" + writes
+                + " failed=" + failedWrites + " items=" + items + " pending=" + pending.size()
+                + " largestBatch=" + largestBatch + " avgBatch=" + String.format(Locale.ROOT, "%.2f", getAverageBatchSize()));
+    }
+
+    private void cancelScheduledFlush() {
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+    }
+
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            List<T> batch;
+            synchronized (BatchingPublisher.this) {
+                scheduledFlush = null;
+                if (pending.isEmpty())
+                    return;
+                batch = pending;
+                pending = new ArrayList<>();
+            }
+            boolean written;
+            try {
+                writer.write(batch);
+                written = true;
+            } catch (Exception e) {
+                e.printStackTrace();
+                written = false;
+            }
+            synchronized (BatchingPublisher.this) {
+                if (written) {
+                    writes++;
+                    items += batch.size();
+                    largestBatch = Math.max(largestBatch, batch.size());
+                } else {
+                    failedWrites++;
+                }
+            }
+        }
+    };
+
+}
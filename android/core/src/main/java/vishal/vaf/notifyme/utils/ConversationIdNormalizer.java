@@ -0,0 +1,157 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Vishal Dubey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ **/
+
+package vishal.vaf.notifyme.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Turns a notification title into the conversation id shared with the desktop client.
+ * <p>
+ * The result is the same as
+ * {@code title.toLowerCase().replaceAll("\\(.*?\\)", "").replace(":", "").replaceAll(" ", "")}
+ * but done in one pass over the title into a reused buffer, without compiling any regex.
+ * Recent titles are memoized since a handful of senders make up nearly all traffic.
+ * <p>
+ * Instances are thread safe.
+ */
+
+public class ConversationIdNormalizer {
+
+    public static final int DEFAULT_CACHE_SIZE = 64;
+
+    private final Map<String, String> cache;
+
+    private char[] buffer = new char[64];
+
+    public ConversationIdNormalizer() {
+        this(DEFAULT_CACHE_SIZE);
+    }
+
+    public ConversationIdNormalizer(final int cacheSize) {
+        cache = new LinkedHashMap<String, String>(cacheSize, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * @return the conversation id for the title, or null if the title is null
+     */
+    public synchronized String normalize(String title) {
+        if (title == null)
+            return null;
+        String id = cache.get(title);
+        if (id == null) {
+            id = compute(title);
+            cache.put(title, id);
+        }
+        return id;
+    }
+
+    public synchronized void clear() {
+        cache.clear();
+    }
+
+    private String compute(String title) {
+        // String.toLowerCase has context and locale sensitive rules (final sigma, dotted I,
+        // Turkish/Lithuanian casing) that per code point lowering does not reproduce. Those
+        // titles are rare, let the JDK lower them first and only strip here.
+        boolean lowered = needsStringLowerCase(title);
+        String source = lowered ? title.toLowerCase() : title;
+
+        int length = source.length();
+        if (buffer.length < length * 2)
+            buffer = new char[Math.max(length * 2, buffer.length * 2)];
+
+        int out = 0;
+        // '(' at index below this cannot be closed on its line, see below
+        int unclosedUntil = -1;
+        int i = 0;
+        while (i < length) {
+            char c = source.charAt(i);
+            if (c == '(' && i >= unclosedUntil) {
+                int close = findClose(source, i + 1);
+                if (close >= 0) {
+                    i = close + 1;
+                    continue;
+                }
+                // Every '(' up to the line break (or the end) fails the same way, remember
+                // that instead of scanning again for each of them.
+                unclosedUntil = -close - 1;
+            }
+            if (c == ':' || c == ' ') {
+                i++;
+                continue;
+            }
+            if (lowered || c < 0x80) {
+                buffer[out++] = lowered ? c : (c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c);
+                i++;
+            } else {
+                int codePoint = source.codePointAt(i);
+                out += Character.toChars(Character.toLowerCase(codePoint), buffer, out);
+                i += Character.charCount(codePoint);
+            }
+        }
+        return new String(buffer, 0, out);
+    }
+
+    /**
+     * Looks for the ')' closing a '(' the way the lazy {@code .*?} would: '.' does not match
+     * line terminators. Returns the index of ')' or, if there is none, -(stop + 1) where stop
+     * is the index of the line terminator or the length of the string.
+     */
+    private static int findClose(String source, int from) {
+        int length = source.length();
+        for (int i = from; i < length; i++) {
+            char c = source.charAt(i);
+            if (c == ')')
+                return i;
+            if (isLineTerminator(c))
+                return -(i + 1);
+        }
+        return -(length + 1);
+    }
+
+    private static boolean isLineTerminator(char c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+
+    private static boolean needsStringLowerCase(String title) {
+        String language = Locale.getDefault().getLanguage();
+        if (language.equals("tr") || language.equals("az") || language.equals("lt"))
+            return true;
+        for (int i = 0; i < title.length(); i++) {
+            char c = title.charAt(i);
+            if (c == '\u0130' || c == '\u03a3')
+                return true;
+        }
+        return false;
+    }
+
+}
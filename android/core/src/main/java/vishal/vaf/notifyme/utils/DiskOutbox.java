@@ -0,0 +1,317 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Vishal Dubey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ **/
+
+package vishal.vaf.notifyme.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only queue of byte records in a single file, used to keep outgoing data across
+ * process restarts and network outages.
+ * <p>
+ * The file starts with a header holding the offset of the oldest unacknowledged record, then
+ * records are written back to back as {@code [length][crc32][bytes]}. Acknowledging records
+ * only moves the head offset; the delivered prefix is compacted away by rewriting the pending
+ * records to a new file that replaces the old one, once it is large or the queue is empty.
+ * <p>
+ * Pending records are capped at {@code maxBytes}, when an append would exceed the cap the
+ * oldest records are dropped. A torn or corrupt tail (say the process died mid-write) is cut
+ * off when the file is opened. Writes are not synced, so records survive the process being
+ * killed but not necessarily a power loss. Instances are thread safe.
+ * <p>
+ * Records are numbered in the order they were appended, for the lifetime of the instance.
+ * A {@link Batch} from {@link #peek(int)} carries the number of its first record, and
+ * {@link #acknowledge(long)} takes the number up to which records were delivered, so records
+ * dropped by the cap while a batch was in flight are not mistaken for delivered ones.
+ */
+
+public class DiskOutbox {
+
+    private static final int MAGIC = 0x4e4d4f31;
+    private static final int HEADER_SIZE = 12;
+    private static final int RECORD_OVERHEAD = 8;
+
+    public static class Batch {
+
+        private final List<byte[]> records;
+        private final long firstSequence;
+
+        Batch(List<byte[]> records, long firstSequence) {
+            this.records = records;
+            this.firstSequence = firstSequence;
+        }
+
+        public List<byte[]> getRecords() {
+            return records;
+        }
+
+        public boolean isEmpty() {
+            return records.isEmpty();
+        }
+
+        /**
+         * @return sequence number of the first record, the n-th record has {@code firstSequence + n}
+         */
+        public long getFirstSequence() {
+            return firstSequence;
+        }
+    }
+
+    private final File file;
+    private final long maxBytes;
+
+    private RandomAccessFile raf;
+    private long head;
+    private long tail;
+    private int pending;
+    // sequence number of the record at head
+    private long headSequence;
+
+    private long appended;
+    private long acknowledged;
+    private long dropped;
+    private long truncated;
+    private long compactions;
+    private long failedCompactions;
+
+    public DiskOutbox(File file, long maxBytes) throws IOException {
+        if (maxBytes <= RECORD_OVERHEAD)
+            throw new IllegalArgumentException("maxBytes too small");
+        this.file = file;
+        this.maxBytes = maxBytes;
+        open();
+    }
+
+    /**
+     * Adds a record at the end of the queue, dropping the oldest ones if the cap is reached.
+     *
+     * @throws IllegalArgumentException if the record alone is larger than the cap
+     */
+    public synchronized void append(byte[] record) throws IOException {
+        long size = RECORD_OVERHEAD + record.length;
+        if (size > maxBytes)
+            throw new IllegalArgumentException("record of " + record.length + " bytes exceeds the outbox cap");
+        int drop = 0;
+        long newHead = head;
+        while (tail - newHead + size > maxBytes) {
+            newHead = skip(newHead);
+            drop++;
+        }
+        if (drop > 0) {
+            setHead(newHead, drop);
+            dropped += drop;
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(record, 0, record.length);
+        raf.seek(tail);
+        raf.writeInt(record.length);
+        raf.writeInt((int) crc.getValue());
+        raf.write(record);
+        tail += size;
+        pending++;
+        appended++;
+    }
+
+    /**
+     * @return up to {@code max} of the oldest pending records, in order, without removing them
+     */
+    public synchronized Batch peek(int max) throws IOException {
+        List<byte[]> records = new ArrayList<>(Math.min(max, pending));
+        long position = head;
+        while (records.size() < max && position < tail) {
+            raf.seek(position);
+            int length = raf.readInt();
+            raf.readInt();
+            byte[] record = new byte[length];
+            raf.readFully(record);
+            records.add(record);
+            position += RECORD_OVERHEAD + length;
+        }
+        return new Batch(records, headSequence);
+    }
+
+    /**
+     * Removes the delivered records, those numbered below {@code endSequence}. Records the cap
+     * dropped in the meantime are already gone, acknowledging them again does nothing.
+     */
+    public synchronized void acknowledge(long endSequence) throws IOException {
+        int count = (int) Math.min(endSequence - headSequence, pending);
+        if (count <= 0)
+            return;
+        long newHead = head;
+        for (int i = 0; i < count; i++) {
+            newHead = skip(newHead);
+        }
+        setHead(newHead, count);
+        acknowledged += count;
+    }
+
+    public synchronized int size() {
+        return pending;
+    }
+
+    public synchronized long getPendingBytes() {
+        return tail - head;
+    }
+
+    public synchronized long getDropped() {
+        return dropped;
+    }
+
+    public synchronized void close() throws IOException {
+        raf.close();
+    }
+
+    public synchronized void dump(PrintWriter writer) {
+        writer.println("Outbox " + file.getName() + ": pending=" + pending + " bytes=" + (tail - head) + "/" + maxBytes
+                + " fileBytes=" + tail + " appended=" + appended + " acknowledged=" + acknowledged + " dropped=" + dropped
+                + " truncated=" + truncated + " compactions=" + compactions + " failedCompactions=" + failedCompactions);
+    }
+
+    private void open() throws IOException {
+        raf = new RandomAccessFile(file, "rw");
+        if (raf.length() < HEADER_SIZE) {
+            reset(raf);
+            head = tail = HEADER_SIZE;
+            return;
+        }
+        if (raf.readInt() != MAGIC) {
+            truncated++;
+            reset(raf);
+            head = tail = HEADER_SIZE;
+            return;
+        }
+        head = Math.max(HEADER_SIZE, Math.min(raf.readLong(), raf.length()));
+
+        // walk the records to find the end of the last intact one
+        long length = raf.length();
+        long position = head;
+        byte[] buffer = new byte[256];
+        while (position + RECORD_OVERHEAD <= length) {
+            raf.seek(position);
+            int size = raf.readInt();
+            int checksum = raf.readInt();
+            if (size < 0 || position + RECORD_OVERHEAD + size > length)
+                break;
+            if (buffer.length < size)
+                buffer = new byte[size];
+            raf.readFully(buffer, 0, size);
+            CRC32 crc = new CRC32();
+            crc.update(buffer, 0, size);
+            if ((int) crc.getValue() != checksum)
+                break;
+            position += RECORD_OVERHEAD + size;
+            pending++;
+        }
+        tail = position;
+        if (tail < length) {
+            truncated++;
+            raf.setLength(tail);
+        }
+    }
+
+    private long skip(long position) throws IOException {
+        raf.seek(position);
+        return position + RECORD_OVERHEAD + raf.readInt();
+    }
+
+    private void setHead(long newHead, int removed) throws IOException {
+        head = newHead;
+        pending -= removed;
+        headSequence += removed;
+        if (pending == 0) {
+            // nothing left to keep, start over in place
+            head = tail = HEADER_SIZE;
+            raf.setLength(HEADER_SIZE);
+        } else if (head - HEADER_SIZE >= Math.max(maxBytes / 2, tail - head) && compact()) {
+            return;
+        }
+        raf.seek(4);
+        raf.writeLong(head);
+    }
+
+    /**
+     * Copies the pending records to a fresh file and swaps it in, so a crash at any point
+     * leaves either the old or the new file intact.
+     *
+     * @return false if the copy could not be written or swapped in; the old file is kept
+     * open and compaction is tried again on a later acknowledgement
+     */
+    private boolean compact() throws IOException {
+        File compacted = new File(file.getPath() + ".tmp");
+        try {
+            RandomAccessFile out = new RandomAccessFile(compacted, "rw");
+            try {
+                reset(out);
+                byte[] buffer = new byte[8192];
+                long position = head;
+                while (position < tail) {
+                    raf.seek(position);
+                    int read = raf.read(buffer, 0, (int) Math.min(buffer.length, tail - position));
+                    out.write(buffer, 0, read);
+                    position += read;
+                }
+                out.getFD().sync();
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            compacted.delete();
+            failedCompactions++;
+            return false;
+        }
+        raf.close();
+        if (!replace(compacted, file)) {
+            raf = new RandomAccessFile(file, "rw");
+            compacted.delete();
+            failedCompactions++;
+            return false;
+        }
+        raf = new RandomAccessFile(file, "rw");
+        tail = HEADER_SIZE + tail - head;
+        head = HEADER_SIZE;
+        compactions++;
+        return true;
+    }
+
+    // package-private so tests can make the swap fail
+    boolean replace(File from, File to) {
+        return from.renameTo(to);
+    }
+
+    private static void reset(RandomAccessFile raf) throws IOException {
+        raf.setLength(0);
+        raf.writeInt(MAGIC);
+        raf.writeLong(HEADER_SIZE);
+    }
+
+}
@@ -0,0 +1,135 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Vishal Dubey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ **/
+
+package vishal.vaf.notifyme.utils;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Runs tasks on a shared executor while keeping tasks submitted under the same key in
+ * submission order, one at a time. Tasks with different keys run in parallel.
+ */
+
+public class KeyedSerialExecutor<K> {
+
+    private final Executor executor;
+
+    private final Map<K, ArrayDeque<Runnable>> queues = new HashMap<>();
+
+    public KeyedSerialExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * @throws RejectedExecutionException if the executor refuses the task, the key's queued
+     *                                    tasks are then dropped
+     */
+    public void execute(K key, Runnable task) {
+        synchronized (queues) {
+            ArrayDeque<Runnable> queue = queues.get(key);
+            if (queue != null) {
+                // a drain for this key is already scheduled or running, it will pick this up
+                queue.add(task);
+                return;
+            }
+            queue = new ArrayDeque<>();
+            queue.add(task);
+            queues.put(key, queue);
+        }
+        scheduleDrain(key);
+    }
+
+    /**
+     * @return number of keys that currently have queued or running tasks
+     */
+    public int getActiveKeys() {
+        synchronized (queues) {
+            return queues.size();
+        }
+    }
+
+    private void scheduleDrain(final K key) {
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    drain(key);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            synchronized (queues) {
+                queues.remove(key);
+            }
+            throw e;
+        }
+    }
+
+    private void drain(K key) {
+        Runnable task;
+        synchronized (queues) {
+            task = queues.get(key).peek();
+        }
+        while (task != null) {
+            boolean completed = false;
+            try {
+                task.run();
+                completed = true;
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+                completed = true;
+            } finally {
+                task = next(key);
+                // an Error is on its way up and ends this drain, hand the rest to a new one
+                if (!completed && task != null) {
+                    try {
+                        scheduleDrain(key);
+                    } catch (RejectedExecutionException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes the task that just ran.
+     *
+     * @return the key's next task, null if there is none and the key is no longer active
+     */
+    private Runnable next(K key) {
+        synchronized (queues) {
+            ArrayDeque<Runnable> queue = queues.get(key);
+            queue.poll();
+            Runnable next = queue.peek();
+            if (next == null)
+                queues.remove(key);
+            return next;
+        }
+    }
+
+}
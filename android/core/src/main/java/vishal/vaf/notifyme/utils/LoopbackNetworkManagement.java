@@ -0,0 +1,181 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Vishal Dubey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ **/
+
+package vishal.vaf.notifyme.utils;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import vishal.vaf.notifyme.model.ConversationMessage;
+import vishal.vaf.notifyme.model.DesktopReply;
+import vishal.vaf.notifyme.processing.ConversationSync;
+
+/**
+ * In-process {@link NetworkManagement}: published notifications, removals and the paths of
+ * conversation messages are queued in memory for the caller to drain, and replies are
+ * injected with {@link #deliverReply}. Lets the listener logic run on a plain JVM without any
+ * network.
+ */
+
+public class LoopbackNetworkManagement implements NetworkManagement {
+
+    private final ConcurrentLinkedQueue<Map<String, String>> notifications = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<String> removals = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<String> messages = new ConcurrentLinkedQueue<>();
+
+    private final AtomicLong publishedNotifications = new AtomicLong();
+    private final AtomicLong publishedRemovals = new AtomicLong();
+    private final AtomicLong publishedMessages = new AtomicLong();
+    private final AtomicLong deliveredReplies = new AtomicLong();
+    private final AtomicLong acknowledgedReplies = new AtomicLong();
+
+    private volatile ReplyListener replyListener;
+
+    @Override
+    public void publishNotification(Map<String, String> payload) {
+        notifications.add(payload);
+        publishedNotifications.incrementAndGet();
+    }
+
+    @Override
+    public void publishMessages(String conversationId, List<ConversationMessage> messages) {
+        for (ConversationMessage message : messages) {
+            this.messages.add(ConversationSync.messagePath(conversationId, message));
+        }
+        publishedMessages.addAndGet(messages.size());
+    }
+
+    @Override
+    public void write(Map<String, Map<String, String>> entries) {
+        for (Map.Entry<String, Map<String, String>> entry : entries.entrySet()) {
+            if (entry.getKey().startsWith("conversations/")) {
+                messages.add(entry.getKey());
+                publishedMessages.incrementAndGet();
+            } else if (!entry.getKey().startsWith("threads/")) {
+                publishNotification(entry.getValue());
+            }
+        }
+    }
+
+    @Override
+    public void publishRemoval(String id) {
+        removals.add(id);
+        publishedRemovals.incrementAndGet();
+    }
+
+    @Override
+    public void subscribeReplies(ReplyListener listener) {
+        replyListener = listener;
+    }
+
+    @Override
+    public void unsubscribeReplies() {
+        replyListener = null;
+    }
+
+    @Override
+    public void acknowledgeReply(DesktopReply reply) {
+        acknowledgedReplies.incrementAndGet();
+    }
+
+    @Override
+    public void close() {
+        replyListener = null;
+    }
+
+    /**
+     * Plays the desktop side: hands a reply to the subscribed listener on the calling thread.
+     *
+     * @return false if nobody is subscribed
+     */
+    public boolean deliverReply(DesktopReply reply) {
+        ReplyListener listener = replyListener;
+        if (listener == null)
+            return false;
+        deliveredReplies.incrementAndGet();
+        listener.onReply(reply);
+        return true;
+    }
+
+    public List<Map<String, String>> drainNotifications() {
+        List<Map<String, String>> drained = new ArrayList<>();
+        Map<String, String> payload;
+        while ((payload = notifications.poll()) != null) {
+            drained.add(payload);
+        }
+        return drained;
+    }
+
+    public List<String> drainRemovals() {
+        List<String> drained = new ArrayList<>();
+        String id;
+        while ((id = removals.poll()) != null) {
+            drained.add(id);
+        }
+        return drained;
+    }
+
+    /**
+     * @return paths of the conversation messages published since the last call
+     */
+    public List<String> drainMessages() {
+        List<String> drained = new ArrayList<>();
+        String path;
+        while ((path = messages.poll()) != null) {
+            drained.add(path);
+        }
+        return drained;
+    }
+
+    public long getPublishedMessages() {
+        return publishedMessages.get();
+    }
+
+    public long getPublishedNotifications() {
+        return publishedNotifications.get();
+    }
+
+    public long getPublishedRemovals() {
+        return publishedRemovals.get();
+    }
+
+    public long getDeliveredReplies() {
+        return deliveredReplies.get();
+    }
+
+    public long getAcknowledgedReplies() {
+        return acknowledgedReplies.get();
+    }
+
+    @Override
+    public void dump(PrintWriter writer) {
+        writer.println("Loopback transport: notifications=" + publishedNotifications.get() + " removals=" + publishedRemovals.get()
+                + " messages=" + publishedMessages.get() + " replies=" + deliveredReplies.get() + " acknowledged=" + acknowledgedReplies.get());
+    }
+
+}
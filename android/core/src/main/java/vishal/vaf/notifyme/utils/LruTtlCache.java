@@ -0,0 +1,178 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Vishal Dubey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ **/
+
+package vishal.vaf.notifyme.utils;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Map with a size cap and a maximum entry age. Entries are kept in access order, so when the
+ * cap is hit the least recently used one goes first. Expired entries are dropped when they
+ * are looked up, when they reach the head of the queue, or on {@link #purgeExpired()}.
+ * <p>
+ * Hits, misses and evictions are counted. Instances are thread safe.
+ */
+
+public class LruTtlCache<K, V> {
+
+    private final int maxEntries;
+    private final long maxAgeNanos;
+
+    private final LinkedHashMap<K, Entry<V>> map;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long expirations;
+
+    public LruTtlCache(int maxEntries, long maxAge, TimeUnit unit) {
+        if (maxEntries <= 0)
+            throw new IllegalArgumentException("maxEntries must be positive");
+        this.maxEntries = maxEntries;
+        this.maxAgeNanos = unit.toNanos(maxAge);
+        this.map = new LinkedHashMap<>(Math.min(maxEntries, 256), 0.75f, true);
+    }
+
+    public synchronized V get(K key) {
+        Entry<V> entry = map.get(key);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        if (isExpired(entry, now())) {
+            map.remove(key);
+            expirations++;
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.value;
+    }
+
+    public synchronized void put(K key, V value) {
+        long now = now();
+        map.put(key, new Entry<>(value, now));
+        while (map.size() > maxEntries) {
+            removeHead();
+            evictions++;
+        }
+        // the head is the least recently used entry, drop it early if it is also stale
+        Iterator<Entry<V>> iterator = map.values().iterator();
+        while (iterator.hasNext()) {
+            if (!isExpired(iterator.next(), now))
+                break;
+            iterator.remove();
+            expirations++;
+        }
+    }
+
+    public synchronized V remove(K key) {
+        Entry<V> entry = map.remove(key);
+        return entry == null ? null : entry.value;
+    }
+
+    /**
+     * Drops every expired entry, not just the ones at the head.
+     */
+    public synchronized void purgeExpired() {
+        long now = now();
+        Iterator<Entry<V>> iterator = map.values().iterator();
+        while (iterator.hasNext()) {
+            if (isExpired(iterator.next(), now)) {
+                iterator.remove();
+                expirations++;
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        map.clear();
+    }
+
+    public synchronized int size() {
+        return map.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return entries dropped because the size cap was reached
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return entries dropped because they outlived the maximum age
+     */
+    public synchronized long getExpirations() {
+        return expirations;
+    }
+
+    public synchronized double getHitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "size=" + map.size() + "/" + maxEntries + " hits=" + hits + " misses=" + misses
+                + " evictions=" + evictions + " expirations=" + expirations;
+    }
+
+    protected long now() {
+        return System.nanoTime();
+    }
+
+    private boolean isExpired(Entry<V> entry, long now) {
+        return now - entry.createdAt > maxAgeNanos;
+    }
+
+    private void removeHead() {
+        Iterator<Map.Entry<K, Entry<V>>> iterator = map.entrySet().iterator();
+        iterator.next();
+        iterator.remove();
+    }
+
+    private static class Entry<V> {
+
+        private final V value;
+        private final long createdAt;
+
+        Entry(V value, long createdAt) {
+            this.value = value;
+            this.createdAt = createdAt;
+        }
+    }
+
+}
@@ -0,0 +1,182 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Vishal Dubey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ **/
+
+package vishal.vaf.notifyme.utils;
+
+import java.io.PrintWriter;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Named counters and latency histograms, printed by {@link #dump(PrintWriter)} so they show up
+ * in {@code adb shell dumpsys}. Look up a metric once and keep the reference, recording on it
+ * is lock free and does not allocate.
+ * <p>
+ * Histograms use fixed buckets from 50us to 30s, percentiles are reported as the upper bound
+ * of the bucket they fall in (capped by the largest value seen).
+ */
+
+public class MetricsRegistry {
+
+    private final ConcurrentMap<String, Counter> counters = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Histogram> histograms = new ConcurrentHashMap<>();
+
+    public Counter counter(String name) {
+        Counter counter = counters.get(name);
+        if (counter == null) {
+            Counter created = new Counter();
+            counter = counters.putIfAbsent(name, created);
+            if (counter == null)
+                counter = created;
+        }
+        return counter;
+    }
+
+    public Histogram histogram(String name) {
+        Histogram histogram = histograms.get(name);
+        if (histogram == null) {
+            Histogram created = new Histogram();
+            histogram = histograms.putIfAbsent(name, created);
+            if (histogram == null)
+                histogram = created;
+        }
+        return histogram;
+    }
+
+    public void dump(PrintWriter writer) {
+        writer.println("Metrics");
+        for (Map.Entry<String, Counter> entry : new TreeMap<>(counters).entrySet()) {
+            writer.println("  " + entry.getKey() + ": " + entry.getValue().get());
+        }
+        for (Map.Entry<String, Histogram> entry : new TreeMap<>(histograms).entrySet()) {
+            writer.println("  " + entry.getKey() + ": " + entry.getValue());
+        }
+    }
+
+    public static class Counter {
+
+        private final AtomicLong value = new AtomicLong();
+
+        public void increment() {
+            value.incrementAndGet();
+        }
+
+        public void add(long delta) {
+            value.addAndGet(delta);
+        }
+
+        public long get() {
+            return value.get();
+        }
+    }
+
+    public static class Histogram {
+
+        // upper bounds in microseconds, the last bucket catches everything above
+        private static final long[] BOUNDS_MICROS = {
+                50, 100, 250, 500, 1000, 2500, 5000, 10000, 25000, 50000, 100000,
+                250000, 500000, 1000000, 2500000, 5000000, 10000000, 30000000
+        };
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BOUNDS_MICROS.length + 1);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        public void record(long nanos) {
+            if (nanos < 0)
+                nanos = 0;
+            long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+            int bucket = 0;
+            while (bucket < BOUNDS_MICROS.length && micros > BOUNDS_MICROS[bucket]) {
+                bucket++;
+            }
+            buckets.incrementAndGet(bucket);
+            count.incrementAndGet();
+            totalNanos.addAndGet(nanos);
+            long max;
+            while (nanos > (max = maxNanos.get())) {
+                if (maxNanos.compareAndSet(max, nanos))
+                    break;
+            }
+        }
+
+        /**
+         * Records the time elapsed since {@code startNanos}, a {@link System#nanoTime()} reading.
+         */
+        public void recordSince(long startNanos) {
+            record(System.nanoTime() - startNanos);
+        }
+
+        public long getCount() {
+            return count.get();
+        }
+
+        /**
+         * @param percentile between 0 and 100
+         * @return the latency in nanoseconds below which {@code percentile} of the recordings fall
+         */
+        public long getPercentile(double percentile) {
+            long total = 0;
+            long[] snapshot = new long[buckets.length()];
+            for (int i = 0; i < snapshot.length; i++) {
+                snapshot[i] = buckets.get(i);
+                total += snapshot[i];
+            }
+            if (total == 0)
+                return 0;
+            long rank = (long) Math.ceil(percentile / 100 * total);
+            long seen = 0;
+            long max = maxNanos.get();
+            for (int i = 0; i < snapshot.length; i++) {
+                seen += snapshot[i];
+                if (seen >= rank && snapshot[i] > 0) {
+                    if (i == BOUNDS_MICROS.length)
+                        return max;
+                    return Math.min(TimeUnit.MICROSECONDS.toNanos(BOUNDS_MICROS[i]), max);
+                }
+            }
+            return max;
+        }
+
+        @Override
+        public String toString() {
+            long n = count.get();
+            return "count=" + n + " mean=" + millis(n == 0 ? 0 : totalNanos.get() / n) + "ms"
+                    + " p50=" + millis(getPercentile(50)) + "ms p90=" + millis(getPercentile(90)) + "ms"
+                    + " p99=" + millis(getPercentile(99)) + "ms max=" + millis(maxNanos.get()) + "ms";
+        }
+
+        private static String millis(long nanos) {
+            return String.format(Locale.ROOT, "%.2f", nanos / 1e6);
+        }
+    }
+
+}
@@ -0,0 +1,94 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Vishal Dubey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ **/
+
+package vishal.vaf.notifyme.utils;
+
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.Map;
+
+import vishal.vaf.notifyme.model.ConversationMessage;
+import vishal.vaf.notifyme.model.DesktopReply;
+
+/**
+ * Connection between the phone and the desktop clients. The listener service only talks to
+ * this interface. FirebaseNetworkManagement in the app is the production implementation,
+ * {@link LoopbackNetworkManagement} keeps everything in process for tests and benchmarks.
+ */
+
+public interface NetworkManagement {
+
+    interface ReplyListener {
+
+        void onReply(DesktopReply reply);
+
+    }
+
+    /**
+     * Queues a forwarded notification for the desktop. Must not block.
+     */
+    void publishNotification(Map<String, String> payload);
+
+    /**
+     * Queues messages of a conversation the desktop has not seen yet, see
+     * {@link vishal.vaf.notifyme.processing.ConversationSync}. Must not block.
+     */
+    void publishMessages(String conversationId, List<ConversationMessage> messages);
+
+    /**
+     * Writes payloads and returns once the transport has confirmed them. Used to replay the
+     * {@link DiskOutbox}, called on a background thread and may block.
+     *
+     * @param entries payloads by path below the phone's root ({@code app/<key>},
+     *                {@code conversations/<id>/<key>} or {@code threads/<id>}); writing a path again must replace
+     *                the earlier write, not duplicate it
+     * @throws Exception if the write was not confirmed, the whole batch is retried later
+     */
+    void write(Map<String, Map<String, String>> entries) throws Exception;
+
+    /**
+     * Tells the desktop that the conversation with this id was dismissed on the phone.
+     */
+    void publishRemoval(String id);
+
+    /**
+     * Starts delivering desktop replies to the listener, in the order they were sent.
+     */
+    void subscribeReplies(ReplyListener listener);
+
+    void unsubscribeReplies();
+
+    /**
+     * Marks a delivered reply as handled so it is not delivered again.
+     */
+    void acknowledgeReply(DesktopReply reply);
+
+    /**
+     * Flushes pending writes and releases the connection.
+     */
+    void close();
+
+    void dump(PrintWriter writer);
+
+}
@@ -0,0 +1,455 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Vishal Dubey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ **/
+
+package vishal.vaf.notifyme.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import vishal.vaf.notifyme.model.ConversationMessage;
+import vishal.vaf.notifyme.model.DesktopReply;
+import vishal.vaf.notifyme.model.PayloadSchema;
+import vishal.vaf.notifyme.processing.ConversationSync;
+
+/**
+ * {@link NetworkManagement} that writes forwarded notifications, conversation messages and
+ * removals to a {@link DiskOutbox} first and replays them, in order, to the real transport whenever one is
+ * set. Records leave the outbox only after the transport confirmed them, so nothing is lost
+ * while the transport is missing, offline or the process restarts.
+ * <p>
+ * Every record is stored with its full path; notifications get a stable {@link StreamKeys}
+ * key when they enter the outbox, so a batch that is written again after a failed confirmation
+ * overwrites itself instead of duplicating.
+ * Failed writes are retried with exponential backoff. Replies are passed straight through.
+ * <p>
+ * Without an {@link UploadPolicy} every record is sent as soon as it is queued; with one, the
+ * policy decides when the queued records go out together.
+ */
+
+public class OutboxNetworkManagement implements NetworkManagement {
+
+    // Strings as an int length and UTF-8 bytes; the legacy types used writeUTF, which stops at 64KB
+    private static final byte LEGACY_ENTRY = 1;
+    private static final byte LEGACY_REMOVAL = 2;
+    private static final byte ENTRY = 3;
+    private static final byte REMOVAL = 4;
+
+    private static final int REPLAY_BATCH_SIZE = 50;
+    private static final long MIN_RETRY_MILLIS = 1000;
+    private static final long MAX_RETRY_MILLIS = 60 * 1000;
+
+    private final DiskOutbox outbox;
+    private final ScheduledExecutorService executor;
+
+    private NetworkManagement transport;
+    private ReplyListener replyListener;
+
+    private UploadPolicy uploadPolicy;
+
+    private boolean replayScheduled;
+    private ScheduledFuture<?> replayFuture;
+    private long replayDueAt;
+    private long retryMillis = MIN_RETRY_MILLIS;
+
+    private long replayed;
+    private long failedWrites;
+    private long unwritable;
+
+    public OutboxNetworkManagement(DiskOutbox outbox) {
+        this.outbox = outbox;
+        this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "outbox");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Connects the real transport, or disconnects it with null. Whatever is in the outbox is
+     * replayed to a new transport right away.
+     */
+    public synchronized void setTransport(NetworkManagement transport) {
+        NetworkManagement previous = this.transport;
+        if (previous != null && previous != transport)
+            previous.close();
+        this.transport = transport;
+        if (transport != null) {
+            if (replyListener != null)
+                transport.subscribeReplies(replyListener);
+            retryMillis = MIN_RETRY_MILLIS;
+            scheduleReplay(0);
+        }
+    }
+
+    public synchronized NetworkManagement getTransport() {
+        return transport;
+    }
+
+    public synchronized void setUploadPolicy(UploadPolicy uploadPolicy) {
+        this.uploadPolicy = uploadPolicy;
+    }
+
+    /**
+     * Sends everything queued now, e.g. from the system's flush job.
+     *
+     * @param attempted run on the outbox thread once the send was attempted, may be null
+     */
+    public synchronized void flush(Runnable attempted) {
+        if (uploadPolicy != null)
+            uploadPolicy.onFlushJobRun();
+        if (transport != null)
+            scheduleReplay(0);
+        if (attempted != null && !executor.isShutdown())
+            executor.execute(attempted);
+    }
+
+    /**
+     * Re-evaluates when the queued records are due, after the network or Doze state changed.
+     */
+    public void onConditionsChanged() {
+        UploadPolicy uploadPolicy;
+        long delay;
+        synchronized (this) {
+            uploadPolicy = this.uploadPolicy;
+            if (transport == null || uploadPolicy == null)
+                return;
+            delay = uploadPolicy.pendingDelay(System.currentTimeMillis());
+            if (delay >= 0)
+                scheduleReplay(delay);
+        }
+        if (delay == UploadPolicy.SCHEDULE_FLUSH_JOB)
+            uploadPolicy.scheduleFlushJob();
+    }
+
+    @Override
+    public void publishNotification(Map<String, String> payload) {
+        try {
+            append(encodeEntry("app/" + StreamKeys.next(), payload), payload.get(PayloadSchema.ID));
+        } catch (IOException e) {
+            unwritable(e);
+        }
+    }
+
+    @Override
+    public void publishRemoval(String id) {
+        try {
+            append(encodeRemoval(id), id);
+        } catch (IOException e) {
+            unwritable(e);
+        }
+    }
+
+    @Override
+    public void publishMessages(String conversationId, List<ConversationMessage> messages) {
+        for (ConversationMessage message : messages) {
+            try {
+                append(encodeEntry(ConversationSync.messagePath(conversationId, message),
+                        message.toMap()), conversationId);
+            } catch (IOException e) {
+                unwritable(e);
+            }
+        }
+        try {
+            append(encodeEntry(ConversationSync.threadPath(conversationId), ConversationSync.threadIndex(messages)), conversationId);
+        } catch (IOException e) {
+            unwritable(e);
+        }
+    }
+
+    /**
+     * Queues the entries like any other write, returns before they are delivered.
+     */
+    @Override
+    public void write(Map<String, Map<String, String>> entries) {
+        for (Map.Entry<String, Map<String, String>> entry : entries.entrySet()) {
+            try {
+                append(encodeEntry(entry.getKey(), entry.getValue()), null);
+            } catch (IOException e) {
+                unwritable(e);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void subscribeReplies(ReplyListener listener) {
+        replyListener = listener;
+        if (transport != null)
+            transport.subscribeReplies(listener);
+    }
+
+    @Override
+    public synchronized void unsubscribeReplies() {
+        replyListener = null;
+        if (transport != null)
+            transport.unsubscribeReplies();
+    }
+
+    @Override
+    public void acknowledgeReply(DesktopReply reply) {
+        NetworkManagement transport = getTransport();
+        if (transport != null)
+            transport.acknowledgeReply(reply);
+    }
+
+    /**
+     * Closes the transport and stops replaying, pending records stay on disk for next time.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (transport != null)
+                transport.close();
+            transport = null;
+            replyListener = null;
+        }
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+            outbox.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public void dump(PrintWriter writer) {
+        outbox.dump(writer);
+        NetworkManagement transport;
+        synchronized (this) {
+            writer.println("Outbox replay: replayed=" + replayed + " failedWrites=" + failedWrites + " unwritable=" + unwritable
+                    + " nextRetryMs=" + retryMillis + " transport=" + (this.transport != null));
+            transport = this.transport;
+        }
+        if (transport != null)
+            transport.dump(writer);
+        UploadPolicy uploadPolicy = getUploadPolicy();
+        if (uploadPolicy != null)
+            uploadPolicy.dump(writer);
+    }
+
+    private synchronized UploadPolicy getUploadPolicy() {
+        return uploadPolicy;
+    }
+
+    private void append(byte[] record, String conversationId) throws IOException {
+        try {
+            outbox.append(record);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e);
+        }
+        UploadPolicy uploadPolicy;
+        long delay;
+        synchronized (this) {
+            uploadPolicy = this.uploadPolicy;
+            delay = uploadPolicy == null ? 0 : uploadPolicy.onQueued(conversationId, System.currentTimeMillis());
+            if (transport != null && delay >= 0)
+                scheduleReplay(delay);
+        }
+        if (delay == UploadPolicy.SCHEDULE_FLUSH_JOB)
+            uploadPolicy.scheduleFlushJob();
+    }
+
+    private synchronized void unwritable(IOException e) {
+        unwritable++;
+        e.printStackTrace();
+    }
+
+    /**
+     * Schedules a replay, or moves the scheduled one forward if this one is due earlier.
+     */
+    private synchronized void scheduleReplay(long delayMillis) {
+        if (executor.isShutdown())
+            return;
+        long dueAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis);
+        // a replay that can no longer be cancelled is about to start and picks up everything
+        if (replayScheduled && (dueAt - replayDueAt >= 0 || !replayFuture.cancel(false)))
+            return;
+        replayScheduled = true;
+        replayDueAt = dueAt;
+        replayFuture = executor.schedule(replayTask, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private final Runnable replayTask = new Runnable() {
+        @Override
+        public void run() {
+            NetworkManagement transport;
+            synchronized (OutboxNetworkManagement.this) {
+                replayScheduled = false;
+                transport = OutboxNetworkManagement.this.transport;
+            }
+            if (transport == null)
+                return;
+            try {
+                while (replayBatch(transport)) {
+                    if (getTransport() != transport)
+                        return;
+                }
+                synchronized (OutboxNetworkManagement.this) {
+                    retryMillis = MIN_RETRY_MILLIS;
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+                synchronized (OutboxNetworkManagement.this) {
+                    failedWrites++;
+                    long delay = retryMillis;
+                    retryMillis = Math.min(retryMillis * 2, MAX_RETRY_MILLIS);
+                    scheduleReplay(delay);
+                }
+            }
+        }
+    };
+
+    /**
+     * Writes the oldest pending records. Consecutive entries go out as one confirmed
+     * write, a removal flushes them first so the desktop sees everything in order.
+     *
+     * @return false once the outbox is empty
+     */
+    private boolean replayBatch(NetworkManagement transport) throws Exception {
+        DiskOutbox.Batch batch = outbox.peek(REPLAY_BATCH_SIZE);
+        if (batch.isEmpty())
+            return false;
+        UploadPolicy uploadPolicy = getUploadPolicy();
+        if (uploadPolicy != null)
+            uploadPolicy.onSent(System.currentTimeMillis());
+        Map<String, Map<String, String>> entries = new LinkedHashMap<>();
+        // records covered by the entries collected so far, skipped ones included
+        int collected = 0;
+        int done = 0;
+        try {
+            for (byte[] record : batch.getRecords()) {
+                DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+                boolean removal;
+                String key;
+                Map<String, String> payload = null;
+                try {
+                    byte type = in.readByte();
+                    if (type != ENTRY && type != REMOVAL && type != LEGACY_ENTRY && type != LEGACY_REMOVAL)
+                        throw new IOException("unknown record type " + type);
+                    boolean legacy = type == LEGACY_ENTRY || type == LEGACY_REMOVAL;
+                    removal = type == REMOVAL || type == LEGACY_REMOVAL;
+                    key = readString(in, legacy);
+                    if (!removal)
+                        payload = readPayload(in, legacy);
+                } catch (IOException e) {
+                    // the checksum matched, so an incompatible version wrote it; skip the record
+                    unwritable(e);
+                    collected++;
+                    continue;
+                }
+                if (removal) {
+                    if (!entries.isEmpty())
+                        transport.write(entries);
+                    entries.clear();
+                    done += collected;
+                    collected = 0;
+                    transport.publishRemoval(key);
+                    done++;
+                } else {
+                    entries.put(key, payload);
+                    collected++;
+                }
+            }
+            if (!entries.isEmpty())
+                transport.write(entries);
+            done += collected;
+        } finally {
+            outbox.acknowledge(batch.getFirstSequence() + done);
+            synchronized (this) {
+                replayed += done;
+            }
+        }
+        return true;
+    }
+
+    static byte[] encodeEntry(String path, Map<String, String> payload) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(ENTRY);
+        writeString(out, path);
+        out.writeShort(payload.size());
+        for (Map.Entry<String, String> entry : payload.entrySet()) {
+            writeString(out, entry.getKey());
+            out.writeBoolean(entry.getValue() != null);
+            if (entry.getValue() != null)
+                writeString(out, entry.getValue());
+        }
+        return bytes.toByteArray();
+    }
+
+    static byte[] encodeRemoval(String id) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(32);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(REMOVAL);
+        writeString(out, id == null ? "" : id);
+        return bytes.toByteArray();
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(utf8.length);
+        out.write(utf8);
+    }
+
+    private static String readString(DataInputStream in, boolean legacy) throws IOException {
+        if (legacy)
+            return in.readUTF();
+        int length = in.readInt();
+        if (length < 0 || length > in.available())
+            throw new IOException("bad string length " + length);
+        byte[] utf8 = new byte[length];
+        in.readFully(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    private static Map<String, String> readPayload(DataInputStream in, boolean legacy) throws IOException {
+        int size = in.readUnsignedShort();
+        Map<String, String> payload = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            String key = readString(in, legacy);
+            payload.put(key, in.readBoolean() ? readString(in, legacy) : null);
+        }
+        return payload;
+    }
+
+}
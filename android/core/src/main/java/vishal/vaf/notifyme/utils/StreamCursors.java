@@ -0,0 +1,108 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Vishal Dubey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ **/
+
+package vishal.vaf.notifyme.utils;
+
+import java.io.PrintWriter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read positions of the desktop devices in the shared notification stream. Every device reads
+ * the stream from its own cursor, the last {@link StreamKeys key} it has shown; entries every
+ * device has passed can be deleted. Entries older than the retention are deleted regardless, so
+ * a device that stays offline does not keep the stream growing.
+ */
+
+public class StreamCursors {
+
+    public static final long DEFAULT_RETENTION_HOURS = 72;
+    public static final long DEFAULT_TRIM_INTERVAL_MINUTES = 10;
+
+    private final long retentionMillis;
+    private final long trimIntervalMillis;
+
+    // A device that has not read anything yet has an empty cursor
+    private final Map<String, String> cursors = new HashMap<>();
+
+    private String trimmedTo = "";
+    private long lastTrimAt;
+    private long trims;
+
+    public StreamCursors() {
+        this(DEFAULT_RETENTION_HOURS, TimeUnit.HOURS, DEFAULT_TRIM_INTERVAL_MINUTES, TimeUnit.MINUTES);
+    }
+
+    public StreamCursors(long retention, TimeUnit retentionUnit, long trimInterval, TimeUnit trimIntervalUnit) {
+        this.retentionMillis = retentionUnit.toMillis(retention);
+        this.trimIntervalMillis = trimIntervalUnit.toMillis(trimInterval);
+        this.lastTrimAt = -trimIntervalMillis;
+    }
+
+    /**
+     * @return false if the device was not known before
+     */
+    public synchronized boolean update(String deviceId, String cursor) {
+        return cursors.put(deviceId, cursor == null ? "" : cursor) != null;
+    }
+
+    public synchronized void remove(String deviceId) {
+        cursors.remove(deviceId);
+    }
+
+    public synchronized int getDeviceCount() {
+        return cursors.size();
+    }
+
+    /**
+     * @return the key up to which (inclusive) the stream can be deleted, null if that would
+     * delete nothing new or the last trim was less than the trim interval ago
+     */
+    public synchronized String trimPoint(long nowMillis) {
+        if (nowMillis - lastTrimAt < trimIntervalMillis)
+            return null;
+        String point = StreamKeys.first(nowMillis - retentionMillis);
+        String slowest = null;
+        for (String cursor : cursors.values()) {
+            if (slowest == null || cursor.compareTo(slowest) < 0)
+                slowest = cursor;
+        }
+        if (slowest != null && slowest.compareTo(point) > 0)
+            point = slowest;
+        return point.compareTo(trimmedTo) > 0 ? point : null;
+    }
+
+    public synchronized void trimmed(String point, long nowMillis) {
+        if (point.compareTo(trimmedTo) > 0)
+            trimmedTo = point;
+        lastTrimAt = nowMillis;
+        trims++;
+    }
+
+    public synchronized void dump(PrintWriter writer) {
+        writer.println("Stream cursors: " + cursors + " trimmedTo=" + trimmedTo + " trims=" + trims);
+    }
+
+}
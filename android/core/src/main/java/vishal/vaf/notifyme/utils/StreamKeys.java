@@ -0,0 +1,69 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Vishal Dubey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ **/
+
+package vishal.vaf.notifyme.utils;
+
+import java.util.Locale;
+
+/**
+ * Keys of the notification stream ({@code app/<key>}): the wall clock millis followed by a
+ * sequence number, zero padded so string order is time order. Devices remember how far they
+ * read by the last key they saw.
+ */
+
+public final class StreamKeys {
+
+    private static long lastMillis;
+    private static int sequence;
+
+    private StreamKeys() {
+
+    }
+
+    /**
+     * @return a key that sorts after every key handed out before, in the same process
+     */
+    public static synchronized String next() {
+        long now = System.currentTimeMillis();
+        if (now > lastMillis) {
+            lastMillis = now;
+            sequence = 0;
+        } else {
+            sequence++;
+        }
+        return format(lastMillis, sequence);
+    }
+
+    /**
+     * @return the smallest key that can be handed out at {@code millis}
+     */
+    public static String first(long millis) {
+        return format(millis, 0);
+    }
+
+    private static String format(long millis, int sequence) {
+        return String.format(Locale.ROOT, "%013d%04d", millis, sequence);
+    }
+
+}
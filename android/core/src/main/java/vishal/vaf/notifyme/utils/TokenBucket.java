@@ -0,0 +1,75 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Vishal Dubey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ **/
+
+package vishal.vaf.notifyme.utils;
+
+/**
+ * Classic token bucket: holds up to {@code capacity} tokens and refills at a fixed rate.
+ * Tokens can be reserved ahead of time, the bucket then goes into debt and the caller is told
+ * how long to wait before using its token, which keeps delayed requests in arrival order.
+ * <p>
+ * Not thread safe, callers synchronize. Times are {@link System#nanoTime()} readings.
+ */
+
+public class TokenBucket {
+
+    private final double capacity;
+    private final double tokensPerNano;
+
+    private double tokens;
+    private long updatedAt;
+
+    public TokenBucket(int capacity, double tokensPerMinute, long now) {
+        if (capacity <= 0 || tokensPerMinute <= 0)
+            throw new IllegalArgumentException("capacity and rate must be positive");
+        this.capacity = capacity;
+        this.tokensPerNano = tokensPerMinute / 60e9;
+        this.tokens = capacity;
+        this.updatedAt = now;
+    }
+
+    /**
+     * @return nanoseconds until a token reserved now may be used, 0 if one is available
+     */
+    public long waitTime(long now) {
+        refill(now);
+        return tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) / tokensPerNano);
+    }
+
+    /**
+     * Takes a token, going into debt if none is available yet.
+     */
+    public void reserve(long now) {
+        refill(now);
+        tokens -= 1;
+    }
+
+    private void refill(long now) {
+        if (now - updatedAt > 0) {
+            tokens = Math.min(capacity, tokens + (now - updatedAt) * tokensPerNano);
+            updatedAt = now;
+        }
+    }
+
+}
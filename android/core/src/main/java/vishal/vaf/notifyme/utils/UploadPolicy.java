@@ -0,0 +1,230 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Vishal Dubey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ **/
+
+package vishal.vaf.notifyme.utils;
+
+import java.io.PrintWriter;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides when queued uploads go out. Conversations the user marked as priority are sent right
+ * away and take everything queued with them; so is anything queued while the radio is still up
+ * from the last write. The rest waits until {@code maxBatch} records are queued or the oldest
+ * has waited the delay for the current network: short on unmetered networks, longer on metered
+ * ones. Without a network or while the device dozes nothing is sent on a timer, the system's
+ * flush job runs once it is allowed to.
+ * <p>
+ * Counts radio wake-ups (writes more than the radio tail apart) and, for comparison, the
+ * wake-ups sending every record immediately would have cost.
+ */
+
+public class UploadPolicy {
+
+    public enum Network {
+        NONE, METERED, UNMETERED
+    }
+
+    /**
+     * Runs a flush once the system allows network access again, e.g. through JobScheduler.
+     */
+    public interface FlushJob {
+
+        void schedule();
+
+    }
+
+    /**
+     * Returned instead of -1 when the flush job has to be scheduled. The caller does so through
+     * {@link #scheduleFlushJob()} once it holds no locks, scheduling may be a call into the system.
+     */
+    public static final long SCHEDULE_FLUSH_JOB = -2;
+
+    public static final long DEFAULT_UNMETERED_DELAY_MS = 30 * 1000;
+    public static final long DEFAULT_METERED_DELAY_MS = 5 * 60 * 1000;
+    public static final int DEFAULT_MAX_BATCH = 50;
+    // Cellular radios stay in their high power state this long after a transfer
+    public static final long RADIO_TAIL_MS = 10 * 1000;
+
+    private final long unmeteredDelayMillis;
+    private final long meteredDelayMillis;
+    private final int maxBatch;
+    private final ConversationIdNormalizer idNormalizer = new ConversationIdNormalizer();
+
+    private volatile Set<String> priorityConversations = Collections.emptySet();
+    private volatile FlushJob flushJob;
+
+    private Network network = Network.UNMETERED;
+    private boolean idle;
+
+    private int deferred;
+    private long oldestDeferredAt;
+    private boolean flushJobScheduled;
+    private long lastWriteAt = Long.MIN_VALUE / 2;
+    private long lastQueuedAt = Long.MIN_VALUE / 2;
+
+    private final long startedAt = System.currentTimeMillis();
+    private long queued;
+    private long sentImmediately;
+    private long radioWakeUps;
+    private long immediateWakeUps;
+
+    public UploadPolicy() {
+        this(DEFAULT_UNMETERED_DELAY_MS, DEFAULT_METERED_DELAY_MS, DEFAULT_MAX_BATCH);
+    }
+
+    public UploadPolicy(long unmeteredDelayMillis, long meteredDelayMillis, int maxBatch) {
+        this.unmeteredDelayMillis = unmeteredDelayMillis;
+        this.meteredDelayMillis = meteredDelayMillis;
+        this.maxBatch = maxBatch;
+    }
+
+    public void setFlushJob(FlushJob flushJob) {
+        this.flushJob = flushJob;
+    }
+
+    /**
+     * @param titles conversation titles as they appear in notifications
+     */
+    public void setPriorityConversations(Collection<String> titles) {
+        Set<String> ids = new HashSet<>();
+        for (String title : titles) {
+            ids.add(idNormalizer.normalize(title));
+        }
+        priorityConversations = Collections.unmodifiableSet(ids);
+    }
+
+    public boolean isPriority(String conversationId) {
+        return conversationId != null && priorityConversations.contains(conversationId);
+    }
+
+    public synchronized void setNetwork(Network network) {
+        this.network = network;
+    }
+
+    /**
+     * @param idle whether the device is in Doze
+     */
+    public synchronized void setIdle(boolean idle) {
+        this.idle = idle;
+    }
+
+    /**
+     * Called for every record put in the outbox.
+     *
+     * @param conversationId id of the conversation the record belongs to, null if none
+     * @return milliseconds until the outbox should be sent, 0 for now, -1 to leave it to the
+     * flush job, {@link #SCHEDULE_FLUSH_JOB} if that job still has to be scheduled
+     */
+    public synchronized long onQueued(String conversationId, long nowMillis) {
+        queued++;
+        if (nowMillis - lastQueuedAt > RADIO_TAIL_MS)
+            immediateWakeUps++;
+        lastQueuedAt = nowMillis;
+
+        if (isPriority(conversationId) || nowMillis - lastWriteAt < RADIO_TAIL_MS) {
+            sentImmediately++;
+            return 0;
+        }
+        if (deferred++ == 0)
+            oldestDeferredAt = nowMillis;
+        return pendingDelay(nowMillis);
+    }
+
+    /**
+     * @return milliseconds until the deferred records are due under the current conditions,
+     * -1 if there are none or they are left to the flush job, {@link #SCHEDULE_FLUSH_JOB} if
+     * that job still has to be scheduled
+     */
+    public synchronized long pendingDelay(long nowMillis) {
+        if (deferred == 0)
+            return -1;
+        if (network == Network.NONE || idle) {
+            if (flushJob != null && !flushJobScheduled) {
+                flushJobScheduled = true;
+                return SCHEDULE_FLUSH_JOB;
+            }
+            return -1;
+        }
+        if (deferred >= maxBatch)
+            return 0;
+        long delay = network == Network.METERED ? meteredDelayMillis : unmeteredDelayMillis;
+        return Math.max(0, oldestDeferredAt + delay - nowMillis);
+    }
+
+    /**
+     * Schedules the flush job after {@link #SCHEDULE_FLUSH_JOB} was returned. Not synchronized,
+     * call it without holding locks.
+     */
+    public void scheduleFlushJob() {
+        FlushJob job = flushJob;
+        if (job != null)
+            job.schedule();
+    }
+
+    /**
+     * Called when the flush job runs, whether or not it could send anything. Records still
+     * deferred afterwards get a new job the next time they are looked at.
+     */
+    public synchronized void onFlushJobRun() {
+        flushJobScheduled = false;
+    }
+
+    public synchronized boolean isFlushJobScheduled() {
+        return flushJobScheduled;
+    }
+
+    /**
+     * Called when the outbox is sent; everything queued so far goes with it.
+     */
+    public synchronized void onSent(long nowMillis) {
+        if (nowMillis - lastWriteAt > RADIO_TAIL_MS)
+            radioWakeUps++;
+        lastWriteAt = nowMillis;
+        deferred = 0;
+        flushJobScheduled = false;
+    }
+
+    public synchronized long getRadioWakeUps() {
+        return radioWakeUps;
+    }
+
+    public synchronized long getImmediateWakeUps() {
+        return immediateWakeUps;
+    }
+
+    public synchronized void dump(PrintWriter writer) {
+        double hours = Math.max(1, System.currentTimeMillis() - startedAt) / (double) TimeUnit.HOURS.toMillis(1);
+        writer.println("Upload policy: network=" + network + " idle=" + idle + " deferred=" + deferred
+                + " queued=" + queued + " sentImmediately=" + sentImmediately
+                + " priority=" + priorityConversations.size()
+                + String.format(Locale.ROOT, " radioWakeUps=%d (%.1f/h) immediateWouldBe=%d (%.1f/h)",
+                radioWakeUps, radioWakeUps / hours, immediateWakeUps, immediateWakeUps / hours));
+    }
+
+}
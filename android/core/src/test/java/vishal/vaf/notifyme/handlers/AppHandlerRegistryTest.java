@@ -0,0 +1,83 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Vishal Dubey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ **/
+
+package vishal.vaf.notifyme.handlers;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class AppHandlerRegistryTest {
+
+    @Test
+    public void looksUpHandlersByPackage() throws Exception {
+        AppHandlerRegistry registry = AppHandlerRegistry.createDefault();
+        assertTrue(registry.get(WhatsAppHandler.PACKAGE_NAME) instanceof WhatsAppHandler);
+        assertTrue(registry.get(MessengerHandler.PACKAGE_NAME) instanceof MessengerHandler);
+        assertTrue(registry.isSupported(WhatsAppHandler.PACKAGE_NAME));
+        assertFalse(registry.isSupported("com.example.other"));
+        assertNull(registry.get(null));
+        assertFalse(registry.isSupported(null));
+    }
+
+    @Test
+    public void keepsRegistrationOrder() throws Exception {
+        AppHandlerRegistry registry = AppHandlerRegistry.createDefault();
+        List<String> packages = new ArrayList<>();
+        for (AppHandler handler : registry.getAll()) {
+            packages.add(handler.getPackageName());
+        }
+        assertEquals("[" + WhatsAppHandler.PACKAGE_NAME + ", " + MessengerHandler.PACKAGE_NAME + "]", packages.toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsDuplicatePackages() throws Exception {
+        new AppHandlerRegistry(new WhatsAppHandler(), new WhatsAppHandler());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void handlersCannotBeChangedAfterConstruction() throws Exception {
+        AppHandlerRegistry.createDefault().getAll().clear();
+    }
+
+    @Test
+    public void whatsAppReadsSenderFromGroupTitles() throws Exception {
+        AppHandler handler = new WhatsAppHandler();
+        assertEquals("Mom", handler.getSender("Family Group: Mom", "hi"));
+        assertEquals("Alice", handler.getSender("Work: Team: Alice", "hi"));
+        assertEquals("Jane Doe", handler.getSender("Jane Doe", "hi"));
+        assertNull(handler.getSender(null, "hi"));
+        assertEquals("hi", handler.getText("Jane Doe", "hi"));
+    }
+
+    @Test
+    public void messengerUsesTitleAsSender() throws Exception {
+        AppHandler handler = new MessengerHandler();
+        assertEquals("Family Group: Mom", handler.getSender("Family Group: Mom", "hi"));
+        assertTrue(handler.isReplyAction("Reply"));
+    }
+}
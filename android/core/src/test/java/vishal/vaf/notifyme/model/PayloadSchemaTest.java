@@ -0,0 +1,132 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Vishal Dubey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ **/
+
+package vishal.vaf.notifyme.model;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import vishal.vaf.notifyme.handlers.WhatsAppHandler;
+
+import static org.junit.Assert.*;
+
+public class PayloadSchemaTest {
+
+    @Test
+    public void readsVersion() throws Exception {
+        Map<String, Object> payload = new HashMap<>();
+        assertEquals(1, PayloadSchema.versionOf(payload));
+        payload.put(PayloadSchema.VERSION, 2L);
+        assertEquals(2, PayloadSchema.versionOf(payload));
+        payload.put(PayloadSchema.VERSION, "garbage");
+        assertEquals(1, PayloadSchema.versionOf(payload));
+    }
+
+    @Test
+    public void notificationRoundTripsWithOneLetterKeys() throws Exception {
+        NotificationPayload payload = new NotificationPayload("c1", WhatsAppHandler.PACKAGE_NAME, "Jane", "hi");
+        Map<String, String> map = payload.toMap();
+        assertEquals("2", map.get(PayloadSchema.VERSION));
+        assertEquals("w", map.get(PayloadSchema.APP));
+        assertFalse(map.containsKey(PayloadSchema.PACKAGE));
+
+        NotificationPayload read = NotificationPayload.fromMap(map);
+        assertEquals("c1", read.getId());
+        assertEquals(AppType.WHATSAPP, read.getApp());
+        assertEquals(WhatsAppHandler.PACKAGE_NAME, read.getPackageName());
+        assertEquals("Jane", read.getName());
+        assertEquals("hi", read.getMessage());
+    }
+
+    @Test
+    public void unknownAppKeepsItsPackage() throws Exception {
+        Map<String, String> map = new NotificationPayload("c1", "org.telegram", "Jane", "hi").toMap();
+        assertEquals("o", map.get(PayloadSchema.APP));
+        NotificationPayload read = NotificationPayload.fromMap(map);
+        assertEquals(AppType.OTHER, read.getApp());
+        assertEquals("org.telegram", read.getPackageName());
+    }
+
+    @Test
+    public void readsVersionOneNotification() throws Exception {
+        Map<String, Object> map = new HashMap<>();
+        map.put("id", "c1");
+        map.put("app_name", WhatsAppHandler.PACKAGE_NAME);
+        map.put("name", "Jane");
+        map.put("message", "hi");
+        NotificationPayload read = NotificationPayload.fromMap(map);
+        assertEquals("c1", read.getId());
+        assertEquals(AppType.WHATSAPP, read.getApp());
+        assertEquals("Jane", read.getName());
+        assertEquals("hi", read.getMessage());
+    }
+
+    @Test
+    public void replyRoundTripsAndIgnoresUnknownKeys() throws Exception {
+        Map<String, Object> map = new HashMap<String, Object>(
+                new DesktopReply(null, "c1", WhatsAppHandler.PACKAGE_NAME, "Jane", "on my way").toMap());
+        map.put("x", "added by a later version");
+        DesktopReply read = DesktopReply.fromMap("-Kq1", map);
+        assertEquals("-Kq1", read.getKey());
+        assertEquals("c1", read.getId());
+        assertEquals(WhatsAppHandler.PACKAGE_NAME, read.getAppName());
+        assertEquals("Jane", read.getName());
+        assertEquals("on my way", read.getMessage());
+    }
+
+    @Test
+    public void readsVersionOneReply() throws Exception {
+        Map<String, Object> map = new HashMap<>();
+        map.put("id", "c1");
+        map.put("app_name", "org.telegram");
+        map.put("name", "Jane");
+        map.put("message", "ok");
+        DesktopReply read = DesktopReply.fromMap("-Kq1", map);
+        assertEquals("c1", read.getId());
+        assertEquals("org.telegram", read.getAppName());
+        assertEquals("ok", read.getMessage());
+    }
+
+    @Test
+    public void conversationMessageRoundTrips() throws Exception {
+        ConversationMessage read = ConversationMessage.fromMap(new ConversationMessage("Jane", "hi", 1500000000000L).toMap());
+        assertEquals("Jane", read.getSender());
+        assertEquals("hi", read.getText());
+        assertEquals(1500000000000L, read.getTimestamp());
+
+        Map<String, String> own = new ConversationMessage(null, "hey", 5).toMap();
+        assertFalse(own.containsKey(PayloadSchema.SENDER));
+        assertNull(ConversationMessage.fromMap(own).getSender());
+    }
+
+    @Test
+    public void conversationMessageWithBadTimeReadsAsZero() throws Exception {
+        Map<String, Object> map = new HashMap<>();
+        map.put(PayloadSchema.MESSAGE, "hi");
+        map.put(PayloadSchema.TIME, "soon");
+        assertEquals(0, ConversationMessage.fromMap(map).getTimestamp());
+    }
+}
@@ -0,0 +1,207 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Vishal Dubey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ **/
+
+package vishal.vaf.notifyme.pipeline;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class PipelineTest {
+
+    private final BlockingQueue<Object> output = new LinkedBlockingQueue<>();
+
+    private final Stage<Object, Object> collect = new Stage<Object, Object>() {
+        @Override
+        public Object process(Object input) {
+            output.add(input);
+            return input;
+        }
+    };
+
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    // Holds the first item until released, so the queue behind it fills up. Collects itself,
+    // a second stage with the same capacity could overflow on the released burst
+    private final Stage<Integer, Integer> gate = new Stage<Integer, Integer>() {
+        @Override
+        public Integer process(Integer input) throws Exception {
+            started.countDown();
+            release.await();
+            output.add(input);
+            return input;
+        }
+    };
+
+    private Pipeline<Integer> pipeline;
+
+    @After
+    public void tearDown() throws Exception {
+        release.countDown();
+        if (pipeline != null)
+            pipeline.shutdown();
+    }
+
+    private List<Object> take(int count) throws InterruptedException {
+        List<Object> items = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Object item = output.poll(2, TimeUnit.SECONDS);
+            assertNotNull("only " + items + " arrived", item);
+            items.add(item);
+        }
+        return items;
+    }
+
+    @Test
+    public void runsItemsThroughStagesInOrder() throws Exception {
+        pipeline = new Pipeline<>("test", 8, OverflowPolicy.DROP_NEWEST);
+        pipeline.addStage("square", new Stage<Integer, Integer>() {
+            @Override
+            public Integer process(Integer input) {
+                return input * input;
+            }
+        }).addStage("format", new Stage<Integer, String>() {
+            @Override
+            public String process(Integer input) {
+                return "#" + input;
+            }
+        }).addStage("collect", collect);
+        pipeline.start();
+        for (int i = 1; i <= 4; i++) {
+            assertTrue(pipeline.submit(i));
+        }
+        assertEquals(Arrays.<Object>asList("#1", "#4", "#9", "#16"), take(4));
+        // counted once the stage has returned
+        long deadline = System.currentTimeMillis() + 1000;
+        while (pipeline.getStats().get(2).getProcessed() < 4 && System.currentTimeMillis() < deadline)
+            Thread.sleep(5);
+        assertEquals(4, pipeline.getStats().get(2).getProcessed());
+    }
+
+    @Test
+    public void stageReturningNullFiltersTheItem() throws Exception {
+        pipeline = new Pipeline<>("test", 8, OverflowPolicy.DROP_NEWEST);
+        pipeline.addStage("even", new Stage<Integer, Integer>() {
+            @Override
+            public Integer process(Integer input) {
+                return input % 2 == 0 ? input : null;
+            }
+        }).addStage("collect", collect);
+        pipeline.start();
+        for (int i = 1; i <= 6; i++) {
+            pipeline.submit(i);
+        }
+        assertEquals(Arrays.<Object>asList(2, 4, 6), take(3));
+        Pipeline.StageStats stats = pipeline.getStats().get(0);
+        assertEquals(6, stats.getProcessed());
+        assertEquals(3, stats.getFiltered());
+        assertNull(output.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void dropOldestEvictsTheHeadOfAFullQueue() throws Exception {
+        pipeline = new Pipeline<>("test", 2, OverflowPolicy.DROP_OLDEST);
+        pipeline.addStage("gate", gate);
+        pipeline.start();
+        pipeline.submit(1);
+        assertTrue(started.await(2, TimeUnit.SECONDS));
+        assertTrue(pipeline.submit(2));
+        assertTrue(pipeline.submit(3));
+        assertTrue(pipeline.submit(4));
+        assertEquals(1, pipeline.getStats().get(0).getDropped());
+        assertEquals(2, pipeline.getStats().get(0).getMaxQueueDepth());
+        release.countDown();
+        assertEquals(Arrays.<Object>asList(1, 3, 4), take(3));
+    }
+
+    @Test
+    public void dropNewestRejectsTheIncomingItem() throws Exception {
+        pipeline = new Pipeline<>("test", 2, OverflowPolicy.DROP_NEWEST);
+        pipeline.addStage("gate", gate);
+        pipeline.start();
+        pipeline.submit(1);
+        assertTrue(started.await(2, TimeUnit.SECONDS));
+        assertTrue(pipeline.submit(2));
+        assertTrue(pipeline.submit(3));
+        assertFalse(pipeline.submit(4));
+        assertEquals(1, pipeline.getStats().get(0).getDropped());
+        release.countDown();
+        assertEquals(Arrays.<Object>asList(1, 2, 3), take(3));
+    }
+
+    @Test
+    public void failingItemIsCountedAndTheStageGoesOn() throws Exception {
+        pipeline = new Pipeline<>("test", 8, OverflowPolicy.DROP_NEWEST);
+        pipeline.addStage("parse", new Stage<Integer, Integer>() {
+            @Override
+            public Integer process(Integer input) throws Exception {
+                if (input == 1)
+                    throw new Exception("expected by the test");
+                return input;
+            }
+        }).addStage("collect", collect);
+        pipeline.start();
+        pipeline.submit(1);
+        pipeline.submit(2);
+        assertEquals(Arrays.<Object>asList(2), take(1));
+        assertEquals(1, pipeline.getStats().get(0).getFailed());
+    }
+
+    @Test
+    public void stopsAcceptingItemsOnShutdown() throws Exception {
+        pipeline = new Pipeline<>("test", 8, OverflowPolicy.DROP_NEWEST);
+        pipeline.addStage("collect", collect);
+        assertFalse(pipeline.submit(1));
+        pipeline.start();
+        assertTrue(pipeline.isRunning());
+        assertFalse(pipeline.submit(null));
+        pipeline.shutdown();
+        assertFalse(pipeline.isRunning());
+        assertFalse(pipeline.submit(2));
+        assertNull(output.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void rejectsStagesOnceStarted() throws Exception {
+        pipeline = new Pipeline<>("test", 8, OverflowPolicy.DROP_NEWEST);
+        pipeline.addStage("collect", collect);
+        pipeline.start();
+        pipeline.addStage("late", collect);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void rejectsStartWithoutStages() throws Exception {
+        new Pipeline<Integer>("test", 8, OverflowPolicy.DROP_NEWEST).start();
+    }
+}
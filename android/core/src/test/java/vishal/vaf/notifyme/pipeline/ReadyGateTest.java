@@ -0,0 +1,125 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Vishal Dubey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ **/
+
+package vishal.vaf.notifyme.pipeline;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ReadyGateTest {
+
+    private final List<Integer> delivered = new ArrayList<>();
+
+    private final Stage<Integer, Void> recorder = new Stage<Integer, Void>() {
+        @Override
+        public Void process(Integer input) {
+            delivered.add(input);
+            return null;
+        }
+    };
+
+    @Test
+    public void passesItemsThroughWhileReady() throws Exception {
+        ReadyGate<Integer> gate = new ReadyGate<>("test", 4, recorder);
+        assertTrue(gate.isReady());
+        gate.submit(1);
+        assertEquals(Arrays.asList(1), delivered);
+        assertEquals(-1, gate.release());
+    }
+
+    @Test
+    public void buffersWhileHeldAndReleasesInOrder() throws Exception {
+        ReadyGate<Integer> gate = new ReadyGate<>("test", 4, recorder);
+        gate.hold();
+        assertFalse(gate.isReady());
+        gate.submit(1);
+        gate.submit(2);
+        assertTrue(delivered.isEmpty());
+        assertTrue(gate.release() >= 0);
+        assertTrue(gate.isReady());
+        gate.submit(3);
+        assertEquals(Arrays.asList(1, 2, 3), delivered);
+    }
+
+    @Test
+    public void dropsOldestBeyondCapacity() throws Exception {
+        ReadyGate<Integer> gate = new ReadyGate<>("test", 2, recorder);
+        gate.hold();
+        gate.submit(1);
+        gate.submit(2);
+        gate.submit(3);
+        gate.release();
+        assertEquals(Arrays.asList(2, 3), delivered);
+    }
+
+    @Test
+    public void itemsSubmittedDuringReleaseKeepTheirPlace() throws Exception {
+        final List<ReadyGate<Integer>> self = new ArrayList<>();
+        ReadyGate<Integer> gate = new ReadyGate<>("test", 4, new Stage<Integer, Void>() {
+            @Override
+            public Void process(Integer input) {
+                delivered.add(input);
+                // e.g. a notification posted while the backlog is handed over
+                if (input == 1)
+                    self.get(0).submit(3);
+                return null;
+            }
+        });
+        self.add(gate);
+        gate.hold();
+        gate.submit(1);
+        gate.submit(2);
+        gate.release();
+        assertEquals(Arrays.asList(1, 2, 3), delivered);
+        assertTrue(gate.isReady());
+    }
+
+    @Test
+    public void failingItemDoesNotStopRelease() throws Exception {
+        ReadyGate<Integer> gate = new ReadyGate<>("test", 4, new Stage<Integer, Void>() {
+            @Override
+            public Void process(Integer input) throws Exception {
+                if (input == 1)
+                    throw new Exception("expected by the test");
+                delivered.add(input);
+                return null;
+            }
+        });
+        gate.hold();
+        gate.submit(1);
+        gate.submit(2);
+        gate.release();
+        assertEquals(Arrays.asList(2), delivered);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEmptyCapacity() throws Exception {
+        new ReadyGate<>("test", 0, recorder);
+    }
+}
@@ -0,0 +1,137 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Vishal Dubey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ **/
+
+package vishal.vaf.notifyme.processing;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import vishal.vaf.notifyme.handlers.AppHandlerRegistry;
+import vishal.vaf.notifyme.handlers.WhatsAppHandler;
+import vishal.vaf.notifyme.model.ParsedNotification;
+import vishal.vaf.notifyme.model.ReplyAction;
+
+import static org.junit.Assert.*;
+
+public class AssistResponderTest {
+
+    private final List<String> sent = new ArrayList<>();
+    private final List<ParsedNotification> conversations = new ArrayList<>();
+    private boolean sendSucceeds = true;
+
+    private final ReplyAction recorder = new ReplyAction() {
+        @Override
+        public boolean send(String message) {
+            if (sendSucceeds)
+                sent.add(message);
+            return sendSucceeds;
+        }
+    };
+
+    private final AssistResponder.Greetings greetings = new AssistResponder.Greetings() {
+        @Override
+        public String getGreeting(String packageName) {
+            return "I'm away";
+        }
+    };
+
+    private final AssistResponder.ConversationHandler handler = new AssistResponder.ConversationHandler() {
+        @Override
+        public void onConversation(ParsedNotification notification) {
+            conversations.add(notification);
+        }
+    };
+
+    private AssistResponder newResponder(int maxSenders, long cooldownMillis) {
+        return new AssistResponder(new AppHandlerRegistry(new WhatsAppHandler()), greetings, handler,
+                null, maxSenders, cooldownMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private ParsedNotification message(String packageName, String title, String text) {
+        return new ParsedNotification(packageName, "key", title, null, text, false, recorder);
+    }
+
+    @Test
+    public void greetsOnceThenHandsOverToTheConversation() throws Exception {
+        AssistResponder responder = newResponder(16, 60000);
+        responder.onPosted(message(WhatsAppHandler.PACKAGE_NAME, "Jane Doe", "hi"));
+        responder.onPosted(message(WhatsAppHandler.PACKAGE_NAME, "Jane Doe", "are you there?"));
+        assertEquals(1, sent.size());
+        assertEquals("Hey Jane, I'm away", sent.get(0));
+        assertEquals(1, conversations.size());
+        assertEquals("are you there?", conversations.get(0).getText());
+    }
+
+    @Test
+    public void failedGreetingIsRetriedOnTheNextMessage() throws Exception {
+        AssistResponder responder = newResponder(16, 60000);
+        sendSucceeds = false;
+        responder.onPosted(message(WhatsAppHandler.PACKAGE_NAME, "Jane", "hi"));
+        sendSucceeds = true;
+        responder.onPosted(message(WhatsAppHandler.PACKAGE_NAME, "Jane", "hello?"));
+        assertEquals(1, sent.size());
+        assertTrue(conversations.isEmpty());
+    }
+
+    @Test
+    public void ignoresUnsupportedAppsAndNotificationsWithoutReply() throws Exception {
+        AssistResponder responder = newResponder(16, 60000);
+        responder.onPosted(message("com.example.other", "Jane", "hi"));
+        responder.onPosted(new ParsedNotification(WhatsAppHandler.PACKAGE_NAME, "key", "Jane", null, "hi", false, null));
+        assertTrue(sent.isEmpty());
+        assertTrue(conversations.isEmpty());
+    }
+
+    @Test
+    public void greetsAgainAfterCooldown() throws Exception {
+        AssistResponder responder = newResponder(16, 50);
+        responder.onPosted(message(WhatsAppHandler.PACKAGE_NAME, "Jane", "hi"));
+        Thread.sleep(100);
+        responder.onPosted(message(WhatsAppHandler.PACKAGE_NAME, "Jane", "hi again"));
+        assertEquals(2, sent.size());
+        assertTrue(conversations.isEmpty());
+    }
+
+    @Test
+    public void forgetsLeastRecentSenderBeyondCap() throws Exception {
+        AssistResponder responder = newResponder(1, 60000);
+        responder.onPosted(message(WhatsAppHandler.PACKAGE_NAME, "Jane", "hi"));
+        responder.onPosted(message(WhatsAppHandler.PACKAGE_NAME, "John", "hi"));
+        responder.onPosted(message(WhatsAppHandler.PACKAGE_NAME, "Jane", "hi"));
+        assertEquals(3, sent.size());
+    }
+
+    @Test
+    public void clearForgetsGreetedSenders() throws Exception {
+        AssistResponder responder = newResponder(16, 60000);
+        responder.onPosted(message(WhatsAppHandler.PACKAGE_NAME, "Jane", "hi"));
+        responder.clear(WhatsAppHandler.PACKAGE_NAME);
+        responder.onPosted(message(WhatsAppHandler.PACKAGE_NAME, "Jane", "hi"));
+        assertEquals(2, sent.size());
+        assertTrue(conversations.isEmpty());
+    }
+}
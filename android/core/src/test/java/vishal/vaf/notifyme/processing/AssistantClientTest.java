@@ -0,0 +1,165 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Vishal Dubey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ **/
+
+package vishal.vaf.notifyme.processing;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import vishal.vaf.notifyme.model.ReplyAction;
+
+import static org.junit.Assert.*;
+
+public class AssistantClientTest {
+
+    private final List<String> sent = new CopyOnWriteArrayList<>();
+    private final CountDownLatch replied = new CountDownLatch(1);
+    private final ReplyAction recorder = new ReplyAction() {
+        @Override
+        public boolean send(String message) {
+            sent.add(message);
+            replied.countDown();
+            return true;
+        }
+    };
+
+    private final AtomicInteger calls = new AtomicInteger();
+    private final CountDownLatch blocked = new CountDownLatch(1);
+    private final CountDownLatch interrupted = new CountDownLatch(1);
+
+    // Waits until interrupted, as a stuck network call would
+    private final AssistantClient.Backend stuck = new AssistantClient.Backend() {
+        @Override
+        public String query(String text) throws Exception {
+            calls.incrementAndGet();
+            blocked.countDown();
+            try {
+                Thread.sleep(10000);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+                throw e;
+            }
+            return "too late";
+        }
+    };
+
+    private AssistantClient client;
+
+    @After
+    public void tearDown() throws Exception {
+        if (client != null)
+            client.shutdown();
+    }
+
+    @Test
+    public void repliesAndAnswersRepeatsFromCache() throws Exception {
+        client = new AssistantClient(new AssistantClient.Backend() {
+            @Override
+            public String query(String text) {
+                calls.incrementAndGet();
+                return "Hello!";
+            }
+        }, new AssistantResponseCache(), 1, 4, 5, TimeUnit.SECONDS);
+        assertTrue(client.submit("hi", recorder));
+        assertTrue(replied.await(1, TimeUnit.SECONDS));
+        awaitIdle();
+        assertTrue(client.submit("Hi ", recorder));
+        assertEquals(2, sent.size());
+        assertEquals("Hello!", sent.get(1));
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void errorAnswerIsNeitherSentNorCached() throws Exception {
+        client = new AssistantClient(new AssistantClient.Backend() {
+            @Override
+            public String query(String text) {
+                calls.incrementAndGet();
+                return null;
+            }
+        }, new AssistantResponseCache(), 1, 4, 5, TimeUnit.SECONDS);
+        client.submit("hi", recorder);
+        awaitCalls(1);
+        awaitIdle();
+        client.submit("hi", recorder);
+        awaitCalls(2);
+        awaitIdle();
+        assertTrue(sent.isEmpty());
+    }
+
+    @Test
+    public void timedOutRequestIsInterruptedAndNeverReplies() throws Exception {
+        client = new AssistantClient(stuck, new AssistantResponseCache(), 1, 4, 100, TimeUnit.MILLISECONDS);
+        assertTrue(client.submit("hi", recorder));
+        assertTrue(interrupted.await(2, TimeUnit.SECONDS));
+        awaitIdle();
+        assertTrue(sent.isEmpty());
+    }
+
+    @Test
+    public void cancelAllInterruptsRunningAndDropsQueued() throws Exception {
+        client = new AssistantClient(stuck, new AssistantResponseCache(), 1, 4, 10, TimeUnit.SECONDS);
+        client.submit("one", recorder);
+        assertTrue(blocked.await(1, TimeUnit.SECONDS));
+        client.submit("two", recorder);
+        assertEquals(1, client.getQueued());
+        client.cancelAll();
+        assertTrue(interrupted.await(1, TimeUnit.SECONDS));
+        assertEquals(0, client.getQueued());
+        awaitIdle();
+        Thread.sleep(100);
+        assertEquals(1, calls.get());
+        assertTrue(sent.isEmpty());
+    }
+
+    @Test
+    public void rejectsWhenQueueIsFull() throws Exception {
+        client = new AssistantClient(stuck, new AssistantResponseCache(), 1, 1, 10, TimeUnit.SECONDS);
+        assertTrue(client.submit("one", recorder));
+        assertTrue(blocked.await(1, TimeUnit.SECONDS));
+        assertTrue(client.submit("two", recorder));
+        assertFalse(client.submit("three", recorder));
+    }
+
+    private void awaitCalls(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 1000;
+        while (calls.get() < count && System.currentTimeMillis() < deadline)
+            Thread.sleep(5);
+        assertEquals(count, calls.get());
+    }
+
+    // The in-flight count drops once the worker is done with the request
+    private void awaitIdle() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 1000;
+        while (client.getInFlight() > 0 && System.currentTimeMillis() < deadline)
+            Thread.sleep(5);
+        assertEquals(0, client.getInFlight());
+    }
+}
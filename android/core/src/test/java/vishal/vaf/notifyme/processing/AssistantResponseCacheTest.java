@@ -0,0 +1,80 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Vishal Dubey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ **/
+
+package vishal.vaf.notifyme.processing;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class AssistantResponseCacheTest {
+
+    @Test
+    public void normalizesQueries() throws Exception {
+        assertEquals("thanks a lot", AssistantResponseCache.key("  Thanks \t A\nLOT "));
+        assertEquals("ok", AssistantResponseCache.key("ok"));
+        assertNull(AssistantResponseCache.key(null));
+        assertNull(AssistantResponseCache.key(" \n "));
+    }
+
+    @Test
+    public void answersRepeatedQueryFromCache() throws Exception {
+        AssistantResponseCache cache = new AssistantResponseCache();
+        assertNull(cache.get("thanks"));
+        cache.put("Thanks", "You're welcome");
+        assertEquals("You're welcome", cache.get("  thanks "));
+        assertEquals(0.5, cache.getHitRate(), 1e-9);
+    }
+
+    @Test
+    public void ignoresEmptyAnswersAndQueries() throws Exception {
+        AssistantResponseCache cache = new AssistantResponseCache();
+        cache.put("ok", "");
+        cache.put("ok", null);
+        cache.put("  ", "something");
+        assertNull(cache.get("ok"));
+        assertNull(cache.get("  "));
+    }
+
+    @Test
+    public void expiresAndEvictsAnswers() throws Exception {
+        AssistantResponseCache cache = new AssistantResponseCache(1, 50, TimeUnit.MILLISECONDS);
+        cache.put("ok", "Great");
+        cache.put("thanks", "Any time");
+        assertNull(cache.get("ok"));
+        assertEquals("Any time", cache.get("thanks"));
+        Thread.sleep(100);
+        assertNull(cache.get("thanks"));
+    }
+
+    @Test
+    public void clearDropsEverything() throws Exception {
+        AssistantResponseCache cache = new AssistantResponseCache();
+        cache.put("ok", "Great");
+        cache.clear();
+        assertNull(cache.get("ok"));
+    }
+}
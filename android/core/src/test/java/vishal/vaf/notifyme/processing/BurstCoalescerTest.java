@@ -0,0 +1,113 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Vishal Dubey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ **/
+
+package vishal.vaf.notifyme.processing;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import vishal.vaf.notifyme.model.ParsedNotification;
+
+import static org.junit.Assert.*;
+
+public class BurstCoalescerTest {
+
+    private final BlockingQueue<String> bursts = new LinkedBlockingQueue<>();
+    private final BlockingQueue<ParsedNotification> latest = new LinkedBlockingQueue<>();
+
+    private final BurstCoalescer.BurstListener recorder = new BurstCoalescer.BurstListener() {
+        @Override
+        public void onBurst(ParsedNotification notification, String text) {
+            latest.add(notification);
+            bursts.add(text);
+        }
+    };
+
+    private BurstCoalescer coalescer;
+
+    @After
+    public void tearDown() throws Exception {
+        if (coalescer != null)
+            coalescer.shutdown();
+    }
+
+    private static ParsedNotification message(String title, String text) {
+        return new ParsedNotification("com.whatsapp", "key-" + text, title, null, text, false, null);
+    }
+
+    @Test
+    public void mergesBurstInArrivalOrder() throws Exception {
+        coalescer = new BurstCoalescer(recorder, 100, 5000);
+        coalescer.submit(message("Jane", "hey"));
+        coalescer.submit(message("Jane", "are you"));
+        coalescer.submit(message("Jane", "there?"));
+        assertEquals("hey\nare you\nthere?", bursts.poll(1, TimeUnit.SECONDS));
+        assertEquals("key-there?", latest.poll().getKey());
+        assertNull(bursts.poll(200, TimeUnit.MILLISECONDS));
+        assertEquals(0, coalescer.getPending());
+    }
+
+    @Test
+    public void keepsConversationsApart() throws Exception {
+        coalescer = new BurstCoalescer(recorder, 50, 5000);
+        coalescer.submit(message("Jane", "hi"));
+        coalescer.submit(message("John", "yo"));
+        String first = bursts.poll(1, TimeUnit.SECONDS);
+        String second = bursts.poll(1, TimeUnit.SECONDS);
+        assertTrue(("hi".equals(first) && "yo".equals(second)) || ("yo".equals(first) && "hi".equals(second)));
+    }
+
+    @Test
+    public void flushesChattyConversationAtMaxDelay() throws Exception {
+        coalescer = new BurstCoalescer(recorder, 100, 300);
+        long start = System.nanoTime();
+        // every message lands well inside the window of the previous one
+        for (int i = 0; i < 20 && bursts.isEmpty(); i++) {
+            coalescer.submit(message("Jane", "m" + i));
+            Thread.sleep(40);
+        }
+        assertNotNull(bursts.poll(1, TimeUnit.SECONDS));
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue("took " + elapsedMillis + "ms", elapsedMillis < 700);
+    }
+
+    @Test
+    public void cancelAllDropsPendingBursts() throws Exception {
+        coalescer = new BurstCoalescer(recorder, 100, 5000);
+        coalescer.submit(message("Jane", "hi"));
+        assertEquals(1, coalescer.getPending());
+        coalescer.cancelAll();
+        assertEquals(0, coalescer.getPending());
+        assertNull(bursts.poll(300, TimeUnit.MILLISECONDS));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsMaxDelayShorterThanWindow() throws Exception {
+        new BurstCoalescer(recorder, 100, 50);
+    }
+}
@@ -0,0 +1,112 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Vishal Dubey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ **/
+
+package vishal.vaf.notifyme.processing;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import vishal.vaf.notifyme.model.ConversationMessage;
+
+import static org.junit.Assert.*;
+
+public class ConversationSyncTest {
+
+    private static final ConversationMessage HI = new ConversationMessage("Alice", "hi", 1000);
+    private static final ConversationMessage THERE = new ConversationMessage("Alice", "there", 2000);
+    private static final ConversationMessage OK = new ConversationMessage(null, "ok", 2000);
+    private static final ConversationMessage LATER = new ConversationMessage("Alice", "later", 3000);
+
+    @Test
+    public void passesOnlyMessagesBeyondTheMark() throws Exception {
+        ConversationSync sync = new ConversationSync();
+        assertEquals(Arrays.asList(HI, THERE), sync.newMessages("alice", Arrays.asList(HI, THERE)));
+        // same timestamp as the mark, different message
+        assertEquals(Collections.singletonList(OK), sync.newMessages("alice", Arrays.asList(HI, THERE, OK)));
+        assertEquals(Collections.singletonList(LATER), sync.newMessages("alice", Arrays.asList(THERE, OK, LATER)));
+        assertTrue(sync.newMessages("alice", Arrays.asList(THERE, OK, LATER)).isEmpty());
+    }
+
+    @Test
+    public void keepsConversationsApart() throws Exception {
+        ConversationSync sync = new ConversationSync();
+        sync.newMessages("alice", Arrays.asList(HI, THERE));
+        assertEquals(2, sync.newMessages("bob", Arrays.asList(HI, THERE)).size());
+        sync.reset("alice");
+        assertEquals(2, sync.newMessages("alice", Arrays.asList(HI, THERE)).size());
+    }
+
+    @Test
+    public void evictedConversationIsSentInFull() throws Exception {
+        ConversationSync sync = new ConversationSync(2, 1, TimeUnit.HOURS);
+        List<ConversationMessage> history = Arrays.asList(HI, THERE);
+        sync.newMessages("a", history);
+        sync.newMessages("b", history);
+        sync.newMessages("c", history);
+        assertEquals(2, sync.newMessages("a", history).size());
+        assertTrue(sync.newMessages("c", history).isEmpty());
+    }
+
+    @Test
+    public void defaultCapHoldsManyConversations() throws Exception {
+        ConversationSync sync = new ConversationSync();
+        for (int i = 0; i < 500; i++) {
+            sync.newMessages("conversation" + i, Arrays.asList(HI, THERE));
+        }
+        for (int i = 0; i < 500; i++) {
+            assertTrue(sync.newMessages("conversation" + i, Arrays.asList(HI, THERE)).isEmpty());
+        }
+    }
+
+    @Test
+    public void threadIndexPointsAtNewestMessage() throws Exception {
+        String updated = ConversationSync.threadIndex(Arrays.asList(LATER, HI)).get(ConversationSync.UPDATED);
+        assertEquals("conversations/alice/" + updated, ConversationSync.messagePath("alice", LATER));
+        assertEquals("threads/a%2Eb", ConversationSync.threadPath("a.b"));
+    }
+
+    @Test
+    public void retentionCutoffSortsWithMessageKeys() throws Exception {
+        long now = TimeUnit.DAYS.toMillis(100);
+        String cutoff = ConversationSync.retentionCutoff(now);
+        String old = ConversationSync.threadIndex(Collections.singletonList(
+                new ConversationMessage("a", "x", now - TimeUnit.DAYS.toMillis(4)))).get(ConversationSync.UPDATED);
+        String recent = ConversationSync.threadIndex(Collections.singletonList(
+                new ConversationMessage("a", "x", now - TimeUnit.DAYS.toMillis(1)))).get(ConversationSync.UPDATED);
+        assertTrue(old.compareTo(cutoff) < 0);
+        assertTrue(recent.compareTo(cutoff) > 0);
+    }
+
+    @Test
+    public void escapesFirebaseKeyCharacters() throws Exception {
+        assertEquals("plain id", ConversationSync.pathSegment("plain id"));
+        assertEquals("a%2Eb%23c%24d%5Be%5Df%2Fg%25h", ConversationSync.pathSegment("a.b#c$d[e]f/g%h"));
+        assertEquals("_", ConversationSync.pathSegment(""));
+        assertEquals("_", ConversationSync.pathSegment(null));
+    }
+}
@@ -0,0 +1,119 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Vishal Dubey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ **/
+
+package vishal.vaf.notifyme.processing;
+
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class IntentMatcherTest {
+
+    private static final String RULES = "# on-device answers\n"
+            + "[greeting]\n"
+            + "hi | hello | hey there\n"
+            + "> Hey! I'll get back to you soon.\n"
+            + "\n"
+            + "[thanks]\n"
+            + "thanks | thank you\n"
+            + "> You're welcome!\n"
+            + "\n"
+            + "[thanks a lot]\n"
+            + "thanks a lot\n"
+            + "> Anytime!\n"
+            + "\n"
+            + "[no response]\n"
+            + "ok\n";
+
+    private static IntentMatcher.Rule rule(String name, String response, String... phrases) {
+        return new IntentMatcher.Rule(name, Arrays.asList(phrases), response);
+    }
+
+    @Test
+    public void tokenizesIntoLowerCaseWords() throws Exception {
+        assertEquals(Arrays.asList("dont", "go", "2day"), IntentMatcher.tokenize("  Don't GO... 2day!"));
+        assertEquals(Arrays.asList("its", "fine"), IntentMatcher.tokenize("It\u2019s fine"));
+        assertTrue(IntentMatcher.tokenize("?! ...").isEmpty());
+    }
+
+    @Test
+    public void parsesRulesAndSkipsIncompleteOnes() throws Exception {
+        List<IntentMatcher.Rule> rules = IntentMatcher.parse(new StringReader(RULES));
+        assertEquals(3, rules.size());
+        assertEquals("greeting", rules.get(0).getName());
+        assertEquals(3, rules.get(0).getPhrases().size());
+        assertEquals("Hey! I'll get back to you soon.", rules.get(0).getResponse());
+    }
+
+    @Test
+    public void matchesWhenPhraseCoversEnoughOfTheMessage() throws Exception {
+        IntentMatcher matcher = new IntentMatcher(IntentMatcher.parse(new StringReader(RULES)));
+        assertEquals("Hey! I'll get back to you soon.", matcher.match("Hi there"));
+        assertEquals("Hey! I'll get back to you soon.", matcher.match("HEY THERE!!"));
+        assertNull(matcher.match("hi, can you send me the report from yesterday?"));
+        assertNull(matcher.match("what's up"));
+        assertNull(matcher.match(""));
+        assertNull(matcher.match(null));
+        assertEquals(2, matcher.getHits(0));
+        assertEquals(4, matcher.getMisses());
+    }
+
+    @Test
+    public void longestPhraseWins() throws Exception {
+        IntentMatcher matcher = new IntentMatcher(IntentMatcher.parse(new StringReader(RULES)));
+        assertEquals("Anytime!", matcher.match("Thanks a lot"));
+        assertEquals("You're welcome!", matcher.match("thanks"));
+    }
+
+    @Test
+    public void tieGoesToTheRuleListedFirst() throws Exception {
+        IntentMatcher matcher = new IntentMatcher(Arrays.asList(
+                rule("first", "one", "good morning"),
+                rule("second", "two", "good morning", "morning all")));
+        assertEquals("one", matcher.match("good morning"));
+        assertEquals("two", matcher.match("morning all"));
+    }
+
+    @Test
+    public void findsPhraseThroughFailureLinks() throws Exception {
+        // "a b c" walks the longer phrase's path, "b c" is only reachable through the failure link
+        IntentMatcher matcher = new IntentMatcher(Arrays.asList(
+                rule("long", "long", "a b c d"),
+                rule("short", "short", "b c")));
+        assertEquals("short", matcher.match("a b c x"));
+        assertEquals("long", matcher.match("a b c d"));
+        assertEquals("short", matcher.match("x b c"));
+    }
+
+    @Test
+    public void respectsMinCoverage() throws Exception {
+        List<IntentMatcher.Rule> rules = Arrays.asList(rule("greeting", "hey", "hi"));
+        assertNull(new IntentMatcher(rules).match("hi how are you"));
+        assertEquals("hey", new IntentMatcher(rules, 0.25).match("hi how are you"));
+    }
+}
@@ -0,0 +1,194 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Vishal Dubey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ **/
+
+package vishal.vaf.notifyme.processing;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import vishal.vaf.notifyme.handlers.AppHandlerRegistry;
+import vishal.vaf.notifyme.handlers.WhatsAppHandler;
+import vishal.vaf.notifyme.model.ListenerConfig;
+import vishal.vaf.notifyme.model.ParsedNotification;
+import vishal.vaf.notifyme.model.RawNotification;
+import vishal.vaf.notifyme.model.ReplyAction;
+import vishal.vaf.notifyme.utils.ConversationIdNormalizer;
+import vishal.vaf.notifyme.utils.LoopbackNetworkManagement;
+import vishal.vaf.notifyme.utils.LruTtlCache;
+
+import static org.junit.Assert.*;
+
+public class NotificationProcessorTest {
+
+    private static final String WHATSAPP = WhatsAppHandler.PACKAGE_NAME;
+
+    private final List<String> sent = new ArrayList<>();
+    private final ReplyAction recorder = new ReplyAction() {
+        @Override
+        public boolean send(String message) {
+            sent.add(message);
+            return true;
+        }
+    };
+
+    private final LoopbackNetworkManagement network = new LoopbackNetworkManagement();
+    private NotificationProcessor processor;
+
+    @Before
+    public void setUp() throws Exception {
+        AppHandlerRegistry registry = AppHandlerRegistry.createDefault();
+        NotifyForwarder forwarder = new NotifyForwarder(new ConversationIdNormalizer(),
+                new LruTtlCache<String, ReplyAction>(16, 1, TimeUnit.HOURS), new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        });
+        forwarder.setNetwork(network);
+        AssistResponder responder = new AssistResponder(registry, new AssistResponder.Greetings() {
+            @Override
+            public String getGreeting(String packageName) {
+                return "I'm away";
+            }
+        }, new AssistResponder.ConversationHandler() {
+            @Override
+            public void onConversation(ParsedNotification notification) {
+
+            }
+        });
+        processor = new NotificationProcessor(registry, forwarder, responder);
+    }
+
+    private static ListenerConfig notifyMode() {
+        return new ListenerConfig(false, true, Collections.<String>emptySet(), Collections.<String, String>emptyMap());
+    }
+
+    private static ListenerConfig assistMode(Set<String> apps) {
+        return new ListenerConfig(true, false, apps, Collections.<String, String>emptyMap());
+    }
+
+    private ParsedNotification posted(String packageName, String title) {
+        return new ParsedNotification(packageName, "key", title, null, "hi", false, recorder);
+    }
+
+    private static RawNotification raw(final String packageName, final String key, final boolean removed,
+                                       final boolean groupSummary, final long contentHash) {
+        return new RawNotification() {
+            @Override
+            public String getPackageName() {
+                return packageName;
+            }
+
+            @Override
+            public String getKey() {
+                return key;
+            }
+
+            @Override
+            public boolean isRemoved() {
+                return removed;
+            }
+
+            @Override
+            public boolean isGroupSummary() {
+                return groupSummary;
+            }
+
+            @Override
+            public boolean isOngoing() {
+                return false;
+            }
+
+            @Override
+            public long getContentHash() {
+                return contentHash;
+            }
+        };
+    }
+
+    @Test
+    public void screensBeforeParsing() throws Exception {
+        assertFalse(processor.screen(raw("com.example.other", "k", false, false, 1)));
+        assertFalse(processor.screen(raw(WHATSAPP, "summary", false, true, 0)));
+        assertTrue(processor.screen(raw(WHATSAPP, "k", false, false, 1)));
+        assertFalse(processor.screen(raw(WHATSAPP, "k", false, false, 1)));
+        // removals always pass and make the same content news again
+        assertTrue(processor.screen(raw(WHATSAPP, "k", true, false, 0)));
+        assertTrue(processor.screen(raw(WHATSAPP, "k", false, false, 1)));
+    }
+
+    @Test
+    public void filtersByMode() throws Exception {
+        ParsedNotification post = posted(WHATSAPP, "Jane");
+        ParsedNotification removal = new ParsedNotification(WHATSAPP, "key", "Jane", null, null, true, null);
+        assertNull(processor.filter(post));
+
+        processor.setConfig(notifyMode());
+        assertSame(post, processor.filter(post));
+        assertSame(removal, processor.filter(removal));
+        assertNull(processor.filter(new ParsedNotification(WHATSAPP, "key", "Jane", null, "hi", false, null)));
+        assertNull(processor.filter(posted(WHATSAPP, null)));
+        assertNull(processor.filter(posted("com.example.other", "Jane")));
+
+        processor.setConfig(assistMode(Collections.singleton(WHATSAPP)));
+        assertSame(post, processor.filter(post));
+        assertNull(processor.filter(removal));
+        processor.setConfig(assistMode(Collections.<String>emptySet()));
+        assertNull(processor.filter(post));
+    }
+
+    @Test
+    public void notifyModeForwardsOnceTheGateOpens() throws Exception {
+        processor.setConfig(notifyMode());
+        processor.getNotifyGate().hold();
+        processor.dispatch(posted(WHATSAPP, "Jane"));
+        assertTrue(network.drainNotifications().isEmpty());
+        processor.getNotifyGate().release();
+        assertEquals(1, network.drainNotifications().size());
+
+        processor.dispatch(new ParsedNotification(WHATSAPP, "key", "Jane", null, null, true, null));
+        assertEquals(1, network.drainRemovals().size());
+    }
+
+    @Test
+    public void assistModeGreetsAndForgetsAppsTakenOff() throws Exception {
+        processor.setConfig(assistMode(Collections.singleton(WHATSAPP)));
+        processor.dispatch(posted(WHATSAPP, "Jane"));
+        assertEquals(1, sent.size());
+        assertTrue(network.drainNotifications().isEmpty());
+
+        // taking the app off and back on greets the sender again
+        processor.setConfig(assistMode(Collections.<String>emptySet()));
+        processor.setConfig(assistMode(Collections.singleton(WHATSAPP)));
+        processor.dispatch(posted(WHATSAPP, "Jane"));
+        assertEquals(2, sent.size());
+    }
+}
@@ -0,0 +1,125 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Vishal Dubey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ **/
+
+package vishal.vaf.notifyme.processing;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import vishal.vaf.notifyme.handlers.WhatsAppHandler;
+import vishal.vaf.notifyme.model.DesktopReply;
+import vishal.vaf.notifyme.model.ParsedNotification;
+import vishal.vaf.notifyme.model.ReplyAction;
+import vishal.vaf.notifyme.utils.ConversationIdNormalizer;
+import vishal.vaf.notifyme.utils.LoopbackNetworkManagement;
+import vishal.vaf.notifyme.utils.LruTtlCache;
+
+import static org.junit.Assert.*;
+
+public class NotifyForwarderTest {
+
+    private final List<String> sent = new CopyOnWriteArrayList<>();
+    private final ReplyAction recorder = new ReplyAction() {
+        @Override
+        public boolean send(String message) {
+            sent.add(message);
+            return true;
+        }
+    };
+
+    private final ConversationIdNormalizer ids = new ConversationIdNormalizer();
+    private final LoopbackNetworkManagement network = new LoopbackNetworkManagement();
+    private ExecutorService replyExecutor;
+    private NotifyForwarder forwarder;
+
+    @Before
+    public void setUp() throws Exception {
+        replyExecutor = Executors.newFixedThreadPool(2);
+        forwarder = new NotifyForwarder(ids, new LruTtlCache<String, ReplyAction>(16, 1, TimeUnit.HOURS), replyExecutor);
+        forwarder.setNetwork(network);
+        network.subscribeReplies(forwarder);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        replyExecutor.shutdownNow();
+    }
+
+    private ParsedNotification posted(String title, String text) {
+        return new ParsedNotification(WhatsAppHandler.PACKAGE_NAME, "key", title, null, text, false, recorder);
+    }
+
+    private DesktopReply reply(String title, String message) {
+        return new DesktopReply(null, ids.normalize(title), WhatsAppHandler.PACKAGE_NAME, title, message);
+    }
+
+    @Test
+    public void publishesPostsAndRemovals() throws Exception {
+        forwarder.onPosted(posted("Jane Doe", "hi"));
+        List<Map<String, String>> notifications = network.drainNotifications();
+        assertEquals(1, notifications.size());
+        assertEquals(ids.normalize("Jane Doe"), notifications.get(0).get("i"));
+        assertEquals("hi", notifications.get(0).get("m"));
+
+        forwarder.onRemoved(posted("Jane Doe", "hi"));
+        assertEquals(1, network.drainRemovals().size());
+    }
+
+    @Test
+    public void everyReplyToAConversationIsSent() throws Exception {
+        forwarder.onPosted(posted("Jane Doe", "hi"));
+        assertTrue(network.deliverReply(reply("Jane Doe", "on my way")));
+        assertTrue(network.deliverReply(reply("Jane Doe", "be there in 5")));
+        awaitAcknowledged(2);
+        assertEquals(2, sent.size());
+        assertEquals("on my way", sent.get(0));
+        assertEquals("be there in 5", sent.get(1));
+    }
+
+    @Test
+    public void replyAfterRemovalIsNotSent() throws Exception {
+        forwarder.onPosted(posted("Jane Doe", "hi"));
+        forwarder.onRemoved(posted("Jane Doe", "hi"));
+        network.deliverReply(reply("Jane Doe", "too late"));
+        awaitAcknowledged(1);
+        assertTrue(sent.isEmpty());
+        assertFalse(forwarder.handleReply(reply("John", "unknown conversation")));
+    }
+
+    // Replies run on the executor, they are acknowledged once handled
+    private void awaitAcknowledged(long count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 1000;
+        while (network.getAcknowledgedReplies() < count && System.currentTimeMillis() < deadline)
+            Thread.sleep(5);
+        assertEquals(count, network.getAcknowledgedReplies());
+    }
+}
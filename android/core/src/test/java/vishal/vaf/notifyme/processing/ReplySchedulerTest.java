@@ -0,0 +1,149 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Vishal Dubey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ **/
+
+package vishal.vaf.notifyme.processing;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import vishal.vaf.notifyme.model.ReplyAction;
+
+import static org.junit.Assert.*;
+
+public class ReplySchedulerTest {
+
+    private final List<String> sent = new CopyOnWriteArrayList<>();
+    private final ReplyAction recorder = new ReplyAction() {
+        @Override
+        public boolean send(String message) {
+            sent.add(message);
+            return true;
+        }
+    };
+
+    private ReplyScheduler scheduler;
+
+    @After
+    public void tearDown() throws Exception {
+        if (scheduler != null)
+            scheduler.shutdown();
+    }
+
+    @Test
+    public void sendsWithinBurstRightAway() throws Exception {
+        scheduler = new ReplyScheduler(2, 60, 5, 60, 20000, 8, 120000, 900000);
+        final CountDownLatch done = new CountDownLatch(2);
+        ReplyAction action = new ReplyAction() {
+            @Override
+            public boolean send(String message) {
+                sent.add(message);
+                done.countDown();
+                return true;
+            }
+        };
+        assertTrue(scheduler.schedule("a", "hi", action, "one"));
+        assertTrue(scheduler.schedule("a", "hey", action, "two"));
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+        assertEquals("one", sent.get(0));
+        assertEquals("two", sent.get(1));
+        // Counted once send() has returned
+        long deadline = System.currentTimeMillis() + 1000;
+        while (scheduler.getSent() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, scheduler.getSent());
+        assertEquals(0, scheduler.getDelayed());
+    }
+
+    @Test
+    public void dropsRepliesBeyondMaxDelay() throws Exception {
+        // One token per minute, at most one second of delay
+        scheduler = new ReplyScheduler(1, 1, 5, 60, 1000, 8, 120000, 900000);
+        assertTrue(scheduler.schedule("a", "hi", recorder, "one"));
+        assertFalse(scheduler.schedule("a", "hey", recorder, "two"));
+        assertEquals(1, scheduler.getDropped());
+        // Other conversations have their own bucket
+        assertTrue(scheduler.schedule("b", "hi", recorder, "three"));
+    }
+
+    @Test
+    public void pendingReplyDoesNotFireAfterCancelAll() throws Exception {
+        // Second reply waits about half a second for its token
+        scheduler = new ReplyScheduler(1, 120, 5, 60, 20000, 8, 120000, 900000);
+        assertTrue(scheduler.schedule("a", "hi", recorder, "now"));
+        assertTrue(scheduler.schedule("a", "hey", recorder, "later"));
+        assertEquals(1, scheduler.getDelayed());
+        scheduler.cancelAll();
+        assertEquals(0, scheduler.getPending());
+        Thread.sleep(800);
+        assertFalse(sent.contains("later"));
+    }
+
+    @Test
+    public void pendingReplyDoesNotFireAfterShutdown() throws Exception {
+        scheduler = new ReplyScheduler(1, 120, 5, 60, 20000, 8, 120000, 900000);
+        scheduler.schedule("a", "hi", recorder, "now");
+        scheduler.schedule("a", "hey", recorder, "later");
+        scheduler.shutdown();
+        Thread.sleep(800);
+        assertFalse(sent.contains("later"));
+        assertFalse(scheduler.schedule("b", "hi", recorder, "after"));
+    }
+
+    @Test
+    public void mutesConversationAfterTooManyReplies() throws Exception {
+        scheduler = new ReplyScheduler(10, 600, 10, 600, 20000, 3, 120000, 900000);
+        assertTrue(scheduler.schedule("a", "m1", recorder, "r1"));
+        assertTrue(scheduler.schedule("a", "m2", recorder, "r2"));
+        assertTrue(scheduler.schedule("a", "m3", recorder, "r3"));
+        assertFalse(scheduler.schedule("a", "m4", recorder, "r4"));
+        // Stays muted even though the trigger is new
+        assertFalse(scheduler.schedule("a", "m5", recorder, "r5"));
+        assertTrue(scheduler.schedule("b", "m1", recorder, "r1"));
+        assertEquals(2, scheduler.getDropped());
+    }
+
+    @Test
+    public void mutesConversationThatEchoesOurReply() throws Exception {
+        scheduler = new ReplyScheduler(10, 600, 10, 600, 20000, 8, 120000, 900000);
+        assertTrue(scheduler.schedule("a", "hi", recorder, "I'm busy, talk later"));
+        assertFalse(scheduler.schedule("a", " I'm busy, talk later ", recorder, "I'm busy, talk later"));
+        assertFalse(scheduler.schedule("a", "ok", recorder, "bye"));
+        assertTrue(scheduler.schedule("b", "I'm busy, talk later", recorder, "hello"));
+    }
+
+    @Test
+    public void muteExpires() throws Exception {
+        scheduler = new ReplyScheduler(10, 600, 10, 600, 20000, 8, 120000, 200);
+        scheduler.schedule("a", "hi", recorder, "echo");
+        assertFalse(scheduler.schedule("a", "echo", recorder, "again"));
+        Thread.sleep(300);
+        assertTrue(scheduler.schedule("a", "something else", recorder, "again"));
+    }
+}
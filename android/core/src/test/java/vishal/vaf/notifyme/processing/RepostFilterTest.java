@@ -0,0 +1,79 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Vishal Dubey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ **/
+
+package vishal.vaf.notifyme.processing;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RepostFilterTest {
+
+    @Test
+    public void dropsUnchangedRepost() throws Exception {
+        RepostFilter filter = new RepostFilter();
+        long hash = RepostFilter.contentHash("Jane", "hi");
+        assertNull(filter.check("k", false, false, hash));
+        assertEquals(RepostFilter.Reason.UNCHANGED, filter.check("k", false, false, hash));
+        assertNull(filter.check("k", false, false, RepostFilter.contentHash("Jane", "hi\nyou there?")));
+        assertNull(filter.check("other", false, false, hash));
+        assertEquals(3, filter.getPassed());
+        assertEquals(1, filter.getDropped(RepostFilter.Reason.UNCHANGED));
+    }
+
+    @Test
+    public void dropsSummariesAndOngoing() throws Exception {
+        RepostFilter filter = new RepostFilter();
+        assertEquals(RepostFilter.Reason.GROUP_SUMMARY, filter.check("k", true, true, 1));
+        assertEquals(RepostFilter.Reason.ONGOING, filter.check("k", false, true, 1));
+        // neither remembered the hash
+        assertNull(filter.check("k", false, false, 1));
+        assertEquals(1, filter.getDropped(RepostFilter.Reason.GROUP_SUMMARY));
+        assertEquals(1, filter.getDropped(RepostFilter.Reason.ONGOING));
+    }
+
+    @Test
+    public void repostAfterRemovalPasses() throws Exception {
+        RepostFilter filter = new RepostFilter();
+        filter.check("k", false, false, 7);
+        filter.forget("k");
+        assertNull(filter.check("k", false, false, 7));
+    }
+
+    @Test
+    public void forgetsLeastRecentKeyBeyondCap() throws Exception {
+        RepostFilter filter = new RepostFilter(1);
+        filter.check("a", false, false, 7);
+        filter.check("b", false, false, 7);
+        assertNull(filter.check("a", false, false, 7));
+    }
+
+    @Test
+    public void hashSeparatesParts() throws Exception {
+        assertEquals(RepostFilter.contentHash("ab", "c"), RepostFilter.contentHash("ab", "c"));
+        assertNotEquals(RepostFilter.contentHash("ab", "c"), RepostFilter.contentHash("a", "bc"));
+        assertNotEquals(RepostFilter.contentHash("a", null), RepostFilter.contentHash("a", ""));
+        assertNotEquals(RepostFilter.contentHash("a"), RepostFilter.contentHash("a", null));
+    }
+}
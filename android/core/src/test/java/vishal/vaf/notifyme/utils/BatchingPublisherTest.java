@@ -0,0 +1,118 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Vishal Dubey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ **/
+
+package vishal.vaf.notifyme.utils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class BatchingPublisherTest {
+
+    private final BlockingQueue<List<Integer>> batches = new LinkedBlockingQueue<>();
+
+    private final BatchingPublisher.BatchWriter<Integer> recorder = new BatchingPublisher.BatchWriter<Integer>() {
+        @Override
+        public void write(List<Integer> batch) {
+            batches.add(new ArrayList<>(batch));
+        }
+    };
+
+    @Test
+    public void writesFullBatchWithoutWaitingForTheWindow() throws Exception {
+        BatchingPublisher<Integer> publisher = new BatchingPublisher<>(recorder, 60000, 3);
+        publisher.publish(1);
+        publisher.publish(2);
+        publisher.publish(3);
+        assertEquals(Arrays.asList(1, 2, 3), batches.poll(1, TimeUnit.SECONDS));
+        publisher.shutdown();
+    }
+
+    @Test
+    public void writesPartialBatchWhenTheWindowCloses() throws Exception {
+        BatchingPublisher<Integer> publisher = new BatchingPublisher<>(recorder, 50, 100);
+        publisher.publish(1);
+        publisher.publish(2);
+        assertEquals(Arrays.asList(1, 2), batches.poll(1, TimeUnit.SECONDS));
+        publisher.publish(3);
+        assertEquals(Arrays.asList(3), batches.poll(1, TimeUnit.SECONDS));
+        publisher.shutdown();
+        awaitWrites(publisher, 2);
+        assertEquals(3, publisher.getItems());
+        assertEquals(2, publisher.getLargestBatch());
+        assertEquals(1.5, publisher.getAverageBatchSize(), 1e-9);
+    }
+
+    @Test
+    public void flushAndShutdownWritePendingItems() throws Exception {
+        BatchingPublisher<Integer> publisher = new BatchingPublisher<>(recorder, 60000, 100);
+        publisher.publish(1);
+        publisher.flush();
+        assertEquals(Arrays.asList(1), batches.poll(1, TimeUnit.SECONDS));
+        publisher.publish(2);
+        publisher.shutdown();
+        assertEquals(Arrays.asList(2), batches.poll(1, TimeUnit.SECONDS));
+        // ignored once shut down
+        publisher.publish(3);
+        assertNull(batches.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void failedWriteIsCountedAndPublisherGoesOn() throws Exception {
+        final CountDownLatch failed = new CountDownLatch(1);
+        BatchingPublisher<Integer> publisher = new BatchingPublisher<>(new BatchingPublisher.BatchWriter<Integer>() {
+            @Override
+            public void write(List<Integer> batch) throws Exception {
+                if (batch.contains(1)) {
+                    failed.countDown();
+                    throw new Exception("offline");
+                }
+                batches.add(batch);
+            }
+        }, 60000, 1);
+        publisher.publish(1);
+        assertTrue(failed.await(1, TimeUnit.SECONDS));
+        publisher.publish(2);
+        assertEquals(Arrays.asList(2), batches.poll(1, TimeUnit.SECONDS));
+        publisher.shutdown();
+        awaitWrites(publisher, 1);
+        assertEquals(1, publisher.getItems());
+    }
+
+    // the counters are updated after write() returns, on the publisher thread
+    private static void awaitWrites(BatchingPublisher<?> publisher, long writes) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 1000;
+        while (publisher.getWrites() < writes && System.currentTimeMillis() < deadline)
+            Thread.sleep(5);
+        assertEquals(writes, publisher.getWrites());
+    }
+}
@@ -0,0 +1,96 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Vishal Dubey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ **/
+
+package vishal.vaf.notifyme.utils;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks {@link ConversationIdNormalizer} against the regex chain it replaces.
+ */
+public class ConversationIdNormalizerTest {
+
+    private static final String[] TITLES = {
+            "John Doe",
+            "Family Group: Mom",
+            "Work (3 messages): Alice",
+            "Bob (2)",
+            "(",
+            ")",
+            "((a)b)c",
+            "a (b\nc) d",
+            "a (b\u2028c) (d)",
+            "(open only",
+            "::  : ",
+            "",
+            "\u039F\u0394\u03A5\u03A3\u03A3\u0395\u03A5\u03A3",
+            "\u0130stanbul Friends",
+            "\uD801\uDC00 Deseret",
+            "\u00DCn\u00EFc\u00F6d\u00E9 N\u00E4m\u00E9",
+            "\u0930\u093E\u0939\u0941\u0932 \u0936\u0930\u094D\u092E\u093E",
+    };
+
+    private static final char[] ALPHABET = {
+            'a', 'B', 'z', 'Z', '0', ' ', ' ', ':', '(', ')', '(', ')', '\n', '\r', '\u0085',
+            '\u2028', '\u00C9', '\u03A3', '\u0130', '\u0928', '\uD83D', '\uDE00', '.'
+    };
+
+    private static String legacy(String title) {
+        return title.toLowerCase().replaceAll("\\(.*?\\)", "").replace(":", "").replaceAll(" ", "");
+    }
+
+    @Test
+    public void matchesLegacyIdsForKnownTitles() throws Exception {
+        ConversationIdNormalizer normalizer = new ConversationIdNormalizer();
+        for (String title : TITLES) {
+            assertEquals(title, legacy(title), normalizer.normalize(title));
+        }
+    }
+
+    @Test
+    public void matchesLegacyIdsForRandomTitles() throws Exception {
+        ConversationIdNormalizer normalizer = new ConversationIdNormalizer(8);
+        Random random = new Random(42);
+        for (int n = 0; n < 20000; n++) {
+            char[] chars = new char[random.nextInt(24)];
+            for (int i = 0; i < chars.length; i++) {
+                chars[i] = ALPHABET[random.nextInt(ALPHABET.length)];
+            }
+            String title = new String(chars);
+            assertEquals(title, legacy(title), normalizer.normalize(title));
+        }
+    }
+
+    @Test
+    public void memoizesRecentTitles() throws Exception {
+        ConversationIdNormalizer normalizer = new ConversationIdNormalizer();
+        String id = normalizer.normalize("Family Group: Mom");
+        assertSame(id, normalizer.normalize("Family Group: Mom"));
+        assertNull(normalizer.normalize(null));
+    }
+}
@@ -0,0 +1,250 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Vishal Dubey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ **/
+
+package vishal.vaf.notifyme.utils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class DiskOutboxTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private File file;
+    private DiskOutbox outbox;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("outbox", ".log");
+        file.delete();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (outbox != null)
+            outbox.close();
+        file.delete();
+        new File(file.getPath() + ".tmp").delete();
+    }
+
+    private static byte[] record(String text) {
+        return text.getBytes(UTF_8);
+    }
+
+    private static List<String> texts(DiskOutbox.Batch batch) {
+        List<String> texts = new ArrayList<>();
+        for (byte[] record : batch.getRecords()) {
+            texts.add(new String(record, UTF_8));
+        }
+        return texts;
+    }
+
+    private DiskOutbox reopen() throws IOException {
+        outbox.close();
+        outbox = new DiskOutbox(file, 1024);
+        return outbox;
+    }
+
+    @Test
+    public void peeksInOrderWithoutRemoving() throws Exception {
+        outbox = new DiskOutbox(file, 1024);
+        outbox.append(record("a"));
+        outbox.append(record("b"));
+        outbox.append(record("c"));
+        DiskOutbox.Batch batch = outbox.peek(2);
+        assertEquals("[a, b]", texts(batch).toString());
+        assertEquals(0, batch.getFirstSequence());
+        assertEquals(3, outbox.size());
+    }
+
+    @Test
+    public void acknowledgedRecordsStayGoneAfterReopen() throws Exception {
+        outbox = new DiskOutbox(file, 1024);
+        for (String text : new String[]{"a", "b", "c", "d"}) {
+            outbox.append(record(text));
+        }
+        DiskOutbox.Batch batch = outbox.peek(10);
+        outbox.acknowledge(batch.getFirstSequence() + 2);
+        assertEquals(2, outbox.size());
+
+        reopen();
+        assertEquals(2, outbox.size());
+        assertEquals("[c, d]", texts(outbox.peek(10)).toString());
+    }
+
+    @Test
+    public void acknowledgingEverythingEmptiesTheFile() throws Exception {
+        outbox = new DiskOutbox(file, 1024);
+        outbox.append(record("a"));
+        outbox.append(record("b"));
+        DiskOutbox.Batch batch = outbox.peek(10);
+        outbox.acknowledge(batch.getFirstSequence() + 2);
+        assertEquals(0, outbox.size());
+        assertEquals(12, file.length());
+        // numbering goes on after the in-place reset
+        outbox.append(record("c"));
+        assertEquals(2, outbox.peek(10).getFirstSequence());
+    }
+
+    @Test
+    public void cutsOffTornTail() throws Exception {
+        outbox = new DiskOutbox(file, 1024);
+        outbox.append(record("first"));
+        outbox.append(record("second"));
+        outbox.close();
+        long intact = file.length();
+        // length and checksum of a record whose bytes never made it to disk
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.seek(intact);
+        raf.writeInt(100);
+        raf.writeInt(0);
+        raf.write(record("par"));
+        raf.close();
+
+        outbox = new DiskOutbox(file, 1024);
+        assertEquals(2, outbox.size());
+        assertEquals(intact, file.length());
+        outbox.append(record("third"));
+        assertEquals("[first, second, third]", texts(reopen().peek(10)).toString());
+    }
+
+    @Test
+    public void rejectsRecordWithBadChecksum() throws Exception {
+        outbox = new DiskOutbox(file, 1024);
+        outbox.append(record("first"));
+        outbox.append(record("second"));
+        outbox.close();
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.seek(file.length() - 1);
+        raf.write('X');
+        raf.close();
+
+        outbox = new DiskOutbox(file, 1024);
+        assertEquals("[first]", texts(outbox.peek(10)).toString());
+    }
+
+    @Test
+    public void startsOverOnUnknownHeader() throws Exception {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.write(record("not an outbox file"));
+        raf.close();
+        outbox = new DiskOutbox(file, 1024);
+        assertEquals(0, outbox.size());
+        outbox.append(record("a"));
+        assertEquals("[a]", texts(reopen().peek(10)).toString());
+    }
+
+    @Test
+    public void dropsOldestRecordsAtTheCap() throws Exception {
+        // four records of 8 + 10 bytes fit in 80
+        outbox = new DiskOutbox(file, 80);
+        for (int i = 0; i < 6; i++) {
+            outbox.append(record("record-00" + i));
+        }
+        assertEquals(4, outbox.size());
+        assertEquals(2, outbox.getDropped());
+        DiskOutbox.Batch batch = outbox.peek(10);
+        assertEquals(2, batch.getFirstSequence());
+        assertEquals("[record-002, record-003, record-004, record-005]", texts(batch).toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsRecordLargerThanTheCap() throws Exception {
+        outbox = new DiskOutbox(file, 16);
+        outbox.append(new byte[9]);
+    }
+
+    @Test
+    public void acknowledgeAfterDropOnlyRemovesDeliveredRecords() throws Exception {
+        outbox = new DiskOutbox(file, 80);
+        for (int i = 0; i < 4; i++) {
+            outbox.append(record("record-00" + i));
+        }
+        // a replay takes the first two while appends push the first three out
+        DiskOutbox.Batch batch = outbox.peek(2);
+        for (int i = 4; i < 7; i++) {
+            outbox.append(record("record-00" + i));
+        }
+        outbox.acknowledge(batch.getFirstSequence() + batch.getRecords().size());
+        assertEquals("[record-003, record-004, record-005, record-006]", texts(outbox.peek(10)).toString());
+
+        // partly dropped: only the delivered record still in the outbox goes
+        batch = outbox.peek(2);
+        outbox.append(record("record-007"));
+        outbox.acknowledge(batch.getFirstSequence() + 2);
+        assertEquals("[record-005, record-006, record-007]", texts(outbox.peek(10)).toString());
+    }
+
+    @Test
+    public void compactsDeliveredPrefix() throws Exception {
+        outbox = new DiskOutbox(file, 1024);
+        for (int i = 0; i < 40; i++) {
+            outbox.append(record("record-" + (100 + i)));
+        }
+        long before = file.length();
+        DiskOutbox.Batch batch = outbox.peek(30);
+        outbox.acknowledge(batch.getFirstSequence() + 30);
+        assertTrue(file.length() < before);
+        assertEquals(12 + 10 * 18, file.length());
+        assertEquals(30, outbox.peek(1).getFirstSequence());
+
+        reopen();
+        DiskOutbox.Batch rest = outbox.peek(100);
+        assertEquals(10, rest.getRecords().size());
+        assertEquals("record-130", texts(rest).get(0));
+        assertEquals("record-139", texts(rest).get(9));
+    }
+
+    @Test
+    public void keepsWorkingWhenCompactedFileCannotBeSwappedIn() throws Exception {
+        outbox = new DiskOutbox(file, 1024) {
+            @Override
+            boolean replace(File from, File to) {
+                return false;
+            }
+        };
+        for (int i = 0; i < 40; i++) {
+            outbox.append(record("record-" + (100 + i)));
+        }
+        long before = file.length();
+        outbox.acknowledge(outbox.peek(30).getFirstSequence() + 30);
+        assertEquals(before, file.length());
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+
+        outbox.append(record("record-140"));
+        assertEquals("record-130", texts(outbox.peek(1)).get(0));
+        assertEquals(11, reopen().size());
+        assertEquals("record-130", texts(outbox.peek(1)).get(0));
+    }
+}
@@ -0,0 +1,180 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Vishal Dubey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ **/
+
+package vishal.vaf.notifyme.utils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class KeyedSerialExecutorTest {
+
+    @Test
+    public void runsTasksOfOneKeyInOrderOneAtATime() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        KeyedSerialExecutor<String> executor = new KeyedSerialExecutor<>(pool);
+        final List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(200);
+        for (int i = 0; i < 200; i++) {
+            final int n = i;
+            executor.execute("a", new Runnable() {
+                @Override
+                public void run() {
+                    int now = running.incrementAndGet();
+                    maxRunning.set(Math.max(maxRunning.get(), now));
+                    order.add(n);
+                    running.decrementAndGet();
+                    done.countDown();
+                }
+            });
+        }
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(1, maxRunning.get());
+        for (int i = 0; i < 200; i++) {
+            assertEquals(i, (int) order.get(i));
+        }
+        pool.shutdown();
+    }
+
+    @Test
+    public void runsDifferentKeysInParallel() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        KeyedSerialExecutor<String> executor = new KeyedSerialExecutor<>(pool);
+        final CountDownLatch bothStarted = new CountDownLatch(2);
+        final CountDownLatch done = new CountDownLatch(2);
+        Runnable waitForOther = new Runnable() {
+            @Override
+            public void run() {
+                bothStarted.countDown();
+                try {
+                    if (bothStarted.await(5, TimeUnit.SECONDS))
+                        done.countDown();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        executor.execute("a", waitForOther);
+        executor.execute("b", waitForOther);
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        pool.shutdown();
+    }
+
+    @Test
+    public void failingTaskDoesNotStallItsKey() throws Exception {
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        KeyedSerialExecutor<String> executor = new KeyedSerialExecutor<>(pool);
+        final CountDownLatch done = new CountDownLatch(1);
+        executor.execute("a", new Runnable() {
+            @Override
+            public void run() {
+                throw new IllegalStateException("expected by the test");
+            }
+        });
+        executor.execute("a", new Runnable() {
+            @Override
+            public void run() {
+                done.countDown();
+            }
+        });
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(0, executor.getActiveKeys());
+    }
+
+    @Test
+    public void errorDoesNotStallItsKey() throws Exception {
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        KeyedSerialExecutor<String> executor = new KeyedSerialExecutor<>(pool);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(1);
+        executor.execute("a", new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                throw new AssertionError("expected by the test");
+            }
+        });
+        executor.execute("a", new Runnable() {
+            @Override
+            public void run() {
+                done.countDown();
+            }
+        });
+        release.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(0, executor.getActiveKeys());
+    }
+
+    @Test
+    public void rejectedTaskDoesNotStallItsKey() throws Exception {
+        final AtomicInteger calls = new AtomicInteger();
+        // refuses the first task, runs the others on the calling thread
+        KeyedSerialExecutor<String> executor = new KeyedSerialExecutor<>(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                if (calls.incrementAndGet() == 1)
+                    throw new RejectedExecutionException("saturated");
+                command.run();
+            }
+        });
+        final AtomicInteger ran = new AtomicInteger();
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                ran.incrementAndGet();
+            }
+        };
+        try {
+            executor.execute("a", task);
+            fail("rejection not reported");
+        } catch (RejectedExecutionException expected) {
+            // the caller decides what to do with the task
+        }
+        assertEquals(0, executor.getActiveKeys());
+        executor.execute("a", task);
+        assertEquals(1, ran.get());
+        assertEquals(0, executor.getActiveKeys());
+    }
+}
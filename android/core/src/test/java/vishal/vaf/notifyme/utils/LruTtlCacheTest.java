@@ -0,0 +1,136 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Vishal Dubey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ **/
+
+package vishal.vaf.notifyme.utils;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class LruTtlCacheTest {
+
+    private static class FakeClockCache extends LruTtlCache<String, String> {
+
+        private long now;
+
+        FakeClockCache(int maxEntries, long maxAgeSeconds) {
+            super(maxEntries, maxAgeSeconds, TimeUnit.SECONDS);
+        }
+
+        void advance(long seconds) {
+            now += TimeUnit.SECONDS.toNanos(seconds);
+        }
+
+        @Override
+        protected long now() {
+            return now;
+        }
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedAtTheCap() throws Exception {
+        FakeClockCache cache = new FakeClockCache(2, 60);
+        cache.put("a", "1");
+        cache.put("b", "2");
+        // touching a makes b the least recently used
+        assertEquals("1", cache.get("a"));
+        cache.put("c", "3");
+        assertNull(cache.get("b"));
+        assertEquals("1", cache.get("a"));
+        assertEquals("3", cache.get("c"));
+        assertEquals(1, cache.getEvictions());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void expiresEntriesOnLookup() throws Exception {
+        FakeClockCache cache = new FakeClockCache(10, 60);
+        cache.put("a", "1");
+        cache.advance(60);
+        assertEquals("1", cache.get("a"));
+        cache.advance(1);
+        assertNull(cache.get("a"));
+        assertEquals(1, cache.getExpirations());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void putDropsStaleHead() throws Exception {
+        FakeClockCache cache = new FakeClockCache(10, 60);
+        cache.put("a", "1");
+        cache.put("b", "2");
+        cache.advance(61);
+        cache.put("c", "3");
+        assertEquals(1, cache.size());
+        assertEquals(2, cache.getExpirations());
+    }
+
+    @Test
+    public void purgeDropsExpiredEntriesBehindFreshOnes() throws Exception {
+        FakeClockCache cache = new FakeClockCache(10, 60);
+        cache.put("a", "1");
+        cache.advance(30);
+        cache.put("b", "2");
+        cache.advance(10);
+        // a was used last, so fresh b stays at the head once a goes stale
+        cache.get("a");
+        cache.advance(30);
+        cache.put("c", "3");
+        assertEquals(3, cache.size());
+        cache.purgeExpired();
+        assertEquals(2, cache.size());
+        assertNull(cache.get("a"));
+    }
+
+    @Test
+    public void putRefreshesAge() throws Exception {
+        FakeClockCache cache = new FakeClockCache(10, 60);
+        cache.put("a", "1");
+        cache.advance(50);
+        cache.put("a", "2");
+        cache.advance(50);
+        assertEquals("2", cache.get("a"));
+    }
+
+    @Test
+    public void countsHitsAndMisses() throws Exception {
+        FakeClockCache cache = new FakeClockCache(10, 60);
+        cache.put("a", "1");
+        cache.get("a");
+        cache.get("a");
+        cache.get("b");
+        assertEquals(2, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(2.0 / 3, cache.getHitRate(), 1e-9);
+        assertEquals("1", cache.remove("a"));
+        assertNull(cache.remove("a"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEmptyCap() throws Exception {
+        new LruTtlCache<String, String>(0, 1, TimeUnit.SECONDS);
+    }
+}
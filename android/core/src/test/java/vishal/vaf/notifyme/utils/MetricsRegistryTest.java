@@ -0,0 +1,107 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Vishal Dubey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ **/
+
+package vishal.vaf.notifyme.utils;
+
+import org.junit.Test;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class MetricsRegistryTest {
+
+    @Test
+    public void sameNameReturnsSameMetric() throws Exception {
+        MetricsRegistry metrics = new MetricsRegistry();
+        assertSame(metrics.counter("posted"), metrics.counter("posted"));
+        assertSame(metrics.histogram("latency"), metrics.histogram("latency"));
+        assertNotSame(metrics.counter("posted"), metrics.counter("removed"));
+    }
+
+    @Test
+    public void countsFromManyThreads() throws Exception {
+        final MetricsRegistry metrics = new MetricsRegistry();
+        final CountDownLatch done = new CountDownLatch(4);
+        for (int t = 0; t < 4; t++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    MetricsRegistry.Counter counter = metrics.counter("posted");
+                    MetricsRegistry.Histogram histogram = metrics.histogram("latency");
+                    for (int i = 0; i < 10000; i++) {
+                        counter.increment();
+                        histogram.record(1000);
+                    }
+                    done.countDown();
+                }
+            }).start();
+        }
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(40000, metrics.counter("posted").get());
+        assertEquals(40000, metrics.histogram("latency").getCount());
+    }
+
+    @Test
+    public void reportsBucketUpperBoundCappedByMax() throws Exception {
+        MetricsRegistry.Histogram histogram = new MetricsRegistry.Histogram();
+        assertEquals(0, histogram.getPercentile(50));
+        for (int i = 0; i < 90; i++) {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(80));
+        }
+        for (int i = 0; i < 10; i++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(2));
+        }
+        assertEquals(TimeUnit.MICROSECONDS.toNanos(100), histogram.getPercentile(50));
+        assertEquals(TimeUnit.MICROSECONDS.toNanos(100), histogram.getPercentile(90));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(2), histogram.getPercentile(99));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(2), histogram.getPercentile(100));
+    }
+
+    @Test
+    public void valuesBeyondLastBucketReportMax() throws Exception {
+        MetricsRegistry.Histogram histogram = new MetricsRegistry.Histogram();
+        histogram.record(-5);
+        histogram.record(TimeUnit.SECONDS.toNanos(45));
+        // the negative recording counts as zero, in the first bucket
+        assertEquals(TimeUnit.MICROSECONDS.toNanos(50), histogram.getPercentile(50));
+        assertEquals(TimeUnit.SECONDS.toNanos(45), histogram.getPercentile(99));
+    }
+
+    @Test
+    public void dumpsSortedByName() throws Exception {
+        MetricsRegistry metrics = new MetricsRegistry();
+        metrics.counter("zeta").add(3);
+        metrics.counter("alpha").increment();
+        metrics.histogram("latency").record(TimeUnit.MILLISECONDS.toNanos(2));
+        StringWriter out = new StringWriter();
+        metrics.dump(new PrintWriter(out, true));
+        String dump = out.toString();
+        assertTrue(dump.indexOf("alpha: 1") < dump.indexOf("zeta: 3"));
+        assertTrue(dump, dump.contains("latency: count=1 mean=2.00ms"));
+    }
+}
@@ -0,0 +1,151 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Vishal Dubey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ **/
+
+package vishal.vaf.notifyme.utils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import vishal.vaf.notifyme.model.PayloadSchema;
+
+import static org.junit.Assert.*;
+
+public class OutboxNetworkManagementTest {
+
+    private static final long MAX_BYTES = 4 * 1024 * 1024;
+
+    private File file;
+    private OutboxNetworkManagement network;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("outbox", ".log");
+        file.delete();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (network != null)
+            network.close();
+        file.delete();
+        new File(file.getPath() + ".tmp").delete();
+    }
+
+    private static Map<String, String> payload(String id, String message) {
+        Map<String, String> payload = new HashMap<>();
+        payload.put(PayloadSchema.VERSION, "2");
+        payload.put(PayloadSchema.ID, id);
+        payload.put(PayloadSchema.NAME, "Jane");
+        payload.put(PayloadSchema.MESSAGE, message);
+        return payload;
+    }
+
+    private static List<Map<String, String>> awaitNotifications(LoopbackNetworkManagement loopback, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 2000;
+        while (loopback.getPublishedNotifications() < count && System.currentTimeMillis() < deadline)
+            Thread.sleep(5);
+        return loopback.drainNotifications();
+    }
+
+    @Test
+    public void valuesOver64KbSurviveARestart() throws Exception {
+        StringBuilder message = new StringBuilder();
+        while (message.length() < 70 * 1024) {
+            message.append("long message \u00e9\u4e2d ");
+        }
+        network = new OutboxNetworkManagement(new DiskOutbox(file, MAX_BYTES));
+        network.publishNotification(payload("c1", message.toString()));
+        network.publishRemoval("c1");
+        network.close();
+
+        network = new OutboxNetworkManagement(new DiskOutbox(file, MAX_BYTES));
+        LoopbackNetworkManagement loopback = new LoopbackNetworkManagement();
+        network.setTransport(loopback);
+        List<Map<String, String>> notifications = awaitNotifications(loopback, 1);
+        assertEquals(1, notifications.size());
+        assertEquals(message.toString(), notifications.get(0).get(PayloadSchema.MESSAGE));
+        assertEquals("c1", notifications.get(0).get(PayloadSchema.ID));
+        long deadline = System.currentTimeMillis() + 2000;
+        while (loopback.getPublishedRemovals() < 1 && System.currentTimeMillis() < deadline)
+            Thread.sleep(5);
+        assertEquals("[c1]", loopback.drainRemovals().toString());
+    }
+
+    @Test
+    public void replaysRecordsOfThePreviousFormat() throws Exception {
+        // an entry as written before strings were int length prefixed
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(1);
+        out.writeUTF("app/00000000012340000");
+        out.writeShort(2);
+        out.writeUTF(PayloadSchema.ID);
+        out.writeBoolean(true);
+        out.writeUTF("c1");
+        out.writeUTF(PayloadSchema.MESSAGE);
+        out.writeBoolean(true);
+        out.writeUTF("hi");
+        DiskOutbox outbox = new DiskOutbox(file, MAX_BYTES);
+        outbox.append(bytes.toByteArray());
+
+        network = new OutboxNetworkManagement(outbox);
+        LoopbackNetworkManagement loopback = new LoopbackNetworkManagement();
+        network.setTransport(loopback);
+        List<Map<String, String>> notifications = awaitNotifications(loopback, 1);
+        assertEquals(1, notifications.size());
+        assertEquals("hi", notifications.get(0).get(PayloadSchema.MESSAGE));
+    }
+
+    @Test
+    public void schedulesFlushJobWithoutHoldingLocks() throws Exception {
+        network = new OutboxNetworkManagement(new DiskOutbox(file, MAX_BYTES));
+        final UploadPolicy policy = new UploadPolicy();
+        final List<Boolean> lockHeld = new ArrayList<>();
+        policy.setFlushJob(new UploadPolicy.FlushJob() {
+            @Override
+            public void schedule() {
+                lockHeld.add(Thread.holdsLock(network) || Thread.holdsLock(policy));
+            }
+        });
+        policy.setIdle(true);
+        network.setUploadPolicy(policy);
+        network.publishNotification(payload("c1", "hi"));
+        network.publishNotification(payload("c2", "hi"));
+        assertEquals("[false]", lockHeld.toString());
+
+        // the job ran but could not send, the next record schedules it again
+        policy.onFlushJobRun();
+        network.publishNotification(payload("c3", "hi"));
+        assertEquals("[false, false]", lockHeld.toString());
+    }
+}
@@ -0,0 +1,91 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Vishal Dubey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ **/
+
+package vishal.vaf.notifyme.utils;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class StreamCursorsTest {
+
+    private static final long NOW = TimeUnit.DAYS.toMillis(20000);
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+
+    @Test
+    public void keysSortInIssueOrder() throws Exception {
+        String previous = StreamKeys.next();
+        for (int i = 0; i < 1000; i++) {
+            String key = StreamKeys.next();
+            assertTrue(key + " after " + previous, key.compareTo(previous) > 0);
+            previous = key;
+        }
+        assertEquals(17, previous.length());
+        assertEquals("00000000012340000", StreamKeys.first(1234));
+        assertTrue(StreamKeys.first(999).compareTo(StreamKeys.first(1000)) < 0);
+    }
+
+    @Test
+    public void trimsToRetentionWithoutDevices() throws Exception {
+        StreamCursors cursors = new StreamCursors();
+        assertEquals(StreamKeys.first(NOW - StreamCursors.DEFAULT_RETENTION_HOURS * HOUR), cursors.trimPoint(NOW));
+    }
+
+    @Test
+    public void trimsToSlowestDevice() throws Exception {
+        StreamCursors cursors = new StreamCursors();
+        assertFalse(cursors.update("laptop", StreamKeys.first(NOW - HOUR)));
+        assertFalse(cursors.update("desktop", StreamKeys.first(NOW - 2 * HOUR)));
+        assertTrue(cursors.update("laptop", StreamKeys.first(NOW)));
+        assertEquals(StreamKeys.first(NOW - 2 * HOUR), cursors.trimPoint(NOW));
+
+        cursors.remove("desktop");
+        assertEquals(1, cursors.getDeviceCount());
+        assertEquals(StreamKeys.first(NOW), cursors.trimPoint(NOW));
+    }
+
+    @Test
+    public void offlineDeviceDoesNotHoldBackRetention() throws Exception {
+        StreamCursors cursors = new StreamCursors();
+        cursors.update("laptop", null);
+        cursors.update("desktop", StreamKeys.first(NOW - 200 * HOUR));
+        assertEquals(StreamKeys.first(NOW - StreamCursors.DEFAULT_RETENTION_HOURS * HOUR), cursors.trimPoint(NOW));
+    }
+
+    @Test
+    public void waitsForTrimIntervalAndSkipsNothingNew() throws Exception {
+        StreamCursors cursors = new StreamCursors(72, TimeUnit.HOURS, 10, TimeUnit.MINUTES);
+        cursors.update("laptop", StreamKeys.first(NOW));
+        String point = cursors.trimPoint(NOW);
+        assertNotNull(point);
+        cursors.trimmed(point, NOW);
+        assertNull(cursors.trimPoint(NOW + TimeUnit.MINUTES.toMillis(5)));
+        // the interval has passed but the device did not read further
+        assertNull(cursors.trimPoint(NOW + TimeUnit.MINUTES.toMillis(11)));
+        cursors.update("laptop", StreamKeys.first(NOW + 1));
+        assertEquals(StreamKeys.first(NOW + 1), cursors.trimPoint(NOW + TimeUnit.MINUTES.toMillis(11)));
+    }
+}
@@ -0,0 +1,82 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Vishal Dubey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ **/
+
+package vishal.vaf.notifyme.utils;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class TokenBucketTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    public void startsFullAndRefillsAtItsRate() throws Exception {
+        TokenBucket bucket = new TokenBucket(2, 60, 0);
+        assertEquals(0, bucket.waitTime(0));
+        bucket.reserve(0);
+        bucket.reserve(0);
+        // One token per second
+        assertEquals(SECOND, bucket.waitTime(0), 1000);
+        assertEquals(SECOND / 2, bucket.waitTime(SECOND / 2), 1000);
+        assertEquals(0, bucket.waitTime(SECOND));
+    }
+
+    @Test
+    public void neverHoldsMoreThanItsCapacity() throws Exception {
+        TokenBucket bucket = new TokenBucket(2, 60, 0);
+        long later = 100 * SECOND;
+        bucket.reserve(later);
+        bucket.reserve(later);
+        assertTrue(bucket.waitTime(later) > 0);
+    }
+
+    @Test
+    public void reservationsGoIntoDebtInOrder() throws Exception {
+        TokenBucket bucket = new TokenBucket(1, 60, 0);
+        bucket.reserve(0);
+        bucket.reserve(0);
+        bucket.reserve(0);
+        // Two tokens owed: the next one is usable after three seconds
+        assertEquals(3 * SECOND, bucket.waitTime(0), 1000);
+        assertEquals(SECOND, bucket.waitTime(2 * SECOND), 1000);
+    }
+
+    @Test
+    public void refillsAcrossNanoTimeOverflow() throws Exception {
+        long start = Long.MAX_VALUE - SECOND / 2;
+        TokenBucket bucket = new TokenBucket(1, 60, start);
+        bucket.reserve(start);
+        // a second later the clock has wrapped to a negative reading
+        assertEquals(0, bucket.waitTime(start + SECOND));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEmptyBucket() throws Exception {
+        new TokenBucket(0, 60, 0);
+    }
+}
@@ -0,0 +1,130 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2017 Vishal Dubey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ **/
+
+package vishal.vaf.notifyme.utils;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class UploadPolicyTest {
+
+    private static final long NOW = 1000000;
+
+    private UploadPolicy policy;
+    private int flushJobs;
+
+    @Before
+    public void setUp() throws Exception {
+        policy = new UploadPolicy(30000, 300000, 3);
+        policy.setFlushJob(new UploadPolicy.FlushJob() {
+            @Override
+            public void schedule() {
+                flushJobs++;
+            }
+        });
+        policy.setPriorityConversations(Collections.singleton("Family Group: Mom"));
+    }
+
+    @Test
+    public void priorityConversationsGoOutRightAway() throws Exception {
+        String mom = new ConversationIdNormalizer().normalize("Family Group: Mom");
+        assertTrue(policy.isPriority(mom));
+        assertEquals(0, policy.onQueued(mom, NOW));
+        assertFalse(policy.isPriority("bob"));
+        assertFalse(policy.isPriority(null));
+    }
+
+    @Test
+    public void othersWaitForTheNetworkDelay() throws Exception {
+        assertEquals(30000, policy.onQueued("bob", NOW));
+        // the delay runs from the oldest deferred record
+        assertEquals(20000, policy.onQueued("alice", NOW + 10000));
+        policy.setNetwork(UploadPolicy.Network.METERED);
+        assertEquals(290000, policy.pendingDelay(NOW + 10000));
+    }
+
+    @Test
+    public void fullBatchGoesOutRightAway() throws Exception {
+        policy.onQueued("a", NOW);
+        policy.onQueued("b", NOW + 1);
+        assertEquals(0, policy.onQueued("c", NOW + 2));
+    }
+
+    @Test
+    public void radioTailCarriesQueuedRecords() throws Exception {
+        policy.onSent(NOW);
+        assertEquals(0, policy.onQueued("bob", NOW + UploadPolicy.RADIO_TAIL_MS - 1));
+        assertEquals(30000, policy.onQueued("bob", NOW + UploadPolicy.RADIO_TAIL_MS + 1));
+    }
+
+    @Test
+    public void leavesIdleAndOfflineUploadsToOneFlushJob() throws Exception {
+        policy.setIdle(true);
+        assertEquals(UploadPolicy.SCHEDULE_FLUSH_JOB, policy.onQueued("bob", NOW));
+        // left to the caller, outside the policy's lock
+        assertEquals(0, flushJobs);
+        policy.scheduleFlushJob();
+        assertEquals(-1, policy.onQueued("alice", NOW + 1));
+        assertEquals(1, flushJobs);
+        assertTrue(policy.isFlushJobScheduled());
+
+        policy.setIdle(false);
+        policy.setNetwork(UploadPolicy.Network.NONE);
+        assertEquals(-1, policy.pendingDelay(NOW + 2));
+        assertEquals(1, flushJobs);
+
+        policy.onSent(NOW + 3);
+        assertFalse(policy.isFlushJobScheduled());
+        assertEquals(-1, policy.pendingDelay(NOW + 4));
+    }
+
+    @Test
+    public void flushJobThatSentNothingIsScheduledAgain() throws Exception {
+        policy.setIdle(true);
+        assertEquals(UploadPolicy.SCHEDULE_FLUSH_JOB, policy.onQueued("bob", NOW));
+        // the job ran without an outbox or transport, nothing was sent
+        policy.onFlushJobRun();
+        assertFalse(policy.isFlushJobScheduled());
+        assertEquals(UploadPolicy.SCHEDULE_FLUSH_JOB, policy.pendingDelay(NOW + 1));
+        assertTrue(policy.isFlushJobScheduled());
+    }
+
+    @Test
+    public void countsRadioWakeUps() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            policy.onQueued("bob", NOW + i * 1000);
+        }
+        policy.onSent(NOW + 30000);
+        policy.onSent(NOW + 31000);
+        assertEquals(1, policy.getRadioWakeUps());
+        // ten records a second apart: one wake-up if each was sent when queued
+        assertEquals(1, policy.getImmediateWakeUps());
+        policy.onQueued("bob", NOW + 100000);
+        assertEquals(2, policy.getImmediateWakeUps());
+    }
+}
@@ -17,6 +17,16 @@ class ViewController: NSViewController, NSUserNotificationCenterDelegate {
     var msgListener: DatabaseHandle!
     var notificationRemoveListener: DatabaseHandle!
     var notifData = [String: NSUserNotification]()
+    // message history of each recent conversation, rebuilt from the phone's incremental updates
+    var threads = [String: [String: [String: String]]]()
+    var threadQuery: DatabaseQuery!
+    var threadListener: DatabaseHandle!
+    // conversations whose messages we observe, keyed like their thread
+    var threadHandles = [String: DatabaseHandle]()
+    // this desktop's id, registered under devices/ so the phone subscribes to its reply queue
+    var deviceId: String!
+    // key of the last notification shown, reading resumes after it
+    var cursor: String!
     
     override func viewDidLoad() {
         super.viewDidLoad()
@@ -24,14 +34,38 @@ class ViewController: NSViewController, NSUserNotificationCenterDelegate {
         center.delegate = self
         ref = Database.database().reference()
         
-        msgListener = ref.child("notifyme/123456789/app").observe(DataEventType.value, with: {
+        let defaults = UserDefaults.standard
+        if (defaults.string(forKey: "device_id") == nil) {
+            defaults.set(UUID().uuidString, forKey: "device_id")
+        }
+        deviceId = defaults.string(forKey: "device_id")
+        cursor = defaults.string(forKey: "cursor") ?? ""
+        ref.child("notifyme/123456789/devices/" + deviceId).setValue(["name": Host.current().localizedName ?? "Mac", "cursor": cursor])
+        
+        // the notification stream is shared by every desktop, each one reads it from its own
+        // cursor and leaves the entries in place, the phone trims behind the slowest desktop
+        msgListener = ref.child("notifyme/123456789/app").queryOrderedByKey().queryStarting(atValue: cursor).observe(DataEventType.childAdded, with: {
             snapshot in
+            if (snapshot.key <= self.cursor) {
+                return
+            }
+            self.advanceCursor(snapshot.key)
             let data = snapshot.value as? [String: String]
             if (data != nil) {
-                let appName = data!["app_name"]
-                self.showNotification(title:  appName == "com.whatsapp" ? "WhatsApp":"Messenger", subTitle: data!["name"]!, message: data!["message"]!, id: data!["id"]!, appName: appName!)
+                let notification = self.readNotification(data!)
+                if (notification != nil) {
+                    let appName = notification!["app_name"]!
+                    self.showNotification(title:  appName == "com.whatsapp" ? "WhatsApp":"Messenger", subTitle: notification!["name"]!, message: notification!["message"]!, id: notification!["id"]!, appName: appName)
+                }
             }
-            self.ref.child("notifyme/123456789/app").setValue(nil)
+        })
+        // only threads updated within the phone's retention (72 hours) are loaded, the phone
+        // deletes older ones; within a thread messages are keyed so they sort oldest first
+        let cutoff = String(format: "%013lld", Int64((Date().timeIntervalSince1970 - 72 * 3600) * 1000))
+        threadQuery = ref.child("notifyme/123456789/threads").queryOrdered(byChild: "updated").queryStarting(atValue: cutoff)
+        threadListener = threadQuery.observe(DataEventType.childAdded, with: {
+            snapshot in
+            self.observeThread(snapshot.key)
         })
         notificationRemoveListener = ref.child("notifyme/123456789/remove").observe(DataEventType.value, with: {
             snapshot in
@@ -47,13 +81,111 @@ class ViewController: NSViewController, NSUserNotificationCenterDelegate {
         })
     }
     
+    func advanceCursor(_ key: String) {
+        cursor = key
+        UserDefaults.standard.set(key, forKey: "cursor")
+        ref.child("notifyme/123456789/devices/" + deviceId + "/cursor").setValue(key)
+    }
+
+    // payloads without "v" are version 1 with spelled out keys, version 2 uses one letter keys
+    // and an app code instead of the package name
+    func readNotification(_ data: [String: String]) -> [String: String]? {
+        if (data["v"] == nil) {
+            if (data["id"] == nil || data["name"] == nil || data["message"] == nil || data["app_name"] == nil) {
+                return nil
+            }
+            return data
+        }
+        if (data["i"] == nil || data["n"] == nil || data["m"] == nil) {
+            return nil
+        }
+        return ["id": data["i"]!, "name": data["n"]!, "message": data["m"]!, "app_name": packageName(code: data["a"], package: data["p"])]
+    }
+
+    func packageName(code: String?, package: String?) -> String {
+        switch code {
+        case "w"?: return "com.whatsapp"
+        case "m"?: return "com.facebook.orca"
+        default: return package ?? ""
+        }
+    }
+
+    func appCode(packageName: String?) -> String {
+        switch packageName {
+        case "com.whatsapp"?: return "w"
+        case "com.facebook.orca"?: return "m"
+        default: return "o"
+        }
+    }
+
+    func observeThread(_ key: String) {
+        if (threadHandles[key] != nil) {
+            return
+        }
+        threadHandles[key] = ref.child("notifyme/123456789/conversations/" + key).observe(DataEventType.childAdded, with: {
+            snapshot in
+            let message = snapshot.value as? [String: String]
+            if (message != nil) {
+                var thread = self.threads[key] ?? [String: [String: String]]()
+                thread[snapshot.key] = message!
+                self.threads[key] = thread
+                self.refreshNotification(threadKey: key)
+            }
+        })
+    }
+
+    // escapes the conversation id like the phone does for database keys
+    func threadKey(id: String) -> String {
+        var key = ""
+        for scalar in id.unicodeScalars {
+            if ".#$[]/%".unicodeScalars.contains(scalar) || scalar.value < 0x20 {
+                key += String(format: "%%%02X", scalar.value)
+            } else {
+                key.unicodeScalars.append(scalar)
+            }
+        }
+        return key.isEmpty ? "_" : key
+    }
+
+    // the last few messages of the conversation, oldest first, nil before any have synced
+    func threadText(id: String) -> String? {
+        let thread = threads[threadKey(id: id)]
+        if (thread == nil || thread!.isEmpty) {
+            return nil
+        }
+        return thread!.keys.sorted().suffix(5).map {
+            let message = thread![$0]!
+            let sender = message["s"] ?? "You"
+            return sender + ": " + (message["m"] ?? "")
+        }.joined(separator: "\n")
+    }
+
+    // shows newly synced messages in a notification that is already on screen, without a sound
+    func refreshNotification(threadKey key: String) {
+        for (id, notification) in notifData {
+            if (threadKey(id: id) == key) {
+                let text = threadText(id: id)
+                if (text != nil && notification.informativeText != text) {
+                    notification.informativeText = text
+                    notification.soundName = nil
+                    center?.removeDeliveredNotification(notification)
+                    center?.deliver(notification)
+                }
+                return
+            }
+        }
+    }
+
     func showNotification(title: String, subTitle: String, message: String, id: String, appName: String) {
         print(id)
         var notification = notifData[id]
         if (notification != nil) {
             print("not nil")
+            notification?.soundName = NSUserNotificationDefaultSoundName
             var text = notification?.informativeText
-            if (!(text == message)){
+            if (threadText(id: id) != nil) {
+                notification?.informativeText = threadText(id: id)
+            } else if (!(text == message)){
                 text = text! + ". " + message
                 notification?.informativeText = text
                 notifData[id] = notification
@@ -64,7 +196,7 @@ class ViewController: NSViewController, NSUserNotificationCenterDelegate {
             notification?.title = title
             notification?.subtitle = subTitle
             notification?.identifier = id
-            notification?.informativeText = message
+            notification?.informativeText = threadText(id: id) ?? message
             notification?.soundName = NSUserNotificationDefaultSoundName
             notification?.userInfo = ["app_name": appName]
             notification?.hasReplyButton = true
@@ -83,12 +215,17 @@ class ViewController: NSViewController, NSUserNotificationCenterDelegate {
         if notification.activationType == NSUserNotification.ActivationType.replied {
             var dict = notification.userInfo as! [String:String]
             var response = [String:String]()
-            response["name"] = notification.subtitle
-            response["message"] = notification.response?.string
-            response["app_name"] = dict["app_name"]
-            response["id"] = notification.identifier
+            response["v"] = "2"
+            response["n"] = notification.subtitle
+            response["m"] = notification.response?.string
+            response["a"] = appCode(packageName: dict["app_name"])
+            if (response["a"] == "o") {
+                response["p"] = dict["app_name"]
+            }
+            response["i"] = notification.identifier
             
-            ref.child("notifyme/123456789/desktop").setValue(response)
+            // queued in this desktop's own queue, the phone deletes it once the reply is sent
+            ref.child("notifyme/123456789/replies/" + deviceId).childByAutoId().setValue(response)
             notifData.removeValue(forKey: notification.identifier!)
         }
     }
@@ -100,6 +237,11 @@ class ViewController: NSViewController, NSUserNotificationCenterDelegate {
     override func viewDidDisappear() {
         ref.removeObserver(withHandle: msgListener)
         ref.removeObserver(withHandle: notificationRemoveListener)
+        threadQuery.removeObserver(withHandle: threadListener)
+        for (key, handle) in threadHandles {
+            ref.child("notifyme/123456789/conversations/" + key).removeObserver(withHandle: handle)
+        }
+        threadHandles.removeAll()
     }
     
 }